@@ -0,0 +1,66 @@
+/**
+ * BenchmarkFormulas construit les formules utilisées par les bancs d'essai.
+ *
+ * @version 1.0
+ */
+final class BenchmarkFormulas {
+
+    private BenchmarkFormulas() {
+    }
+
+    /**
+     * Construit une somme équilibrée de termes : la profondeur d'imbrication ne croît qu'avec le logarithme du
+     * nombre de termes.
+     *
+     * @param terms Les termes, nombres ou références de cellules.
+     * @return La formule en notation préfixée.
+     */
+    static String balancedSum(String[] terms) {
+        StringBuilder formula = new StringBuilder();
+        appendBalancedSum(formula, terms, 0, terms.length);
+        return formula.toString();
+    }
+
+    private static void appendBalancedSum(StringBuilder formula, String[] terms, int start, int end) {
+        if (end - start == 1) {
+            formula.append(terms[start]);
+            return;
+        }
+        int middle = (start + end) >>> 1;
+        formula.append("+ ");
+        appendBalancedSum(formula, terms, start, middle);
+        formula.append(' ');
+        appendBalancedSum(formula, terms, middle, end);
+    }
+
+    /**
+     * Construit une formule dont chaque opérateur attend son opérande droit derrière le suivant, jusqu'à la
+     * profondeur demandée : {@code + 1 * 2 - 3 ...}.
+     *
+     * @param depth La profondeur d'imbrication.
+     * @return La formule en notation préfixée.
+     */
+    static String nested(int depth) {
+        String operators = "+*-/";
+        StringBuilder formula = new StringBuilder();
+        for (int level = 0; level < depth; level++) {
+            formula.append(operators.charAt(level % operators.length())).append(' ').append(level + 1).append(' ');
+        }
+        return formula.append("B2").toString();
+    }
+
+    /**
+     * Renvoie les références des cellules d'une colonne, à partir de la ligne 1.
+     *
+     * @param column Le nom de la colonne.
+     * @param count  Le nombre de cellules.
+     * @return Les références.
+     */
+    static String[] column(String column, int count) {
+        String[] references = new String[count];
+        for (int row = 0; row < count; row++) {
+            references[row] = column + (row + 1);
+        }
+        return references;
+    }
+}
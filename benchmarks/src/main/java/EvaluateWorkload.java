@@ -0,0 +1,53 @@
+/**
+ * EvaluateWorkload mesure l'évaluation d'une formule de 64 termes déjà construite, qui ne lit que des nombres
+ * ("constant") ou que des cellules ("references").
+ * Après l'échauffement, la formule est traduite en classe cachée ; pour mesurer l'interpréteur, lancer les bancs
+ * d'essai avec {@code -jvmArgsAppend -Dpetittableur.compilationThreshold=0}.
+ *
+ * @version 1.0
+ */
+public class EvaluateWorkload implements fr.iutfbleau.sae32_2023.benchmarks.Workload {
+
+    private static final int TERMS = 64;
+
+    private final AbstractSyntaxTree ast;
+    private final double[] stack;
+
+    /**
+     * Constructeur de EvaluateWorkload.
+     *
+     * @param kind La nature des termes : "constant" ou "references".
+     * @throws IncorrectFormulaException Si une formule ne peut pas être construite.
+     */
+    public EvaluateWorkload(String kind) throws IncorrectFormulaException {
+        ValueStore valueStore = new ValueStore();
+        FormulaInterner interner = new FormulaInterner();
+        String[] terms;
+        switch (kind) {
+            case "constant":
+                terms = new String[TERMS];
+                for (int index = 0; index < TERMS; index++) {
+                    terms[index] = Double.toString(index + 0.5);
+                }
+                break;
+            case "references":
+                terms = BenchmarkFormulas.column("B", TERMS);
+                for (String reference : terms) {
+                    new AbstractSyntaxTree(reference, "1.5", valueStore, interner).evaluate(new double[1]);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Nature de formule inconnue : " + kind);
+        }
+        this.ast = new AbstractSyntaxTree("A1", BenchmarkFormulas.balancedSum(terms), valueStore, interner);
+        this.stack = new double[ast.getProgram().getMaxStackDepth()];
+    }
+
+    // Le résultat est rangé dans le ValueStore ; le code d'erreur renvoyé suffit à ce que l'évaluation ne soit pas
+    // éliminée.
+    @Override
+    public double run() {
+        ast.markDirty();
+        return ast.evaluate(stack);
+    }
+}
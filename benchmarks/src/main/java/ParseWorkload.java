@@ -0,0 +1,48 @@
+/**
+ * ParseWorkload mesure la construction d'un {@link AbstractSyntaxTree} : analyse de la formule, partage de ses
+ * nœuds, obtention du modèle compilé et résolution des références.
+ * Avec un interner partagé, le modèle existe déjà après la première construction, comme pour une formule
+ * recopiée ; avec un nouvel interner à chaque fois, la formule est aussi compilée.
+ *
+ * @version 1.0
+ */
+public class ParseWorkload implements fr.iutfbleau.sae32_2023.benchmarks.Workload {
+
+    private final String formula;
+    private final boolean sharedTemplates;
+    private final ValueStore valueStore = new ValueStore();
+    private final FormulaInterner sharedInterner = new FormulaInterner();
+
+    /**
+     * Constructeur de ParseWorkload.
+     *
+     * @param kind            La forme de la formule : "short", "long" (256 termes) ou "nested" (1000 niveaux).
+     * @param sharedTemplates Vrai pour garder le même interner d'une construction à l'autre.
+     */
+    public ParseWorkload(String kind, boolean sharedTemplates) {
+        switch (kind) {
+            case "short":
+                this.formula = "+ * B7 2.5 1";
+                break;
+            case "long":
+                String[] terms = new String[256];
+                for (int index = 0; index < terms.length; index++) {
+                    terms[index] = index % 2 == 0 ? "B" + (index + 1) : Double.toString(index * 0.25);
+                }
+                this.formula = BenchmarkFormulas.balancedSum(terms);
+                break;
+            case "nested":
+                this.formula = BenchmarkFormulas.nested(1000);
+                break;
+            default:
+                throw new IllegalArgumentException("Forme de formule inconnue : " + kind);
+        }
+        this.sharedTemplates = sharedTemplates;
+    }
+
+    @Override
+    public double run() throws IncorrectFormulaException {
+        FormulaInterner interner = sharedTemplates ? sharedInterner : new FormulaInterner();
+        return new AbstractSyntaxTree("A1", formula, valueStore, interner).getProgram().getMaxStackDepth();
+    }
+}
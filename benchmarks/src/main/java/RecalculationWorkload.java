@@ -0,0 +1,94 @@
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * RecalculationWorkload mesure le recalcul qui suit la modification d'une cellule, comme celui du moteur de
+ * calcul, sur une feuille dont les dépendances ont l'une des formes suivantes :
+ * <ul>
+ *     <li>"chain" : chaque cellule lit la précédente ;</li>
+ *     <li>"fanin" : une seule cellule lit toutes les autres ;</li>
+ *     <li>"fanout" : toutes les cellules lisent la cellule modifiée ;</li>
+ *     <li>"diamond" : des couches de cellules, chacune lisant deux cellules voisines de la couche
+ *     précédente, si bien que les chemins se séparent et se rejoignent sans cesse.</li>
+ * </ul>
+ *
+ * @version 1.0
+ */
+public class RecalculationWorkload implements fr.iutfbleau.sae32_2023.benchmarks.Workload {
+
+    private final LongObjectHashMap<AbstractSyntaxTree> abstractSyntaxTrees = new LongObjectHashMap<>();
+    private final ValueStore valueStore = new ValueStore();
+    private final FormulaInterner interner = new FormulaInterner();
+    private final DependencyGraph dependencyGraph = new DependencyGraph();
+    private final Recalculator recalculator;
+
+    // Cellule modifiée à chaque recalcul, et cellule dont la valeur est renvoyée.
+    private final long modifiedCell;
+    private final long resultCell;
+
+    /**
+     * Constructeur de RecalculationWorkload.
+     *
+     * @param shape    La forme des dépendances : "chain", "fanin", "fanout" ou "diamond".
+     * @param size     Le nombre de cellules de la feuille.
+     * @param parallel Vrai pour évaluer les grands niveaux sur le pool commun.
+     * @throws IncorrectFormulaException Si une formule ne peut pas être construite.
+     */
+    public RecalculationWorkload(String shape, int size, boolean parallel) throws IncorrectFormulaException {
+        this.recalculator = new Recalculator(abstractSyntaxTrees, dependencyGraph, parallel ? ForkJoinPool.commonPool() : null);
+        this.modifiedCell = CellOperations.getAddress(0, 0);
+        setFormula("A1", "1");
+
+        switch (shape) {
+            case "chain":
+                for (int row = 2; row <= size; row++) {
+                    setFormula("A" + row, "+ A" + (row - 1) + " 1");
+                }
+                this.resultCell = CellOperations.getAddress(size - 1, 0);
+                break;
+            case "fanin":
+                for (int row = 2; row < size; row++) {
+                    setFormula("A" + row, Integer.toString(row));
+                }
+                setFormula("B1", BenchmarkFormulas.balancedSum(BenchmarkFormulas.column("A", size - 1)));
+                this.resultCell = CellOperations.getAddress(0, 1);
+                break;
+            case "fanout":
+                for (int row = 2; row <= size; row++) {
+                    setFormula("A" + row, "* A1 " + row);
+                }
+                this.resultCell = CellOperations.getAddress(size - 1, 0);
+                break;
+            case "diamond":
+                int width = Math.max(2, (int) Math.sqrt(size));
+                int layers = Math.max(1, (size - 1) / width);
+                for (int col = 0; col < width; col++) {
+                    setFormula(CellOperations.getCellReferenceFromCoordinates(1, col), "+ A1 " + col);
+                }
+                for (int row = 2; row <= layers; row++) {
+                    for (int col = 0; col < width; col++) {
+                        setFormula(CellOperations.getCellReferenceFromCoordinates(row, col),
+                                "/ + " + CellOperations.getCellReferenceFromCoordinates(row - 1, col)
+                                        + " " + CellOperations.getCellReferenceFromCoordinates(row - 1, (col + 1) % width)
+                                        + " 2");
+                    }
+                }
+                this.resultCell = CellOperations.getAddress(layers, 0);
+                break;
+            default:
+                throw new IllegalArgumentException("Forme de dépendances inconnue : " + shape);
+        }
+
+        recalculator.recalculate(abstractSyntaxTrees.keys(), () -> false);
+    }
+
+    private void setFormula(String cellReference, String formula) throws IncorrectFormulaException {
+        AbstractSyntaxTree ast = new AbstractSyntaxTree(cellReference, formula, valueStore, interner);
+        abstractSyntaxTrees.put(ast.getOriginAddress(), ast);
+        dependencyGraph.setPrecedents(ast.getOriginAddress(), ast.getPrecedentCells(), ast.getPrecedentRanges());
+    }
+
+    @Override
+    public double run() {
+        return recalculator.recalculate(modifiedCell).getEvaluatedCells().length + valueStore.getValueAt(resultCell);
+    }
+}
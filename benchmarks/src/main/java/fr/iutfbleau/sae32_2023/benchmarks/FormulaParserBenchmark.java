@@ -0,0 +1,48 @@
+package fr.iutfbleau.sae32_2023.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * FormulaParserBenchmark mesure la construction d'un arbre de syntaxe abstraite sur des formules courtes,
+ * longues et profondément imbriquées (voir ParseWorkload).
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormulaParserBenchmark {
+
+    @Param({"short", "long", "nested"})
+    public String formula;
+
+    @Param({"true", "false"})
+    public boolean sharedTemplates;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        workload = Workload.create("ParseWorkload", formula, sharedTemplates);
+    }
+
+    @Benchmark
+    public double parse() throws Exception {
+        return workload.run();
+    }
+}
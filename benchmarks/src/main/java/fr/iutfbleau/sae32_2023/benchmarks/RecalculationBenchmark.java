@@ -0,0 +1,52 @@
+package fr.iutfbleau.sae32_2023.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RecalculationBenchmark mesure le recalcul qui suit la modification d'une cellule, pour des dépendances en
+ * chaîne, en entonnoir, en éventail et en losanges, sur des feuilles de plusieurs tailles, avec et sans
+ * évaluation parallèle (voir RecalculationWorkload).
+ *
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RecalculationBenchmark {
+
+    @Param({"chain", "fanin", "fanout", "diamond"})
+    public String shape;
+
+    @Param({"1000", "10000", "100000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private Workload workload;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        workload = Workload.create("RecalculationWorkload", shape, size, parallel);
+    }
+
+    @Benchmark
+    public double recalculate() throws Exception {
+        return workload.run();
+    }
+}
@@ -0,0 +1,40 @@
+package fr.iutfbleau.sae32_2023.benchmarks;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Workload est une opération mesurée par un banc d'essai.
+ * Les classes du tableur appartiennent au paquetage par défaut, que le code d'un paquetage nommé ne peut pas
+ * importer, alors que JMH exige des bancs d'essai dans un paquetage nommé. Les opérations sont donc écrites dans
+ * le paquetage par défaut, où elles accèdent librement au tableur, et chargées par leur nom lors de la
+ * préparation du banc d'essai : seul l'appel de {@link #run()} est mesuré.
+ *
+ * @version 1.0
+ */
+public interface Workload {
+
+    /**
+     * Exécute une fois l'opération mesurée.
+     *
+     * @return Une valeur dépendant du calcul, consommée par le banc d'essai pour qu'il ne soit pas éliminé.
+     * @throws Exception Si l'opération échoue.
+     */
+    double run() throws Exception;
+
+    /**
+     * Crée une opération du paquetage par défaut à partir de son nom de classe.
+     *
+     * @param className Le nom de la classe de l'opération.
+     * @param arguments Les arguments de son constructeur public.
+     * @return L'opération.
+     * @throws ReflectiveOperationException Si la classe ou son constructeur est introuvable.
+     */
+    static Workload create(String className, Object... arguments) throws ReflectiveOperationException {
+        for (Constructor<?> constructor : Class.forName(className).getConstructors()) {
+            if (constructor.getParameterCount() == arguments.length) {
+                return (Workload) constructor.newInstance(arguments);
+            }
+        }
+        throw new NoSuchMethodException(className + " : aucun constructeur à " + arguments.length + " paramètres");
+    }
+}
@@ -1,181 +1,187 @@
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.LinkedList;
-
 /**
  * La classe AbstractSyntaxTree est utilisée pour construire et évaluer un arbre de syntaxe abstraite
  * * afin de représenter des formules de cellules dans un tableur. Cette classe gère les opérations arithmétiques de base
- * * et permet la référence à d'autres cellules dans une grille. Elle utilise une expression préfixée pour évaluer
- * * les formules et détecter les erreurs comme les références circulaires ou les formules mal formées.
+ * * et permet la référence à d'autres cellules dans une grille. Elle utilise une expression préfixée, compilée en
+ * * un programme postfixé pour l'évaluation, et détecte les formules mal formées.
+ * L'arbre et le programme sont partagés entre toutes les cellules dont la formule a la même forme relative (voir
+ * {@link FormulaTemplate}) ; chaque AbstractSyntaxTree ne garde en propre que les emplacements des cellules lues
+ * et le résultat de la cellule.
  *
  * @version 1.0
  */
 
 public class AbstractSyntaxTree {
-    private final Node root;
-    private final String[] validOperators = new String[]{"+", "-", "*", "/"};
+    private final FormulaTemplate template;
+    private final FormulaProgram program;
+    private final String formula;
     private final String originCellReference;
-    private final AbstractSyntaxTree[][] abstractSyntaxTreeArray;
+    private final long originAddress;
+    private final int originSlot;
+    private final ValueStore valueStore;
+
+    // Emplacement dans le ValueStore de chaque cellule lue, dans l'ordre des références du programme.
+    private final int[] slots;
+
+    // Coins absolus de chaque plage lue, quatre entiers par plage (voir FormulaProgram#bindRanges).
+    private final int[] ranges;
 
-    private final HashSet<String> dependentCells = new HashSet<>();
+    // Vrai tant que le résultat rangé dans le ValueStore, valeur ou valeur d'erreur, est à recalculer.
+    private boolean dirty = true;
 
     /**
-     * Construit un arbre de syntaxe abstraite à partir d'une référence de cellule, d'une formule et d'un tableau
-     * d'arbres de syntaxe abstraite.
+     * Construit un arbre de syntaxe abstraite à partir d'une référence de cellule, d'une formule et du ValueStore
+     * de la feuille, à l'aide de {@link FormulaParser}. Le modèle compilé de la formule est obtenu auprès de
+     * l'interner, puis ses références sont résolues pour la cellule.
      *
-     * @param cellReference           La référence de la cellule pour laquelle l'arbre est construit.
-     * @param formula                 La formule à analyser et évaluer.
-     * @param abstractSyntaxTreeArray Le tableau des arbres de syntaxe abstraite existants.
+     * @param cellReference La référence de la cellule pour laquelle l'arbre est construit.
+     * @param formula       La formule à analyser et évaluer.
+     * @param valueStore    Le ValueStore dans lequel sont rangées les valeurs des cellules de la feuille.
+     * @param interner      L'interner qui partage les formules de la feuille.
      * @throws IncorrectFormulaException Si la formule n'est pas syntaxiquement correcte.
      */
-    public AbstractSyntaxTree(String cellReference, String formula, AbstractSyntaxTree[][] abstractSyntaxTreeArray) throws IncorrectFormulaException {
-        this.originCellReference = cellReference;
-        this.abstractSyntaxTreeArray = abstractSyntaxTreeArray;
-        LinkedList<String> parts = new LinkedList<>(Arrays.asList(formula.split(" ")));
-
-        if (!isValidPrefixExpression(parts)) {
-            throw new IncorrectFormulaException("Formule incorrecte : mauvaise syntaxe.");
-        }
-
-        this.root = buildTree(parts);
+    public AbstractSyntaxTree(String cellReference, String formula, ValueStore valueStore, FormulaInterner interner) throws IncorrectFormulaException {
+        this(CellOperations.getAddressFromCellReference(cellReference),
+                parseTemplate(formula, CellOperations.getAddressFromCellReference(cellReference), interner), formula, valueStore);
     }
 
     /**
-     * Évalue l'expression de l'arbre de syntaxe abstraite.
+     * Construit l'arbre d'une cellule à partir d'un modèle déjà analysé, par exemple celui d'une formule lue dans
+     * un fichier de classeur (voir {@link StoredSheet}).
      *
-     * @param visited Ensemble de références de cellules déjà visitées pour détecter les références circulaires.
-     * @return Le résultat de l'évaluation de l'expression.
-     * @throws IncalculableFormulaException Si l'expression ne peut pas être calculée.
-     * @throws IncorrectFormulaException    Si l'expression est syntaxiquement incorrecte.
+     * @param originAddress L'adresse de la cellule.
+     * @param template      Le modèle de la formule.
+     * @param formula       La formule telle qu'elle a été saisie, ou null pour l'écrire à partir du modèle.
+     * @param valueStore    Le ValueStore dans lequel sont rangées les valeurs des cellules de la feuille.
      */
-    double evaluate(HashSet<String> visited) throws IncalculableFormulaException, IncorrectFormulaException {
-        visited.add(originCellReference);
-        return root.evaluate(visited);
+    AbstractSyntaxTree(long originAddress, FormulaTemplate template, String formula, ValueStore valueStore) {
+        this.formula = formula;
+        this.originCellReference = CellOperations.getCellReferenceFromAddress(originAddress);
+        this.originAddress = originAddress;
+        this.valueStore = valueStore;
+        this.originSlot = valueStore.getSlot(originAddress);
+        this.template = template;
+        this.program = template.getProgram();
+        this.slots = program.bind(originAddress, valueStore);
+        this.ranges = program.bindRanges(originAddress, valueStore);
     }
 
-    /**
-     * Vérifie si l'expression préfixée est valide.
-     *
-     * @param parts Les parties de l'expression préfixée.
-     * @return Vrai si l'expression est valide, faux sinon.
-     */
-    private boolean isValidPrefixExpression(LinkedList<String> parts) {
-        if (parts.isEmpty()) {
-            return false;
-        }
-        return isValidPrefixExpression(parts, 0) == parts.size();
+    private static FormulaTemplate parseTemplate(String formula, long originAddress, FormulaInterner interner) throws IncorrectFormulaException {
+        return interner.template(FormulaParser.parse(formula, originAddress, interner));
     }
 
     /**
-     * Aide à valider l'expression préfixée en vérifiant chaque partie de l'expression.
+     * Évalue la formule compilée et range son résultat, valeur ou valeur d'erreur, dans le ValueStore.
+     * Si l'arbre n'est pas sale, l'erreur mémorisée lors du dernier calcul est renvoyée sans rien recalculer.
+     * Les cellules lues doivent avoir été calculées auparavant, ce que garantit l'ordre topologique suivi par
+     * {@link Recalculator}.
      *
-     * @param parts Les parties de l'expression préfixée.
-     * @param index L'index actuel dans la liste des parties.
-     * @return L'index suivant dans la liste si la partie actuelle est valide, -1 sinon.
+     * @param stack La pile de travail, d'une taille au moins égale à la profondeur de pile du programme.
+     * @return Le code de l'erreur de la cellule (voir {@link CellError}), {@link CellError#NONE} si elle est
+     * calculable.
      */
-    private int isValidPrefixExpression(LinkedList<String> parts, int index) {
-        if (index >= parts.size()) {
-            return -1; // Retourne -1 si l'index est hors de la liste
-        }
-
-        String token = parts.get(index);
-
-        if (isValidOperator(token)) {
-            int rightIndex = isValidPrefixExpression(parts, index + 1);
-            if (rightIndex == -1) {
-                return -1; // Première opérande invalide
+    byte evaluate(double[] stack) {
+        if (dirty) {
+            double result = program.evaluate(valueStore, slots, ranges, stack);
+            byte error = CellError.fromValue(result);
+            if (error == CellError.NONE) {
+                valueStore.setValue(originSlot, result);
+            } else {
+                valueStore.setError(originSlot, error);
             }
-            return isValidPrefixExpression(parts, rightIndex);
-        } else if (isNumber(token) || isValidCell(token)) {
-            return index + 1;
-        } else {
-            return -1;
+            dirty = false;
+            return error;
         }
+        return getError();
     }
 
     /**
-     * Vérifie si une chaîne de caractères est un opérateur valide.
-     *
-     * @param part La chaîne de caractères à vérifier.
-     * @return Vrai si la chaîne est un opérateur valide, faux sinon.
+     * Mémorise que la cellule fait partie d'une référence circulaire, ou en dépend, sans l'évaluer.
      */
-    private boolean isValidOperator(String part) {
-        return Arrays.asList(validOperators).contains(part);
+    public void markCircularReference() {
+        this.valueStore.setError(originSlot, CellError.CYCLE);
+        this.valueStore.updateAggregates(originSlot);
+        this.dirty = false;
     }
 
     /**
-     * Vérifie si une chaîne de caractères est une réference de cellule valide.
-     *
-     * @param part La chaîne de caractères à vérifier.
-     * @return Vrai si la chaîne est une référence de cellule valide, faux sinon.
+     * Reporte le résultat de la cellule dans les agrégats de sa colonne (voir
+     * {@link ValueStore#updateAggregates(int)}), une fois tout son niveau de recalcul évalué.
      */
-    private boolean isValidCell(String part) {
-        if (part.length() != 2) {
-            return false;
-        }
+    void updateAggregates() {
+        valueStore.updateAggregates(originSlot);
+    }
 
-        char column = part.charAt(0);
-        if (column < 'A' || column > 'I') {
-            return false;
-        }
+    /**
+     * Marque l'arbre comme sale : sa valeur mémorisée sera recalculée lors de la prochaine évaluation.
+     */
+    public void markDirty() {
+        this.dirty = true;
+    }
 
-        char row = part.charAt(1);
-        return row >= '1' && row <= '9';
+    public boolean isDirty() {
+        return this.dirty;
     }
 
     /**
-     * Vérifie si une chaîne de caractères représente un nombre.
+     * Renvoie l'erreur produite par le dernier calcul de la cellule.
      *
-     * @param part La chaîne de caractères à vérifier.
-     * @return Vrai si la chaîne représente un nombre, faux sinon.
+     * @return Le code de l'erreur, ou {@link CellError#NONE} si la cellule est calculable.
      */
-    private boolean isNumber(String part) {
-        try {
-            Double.parseDouble(part);
-            return true;
-        } catch (NumberFormatException e) {
-            return false;
-        }
+    public byte getError() {
+        byte state = valueStore.getState(originSlot);
+        return state == CellState.INCALCULABLE || state == CellState.INCORRECT
+                ? CellError.fromValue(valueStore.getValue(originSlot)) : CellError.NONE;
+    }
+
+    public FormulaProgram getProgram() {
+        return this.program;
+    }
+
+    public String getFormula() {
+        return this.formula != null ? this.formula : template.getFormula(originAddress);
     }
 
     /**
-     * Construit l'arbre de syntaxe abstraite en utilisant les parties de l'expression préfixée.
+     * Renvoie la formule telle qu'elle a été saisie.
      *
-     * @param parts Les parties de l'expression préfixée.
-     * @return La racine de l'arbre de syntaxe abstraite.
-     * @throws IncorrectFormulaException Si la formule est incorrecte.
+     * @return La formule saisie, ou null si elle s'écrit comme son modèle (voir {@link FormulaTemplate#getFormula(long)}).
      */
-    private Node buildTree(LinkedList<String> parts) throws IncorrectFormulaException {
-        if (parts.isEmpty()) {
-            throw new IncorrectFormulaException("Formule incorrecte : référence de cellule ou nombre manquant.");
-        }
-        String part = parts.poll();
-        if (isValidOperator(part)) {
-            return new OperatorNode(part.charAt(0), buildTree(parts), buildTree(parts));
-        } else if (isValidCell(part)) {
-            return new CellNode(part, this);
-        } else {
-            try {
-                return new NumberNode(Double.parseDouble(part));
-            } catch (NumberFormatException exception) {
-                throw new IncorrectFormulaException("Formule incorrecte : " + part + " n'a pas pu être converti en double.");
-            }
-        }
+    String getTypedFormula() {
+        return this.formula;
     }
 
-    public void addDependentCell(String cellReference) {
-        this.dependentCells.add(cellReference);
+    public FormulaTemplate getTemplate() {
+        return this.template;
     }
 
-    public HashSet<String> getDependentCells() {
-        return this.dependentCells;
+    /**
+     * Renvoie les adresses des cellules lues isolément par la formule, sans les cellules de ses plages.
+     *
+     * @return Un nouvel ensemble contenant les adresses des cellules lues.
+     */
+    public LongHashSet getPrecedentCells() {
+        LongHashSet precedentCells = new LongHashSet(slots.length);
+        for (int slot : slots) {
+            precedentCells.add(valueStore.getAddress(slot));
+        }
+        return precedentCells;
     }
 
-    public AbstractSyntaxTree[][] getAbstractSyntaxTreeArray() {
-        return this.abstractSyntaxTreeArray;
+    /**
+     * Renvoie les coins des plages lues par la formule : première ligne, première colonne, dernière ligne et
+     * dernière colonne de chaque plage.
+     *
+     * @return Les coins des plages, quatre entiers par plage, qui ne doivent pas être modifiés.
+     */
+    public int[] getPrecedentRanges() {
+        return ranges;
     }
 
     public String getOriginCellReference() {
         return originCellReference;
     }
+
+    public long getOriginAddress() {
+        return originAddress;
+    }
 }
@@ -0,0 +1,90 @@
+/**
+ * AggregateNode représente dans un arbre de syntaxe abstraite (AST) une fonction d'agrégat appliquée à une plage
+ * de cellules, par exemple {@code SUM A1:A100}.
+ * Comme pour {@link CellNode}, les coins de la plage sont désignés par leur position relative à la cellule qui
+ * contient la formule, si bien qu'une même plage glissante recopiée le long d'une colonne partage un seul nœud.
+ *
+ * @version 1.0
+ */
+public class AggregateNode extends Node {
+
+    // Noms des fonctions d'agrégat, dans l'ordre de leurs codes.
+    static final String[] FUNCTIONS = {"SUM", "AVERAGE", "MIN", "MAX", "COUNT"};
+
+    final int function;
+    final int firstRowOffset;
+    final int firstColOffset;
+    final int lastRowOffset;
+    final int lastColOffset;
+
+    /**
+     * Constructeur d'AggregateNode.
+     *
+     * @param function       Le code de la fonction, index de son nom dans {@link #FUNCTIONS}.
+     * @param firstRowOffset Le décalage de ligne du coin supérieur gauche de la plage.
+     * @param firstColOffset Le décalage de colonne du coin supérieur gauche de la plage.
+     * @param lastRowOffset  Le décalage de ligne du coin inférieur droit de la plage.
+     * @param lastColOffset  Le décalage de colonne du coin inférieur droit de la plage.
+     */
+    AggregateNode(int function, int firstRowOffset, int firstColOffset, int lastRowOffset, int lastColOffset) {
+        super(31 * (31 * (31 * (31 * function + firstRowOffset) + firstColOffset) + lastRowOffset) + lastColOffset);
+        this.function = function;
+        this.firstRowOffset = firstRowOffset;
+        this.firstColOffset = firstColOffset;
+        this.lastRowOffset = lastRowOffset;
+        this.lastColOffset = lastColOffset;
+    }
+
+    /**
+     * Renvoie le code d'une fonction d'agrégat.
+     *
+     * @param name Le nom de la fonction.
+     * @return Le code de la fonction, ou -1 si elle n'existe pas.
+     */
+    static int getFunction(String name) {
+        for (int function = 0; function < FUNCTIONS.length; function++) {
+            if (FUNCTIONS[function].equals(name)) {
+                return function;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compile ce nœud en une instruction qui calcule l'agrégat de la plage. Les cellules incalculables ou
+     * incorrectes de la plage sont détectées lors de l'évaluation du programme.
+     *
+     * @param compiler Le compilateur qui reçoit les instructions.
+     */
+    @Override
+    public void compile(FormulaCompiler compiler) {
+        compiler.aggregate(function, firstRowOffset, firstColOffset, lastRowOffset, lastColOffset);
+    }
+
+    @Override
+    void appendCanonicalForm(StringBuilder builder) {
+        builder.append(FUNCTIONS[function]).append(' ');
+        CellNode.appendRelativeReference(builder, firstRowOffset, firstColOffset);
+        builder.append(':');
+        CellNode.appendRelativeReference(builder, lastRowOffset, lastColOffset);
+    }
+
+    @Override
+    void appendFormula(StringBuilder builder, int originRow, int originCol) {
+        builder.append(FUNCTIONS[function]).append(' ')
+                .append(CellOperations.getCellReferenceFromCoordinates(originRow + firstRowOffset, originCol + firstColOffset))
+                .append(':')
+                .append(CellOperations.getCellReferenceFromCoordinates(originRow + lastRowOffset, originCol + lastColOffset));
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof AggregateNode)) {
+            return false;
+        }
+        AggregateNode aggregateNode = (AggregateNode) other;
+        return function == aggregateNode.function
+                && firstRowOffset == aggregateNode.firstRowOffset && firstColOffset == aggregateNode.firstColOffset
+                && lastRowOffset == aggregateNode.lastRowOffset && lastColOffset == aggregateNode.lastColOffset;
+    }
+}
@@ -0,0 +1,376 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * CalculationEngine analyse les formules et recalcule une {@link Sheet} sur un fil d'exécution dédié, afin que le
+ * fil de l'interface ne soit jamais bloqué par un recalcul.
+ * Les modifications sont déposées dans une file d'attente où elles sont regroupées : seule la dernière formule
+ * saisie pour une cellule est retenue, et toutes les modifications en attente sont appliquées avant un recalcul
+ * commun. La feuille n'est lue et modifiée que par le fil de calcul, qui travaille donc toujours sur un état
+ * cohérent.
+ * Un recalcul devenu inutile parce qu'une nouvelle modification est arrivée est interrompu puis repris avec
+ * celle-ci. À la fin d'un recalcul complet, un instantané des cellules concernées ({@link SheetUpdate}) est
+ * publié par l'exécuteur de publication, par exemple {@code SwingUtilities::invokeLater} pour une interface
+ * Swing.
+ * En évaluation paresseuse (voir {@link #setLazyEvaluation(boolean)}), seules les cellules de la zone affichée
+ * (voir {@link #setViewport(long[])}) sont recalculées après une modification ; les autres cellules périmées le
+ * sont lorsque plus aucune modification n'est en attente, et ce travail de fond est interrompu par la
+ * modification suivante.
+ * Les moteurs des feuilles d'un même classeur partagent un seul fil de calcul (voir {@link #newExecutor()}), car
+ * la modification d'une feuille recalcule les feuilles qui la lisent (voir {@link Workbook}) ; le moteur d'une
+ * feuille ainsi recalculée publie aussi les cellules affichées touchées par ce recalcul.
+ *
+ * @version 1.0
+ */
+public class CalculationEngine {
+
+    // Feuille calculée, réservée au fil de calcul.
+    private final Sheet sheet;
+
+    private final Consumer<SheetUpdate> publisher;
+    private final Executor publicationExecutor;
+    private final ExecutorService executor;
+
+    // Modifications en attente, protégées par le verrou de l'instance : dernière formule saisie par cellule.
+    private Map<Long, String> pendingEdits = new LinkedHashMap<>();
+    private boolean drainScheduled;
+
+    // Modifications appliquées mais pas encore publiées, réservées au fil de calcul. Les cellules modifiées
+    // restent à recalculer tant qu'un recalcul complet n'a pas abouti.
+    private final LongHashSet modifiedCells = new LongHashSet();
+    private final LongObjectHashMap<String> acceptedFormulas = new LongObjectHashMap<>();
+    private final LongHashSet rejectedCells = new LongHashSet();
+
+    // Cellules affichées par l'interface, seules publiées après un recalcul et recalculées en priorité en
+    // évaluation paresseuse ; réservées au fil de calcul.
+    private long[] viewport = new long[0];
+    private LongHashSet viewportCells = new LongHashSet();
+
+    /**
+     * Constructeur de CalculationEngine. La feuille ne doit plus être utilisée directement par la suite.
+     *
+     * @param sheet               La feuille à calculer.
+     * @param publisher           Reçoit le résultat de chaque recalcul.
+     * @param publicationExecutor L'exécuteur qui appelle le destinataire des résultats, par exemple sur le fil de
+     *                            l'interface.
+     */
+    public CalculationEngine(Sheet sheet, Consumer<SheetUpdate> publisher, Executor publicationExecutor) {
+        this(sheet, publisher, publicationExecutor, newExecutor());
+    }
+
+    /**
+     * Constructeur de CalculationEngine pour une feuille d'un classeur dont les autres feuilles sont calculées
+     * par le même fil. La feuille ne doit plus être utilisée directement par la suite.
+     *
+     * @param sheet               La feuille à calculer.
+     * @param publisher           Reçoit le résultat de chaque recalcul.
+     * @param publicationExecutor L'exécuteur qui appelle le destinataire des résultats, par exemple sur le fil de
+     *                            l'interface.
+     * @param executor            Le fil de calcul, partagé par les moteurs des feuilles du classeur (voir
+     *                            {@link #newExecutor()}).
+     */
+    public CalculationEngine(Sheet sheet, Consumer<SheetUpdate> publisher, Executor publicationExecutor, ExecutorService executor) {
+        this.sheet = sheet;
+        this.publisher = publisher;
+        this.publicationExecutor = publicationExecutor;
+        this.executor = executor;
+        executor.execute(() -> sheet.setExternalRecalculationListener(this::publishExternalRecalculation));
+    }
+
+    /**
+     * Crée un fil de calcul, qui peut être partagé par les moteurs de toutes les feuilles d'un classeur.
+     *
+     * @return L'exécuteur du fil de calcul.
+     */
+    public static ExecutorService newExecutor() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Calcul du tableur");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Dépose une nouvelle formule pour une cellule. Cette méthode rend la main immédiatement ; la formule est
+     * analysée et la feuille recalculée par le fil de calcul. Une formule vide supprime celle de la cellule.
+     *
+     * @param address L'adresse de la cellule.
+     * @param formula La nouvelle formule.
+     */
+    public synchronized void submitFormula(long address, String formula) {
+        pendingEdits.put(address, formula);
+        if (!drainScheduled) {
+            drainScheduled = true;
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * Demande la publication des formules, états et valeurs actuels de quelques cellules, par exemple pour
+     * afficher une feuille qui vient d'être ouverte. Les cellules sont lues par le fil de calcul, après les
+     * modifications déjà déposées.
+     *
+     * @param addresses Les adresses des cellules.
+     */
+    public void refresh(long[] addresses) {
+        executor.execute(() -> {
+            // En évaluation paresseuse, les cellules périmées sont recalculées avant d'être lues.
+            sheet.evaluate(addresses, () -> false);
+            String[] formulas = new String[addresses.length];
+            byte[] states = new byte[addresses.length];
+            double[] values = new double[addresses.length];
+            for (int index = 0; index < addresses.length; index++) {
+                formulas[index] = sheet.getFormula(addresses[index]);
+                states[index] = sheet.getState(addresses[index]);
+                values[index] = sheet.getValue(addresses[index]);
+            }
+            SheetUpdate update = new SheetUpdate(addresses, formulas, new long[0], addresses, states, values);
+            publicationExecutor.execute(() -> publisher.accept(update));
+        });
+    }
+
+    /**
+     * Change la zone affichée par l'interface, puis publie l'état de ses cellules comme
+     * {@link #refresh(long[])}. Seules les cellules affichées sont publiées après un recalcul ; en évaluation
+     * paresseuse, ce sont aussi les seules recalculées aussitôt après une modification.
+     *
+     * @param addresses Les adresses des cellules affichées.
+     */
+    public void setViewport(long[] addresses) {
+        executor.execute(() -> {
+            viewport = addresses;
+            viewportCells = new LongHashSet(addresses.length);
+            for (long address : addresses) {
+                viewportCells.add(address);
+            }
+        });
+        refresh(addresses);
+    }
+
+    /**
+     * Active ou désactive l'évaluation paresseuse de la feuille (voir {@link Sheet#setLazyEvaluation(boolean)}),
+     * après les modifications déjà déposées.
+     *
+     * @param lazyEvaluation Vrai pour ne recalculer aussitôt que les cellules affichées.
+     */
+    public void setLazyEvaluation(boolean lazyEvaluation) {
+        executor.execute(() -> sheet.setLazyEvaluation(lazyEvaluation));
+    }
+
+    /**
+     * Importe un fichier CSV dans la feuille (voir {@link CsvFile}), sur le fil de calcul et après les
+     * modifications déjà déposées. La feuille n'est recalculée qu'une fois, à la fin du fichier ; les cellules
+     * affichées doivent ensuite être relues avec {@link #refresh(long[])}.
+     *
+     * @param path         Le chemin du fichier.
+     * @param errorHandler Reçoit, par l'exécuteur de publication, la description de l'erreur qui a interrompu
+     *                     l'import. Les cellules qui la précèdent dans le fichier restent importées.
+     */
+    public void importCsv(Path path, Consumer<String> errorHandler) {
+        executor.execute(() -> {
+            try {
+                CsvFile.importSheet(sheet, path);
+            } catch (IOException | IncorrectFormulaException exception) {
+                publicationExecutor.execute(() -> errorHandler.accept(exception.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Exporte les valeurs calculées de la feuille dans un fichier CSV (voir {@link CsvFile}), sur le fil de
+     * calcul et après les modifications déjà déposées.
+     *
+     * @param path         Le chemin du fichier.
+     * @param errorHandler Reçoit, par l'exécuteur de publication, la description de l'erreur d'écriture.
+     */
+    public void exportCsv(Path path, Consumer<String> errorHandler) {
+        executor.execute(() -> {
+            try {
+                CsvFile.exportSheet(sheet, path);
+            } catch (IOException exception) {
+                publicationExecutor.execute(() -> errorHandler.accept(exception.getMessage()));
+            }
+        });
+    }
+
+    /**
+     * Arrête le moteur une fois les modifications déjà déposées appliquées et recalculées. La feuille peut
+     * ensuite être lue, par exemple pour être enregistrée, par le fil qui a appelé cette méthode. Les moteurs qui
+     * partagent le même fil de calcul s'arrêtent avec lui.
+     *
+     * @throws InterruptedException Si le fil est interrompu pendant l'attente.
+     */
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    private synchronized boolean hasPendingEdits() {
+        return !pendingEdits.isEmpty();
+    }
+
+    /**
+     * Retire toutes les modifications en attente.
+     *
+     * @return Les modifications, ou null s'il n'y en a plus, auquel cas le fil de calcul s'arrête.
+     */
+    private synchronized Map<Long, String> takePendingEdits() {
+        if (pendingEdits.isEmpty()) {
+            drainScheduled = false;
+            return null;
+        }
+        Map<Long, String> edits = pendingEdits;
+        pendingEdits = new LinkedHashMap<>();
+        return edits;
+    }
+
+    /**
+     * Applique les modifications en attente et recalcule la feuille, jusqu'à ce qu'il n'y ait plus de
+     * modification en attente.
+     */
+    private void drain() {
+        try {
+            for (Map<Long, String> edits = takePendingEdits(); edits != null; edits = takePendingEdits()) {
+                edits.forEach(this::applyEdit);
+
+                RecalculationResult result;
+                RecalculationResult viewportResult = null;
+                try {
+                    result = sheet.recalculate(modifiedCells.toArray(), this::hasPendingEdits);
+                    if (sheet.isLazyEvaluation()) {
+                        viewportResult = sheet.evaluate(viewport, this::hasPendingEdits);
+                    }
+                } catch (CancellationException exception) {
+                    // Les cellules modifiées seront recalculées avec les modifications suivantes.
+                    continue;
+                }
+                publish(result, viewportResult);
+            }
+            evaluateStaleCells();
+        } catch (RuntimeException exception) {
+            synchronized (this) {
+                drainScheduled = false;
+            }
+            throw exception;
+        }
+    }
+
+    /**
+     * Recalcule en tâche de fond les cellules encore périmées en évaluation paresseuse, hors de la zone
+     * affichée. Le recalcul est interrompu dès qu'une modification est déposée ; les cellules déjà recalculées
+     * ne le seront pas à nouveau.
+     */
+    private void evaluateStaleCells() {
+        try {
+            sheet.evaluateStaleCells(this::hasPendingEdits);
+        } catch (CancellationException exception) {
+            // La modification déposée a programmé une nouvelle vidange, qui reprendra ce recalcul.
+        }
+    }
+
+    /**
+     * Analyse et installe la nouvelle formule d'une cellule. Une formule incorrecte laisse en place la formule
+     * précédente de la cellule.
+     *
+     * @param address L'adresse de la cellule.
+     * @param formula La nouvelle formule.
+     */
+    private void applyEdit(long address, String formula) {
+        try {
+            sheet.installFormula(address, formula);
+        } catch (IncorrectFormulaException exception) {
+            rejectedCells.add(address);
+            return;
+        }
+
+        rejectedCells.remove(address);
+        acceptedFormulas.put(address, formula);
+        modifiedCells.add(address);
+    }
+
+    /**
+     * Publie les cellules affichées touchées par un recalcul provoqué par la modification d'une autre feuille du
+     * classeur. Appelée par le fil de calcul, pendant le recalcul de l'autre feuille, qui peut lui-même avoir été
+     * provoqué par une modification de cette feuille : les modifications qui n'ont pas encore été publiées le
+     * seront à la fin de leur propre recalcul.
+     *
+     * @param result Le résultat du recalcul de la feuille.
+     */
+    private void publishExternalRecalculation(RecalculationResult result) {
+        LongHashSet touchedCells = new LongHashSet();
+        addTouchedCells(touchedCells, result);
+        if (sheet.isLazyEvaluation()) {
+            addTouchedCells(touchedCells, sheet.evaluate(viewport, () -> false));
+        }
+        publishUpdate(touchedCells, new long[0], new String[0], new long[0]);
+    }
+
+    /**
+     * Publie vers l'interface les formules acceptées et refusées, ainsi que l'état des cellules affichées
+     * touchées par le recalcul.
+     *
+     * @param result         Le résultat du recalcul.
+     * @param viewportResult Le résultat du recalcul des cellules affichées en évaluation paresseuse, ou null.
+     */
+    private void publish(RecalculationResult result, RecalculationResult viewportResult) {
+        LongHashSet touchedCells = new LongHashSet(modifiedCells);
+        addTouchedCells(touchedCells, result);
+        if (viewportResult != null) {
+            addTouchedCells(touchedCells, viewportResult);
+        }
+
+        long[] acceptedAddresses = acceptedFormulas.keys();
+        String[] formulas = new String[acceptedAddresses.length];
+        for (int index = 0; index < acceptedAddresses.length; index++) {
+            formulas[index] = acceptedFormulas.get(acceptedAddresses[index]);
+        }
+        long[] rejectedAddresses = rejectedCells.toArray();
+        modifiedCells.clear();
+        acceptedFormulas.clear();
+        rejectedCells.clear();
+
+        publishUpdate(touchedCells, acceptedAddresses, formulas, rejectedAddresses);
+    }
+
+    /**
+     * Publie un instantané des cellules affichées parmi les cellules touchées, avec des formules acceptées et
+     * refusées.
+     */
+    private void publishUpdate(LongHashSet touchedCells, long[] acceptedAddresses, String[] formulas, long[] rejectedAddresses) {
+        LongHashSet displayed = new LongHashSet();
+        touchedCells.forEach(address -> {
+            if (viewportCells.contains(address)) {
+                displayed.add(address);
+            }
+        });
+
+        long[] displayedAddresses = displayed.toArray();
+        byte[] states = new byte[displayedAddresses.length];
+        double[] values = new double[displayedAddresses.length];
+        for (int index = 0; index < displayedAddresses.length; index++) {
+            states[index] = sheet.getState(displayedAddresses[index]);
+            values[index] = sheet.getValue(displayedAddresses[index]);
+        }
+
+        SheetUpdate update = new SheetUpdate(acceptedAddresses, formulas, rejectedAddresses,
+                displayedAddresses, states, values);
+        publicationExecutor.execute(() -> publisher.accept(update));
+    }
+
+    private static void addTouchedCells(LongHashSet touchedCells, RecalculationResult result) {
+        for (long address : result.getEvaluatedCells()) {
+            touchedCells.add(address);
+        }
+        for (long address : result.getCircularCells()) {
+            touchedCells.add(address);
+        }
+    }
+}
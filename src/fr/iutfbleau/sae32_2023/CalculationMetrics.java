@@ -0,0 +1,198 @@
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * CalculationMetrics rassemble les mesures du calcul d'une feuille : analyses de formules, évaluations de
+ * cellules, taille et durée des recalculs, références circulaires, erreurs et formules restées interprétées.
+ * Les compteurs sont mis à jour sans verrou, une fois par formule analysée ou par passe de recalcul, jamais par
+ * cellule lue, si bien que leur coût est négligeable. Ils sont consultables par JMX une fois l'instance
+ * enregistrée avec {@link #register(String)}.
+ *
+ * @version 1.0
+ */
+public class CalculationMetrics implements CalculationMetricsMBean {
+
+    // Domaine JMX des mesures du tableur.
+    static final String DOMAIN = "fr.iutfbleau.petittableur";
+
+    private static final AtomicInteger REGISTERED_COUNT = new AtomicInteger();
+
+    private final LongAdder parses = new LongAdder();
+    private final LongAdder parseErrors = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder evaluationErrors = new LongAdder();
+    private final LongAdder circularCells = new LongAdder();
+    private final LongAdder cancelledRecalculations = new LongAdder();
+    private final LongAdder compilationFailures = new LongAdder();
+    private final LongHistogram recalculationSizes = new LongHistogram();
+    private final LongHistogram recalculationLatencies = new LongHistogram();
+
+    /**
+     * Enregistre les mesures auprès du serveur JMX de la plateforme, sous le nom
+     * {@code fr.iutfbleau.petittableur:type=CalculationMetrics,name=<nom>-<numéro>}.
+     * Un échec de l'enregistrement n'empêche pas le calcul, les mesures restant alors seulement locales.
+     *
+     * @param name Le nom de la feuille mesurée.
+     * @return Le nom JMX sous lequel les mesures sont enregistrées, ou null en cas d'échec.
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=CalculationMetrics,name="
+                    + ObjectName.quote(name + "-" + REGISTERED_COUNT.incrementAndGet()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException | SecurityException exception) {
+            return null;
+        }
+    }
+
+    /**
+     * Compte une formule analysée.
+     *
+     * @param correct Faux si la formule était syntaxiquement incorrecte.
+     */
+    void recordParse(boolean correct) {
+        parses.increment();
+        if (!correct) {
+            parseErrors.increment();
+        }
+    }
+
+    /**
+     * Compte plusieurs formules correctes analysées ensemble, par exemple lors d'un import.
+     *
+     * @param count Le nombre de formules.
+     */
+    void recordParses(int count) {
+        parses.add(count);
+    }
+
+    /**
+     * Compte une évaluation de cellule qui a produit une erreur.
+     */
+    void recordEvaluationError() {
+        evaluationErrors.increment();
+    }
+
+    /**
+     * Compte une passe de recalcul terminée.
+     *
+     * @param evaluatedCount Le nombre de cellules évaluées.
+     * @param circularCount  Le nombre de cellules prises dans une référence circulaire.
+     * @param latencyNanos   La durée de la passe, en nanosecondes.
+     */
+    void recordRecalculation(int evaluatedCount, int circularCount, long latencyNanos) {
+        evaluations.add(evaluatedCount);
+        circularCells.add(circularCount);
+        recalculationSizes.record(evaluatedCount + circularCount);
+        recalculationLatencies.record(latencyNanos / 1000);
+    }
+
+    /**
+     * Compte une passe de recalcul interrompue.
+     *
+     * @param evaluatedCount Le nombre de cellules évaluées avant l'interruption.
+     */
+    void recordCancelledRecalculation(int evaluatedCount) {
+        evaluations.add(evaluatedCount);
+        cancelledRecalculations.increment();
+    }
+
+    /**
+     * Compte une formule dont la classe n'a pas pu être définie et qui reste donc interprétée.
+     */
+    void recordCompilationFailure() {
+        compilationFailures.increment();
+    }
+
+    @Override
+    public long getParses() {
+        return parses.sum();
+    }
+
+    @Override
+    public long getParseErrors() {
+        return parseErrors.sum();
+    }
+
+    @Override
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    @Override
+    public long getEvaluationErrors() {
+        return evaluationErrors.sum();
+    }
+
+    @Override
+    public long getCircularCells() {
+        return circularCells.sum();
+    }
+
+    @Override
+    public long getRecalculations() {
+        return recalculationSizes.getCount();
+    }
+
+    @Override
+    public long getCancelledRecalculations() {
+        return cancelledRecalculations.sum();
+    }
+
+    @Override
+    public long getCompilationFailures() {
+        return compilationFailures.sum();
+    }
+
+    @Override
+    public double getMeanRecalculationSize() {
+        return recalculationSizes.getMean();
+    }
+
+    @Override
+    public long getMaxRecalculationSize() {
+        return recalculationSizes.getMax();
+    }
+
+    @Override
+    public long[] getRecalculationSizeHistogram() {
+        return recalculationSizes.getBuckets();
+    }
+
+    @Override
+    public double getMeanRecalculationLatency() {
+        return recalculationLatencies.getMean();
+    }
+
+    @Override
+    public long getMaxRecalculationLatency() {
+        return recalculationLatencies.getMax();
+    }
+
+    @Override
+    public long getRecalculationLatency99thPercentile() {
+        return recalculationLatencies.getQuantile(0.99);
+    }
+
+    @Override
+    public long[] getRecalculationLatencyHistogram() {
+        return recalculationLatencies.getBuckets();
+    }
+
+    @Override
+    public void reset() {
+        parses.reset();
+        parseErrors.reset();
+        evaluations.reset();
+        evaluationErrors.reset();
+        circularCells.reset();
+        cancelledRecalculations.reset();
+        compilationFailures.reset();
+        recalculationSizes.reset();
+        recalculationLatencies.reset();
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * CalculationMetricsMBean est l'interface de gestion (JMX) qui expose les mesures du calcul d'une feuille.
+ * Les durées sont exprimées en microsecondes et les tailles en nombre de cellules.
+ *
+ * @version 1.0
+ */
+public interface CalculationMetricsMBean {
+
+    long getParses();
+
+    long getParseErrors();
+
+    long getEvaluations();
+
+    long getEvaluationErrors();
+
+    long getCircularCells();
+
+    long getRecalculations();
+
+    long getCancelledRecalculations();
+
+    /**
+     * @return Le nombre de formules restées interprétées parce que leur classe n'a pas pu être définie.
+     */
+    long getCompilationFailures();
+
+    double getMeanRecalculationSize();
+
+    long getMaxRecalculationSize();
+
+    /**
+     * @return Le nombre de recalculs par classe de taille (voir {@link LongHistogram}).
+     */
+    long[] getRecalculationSizeHistogram();
+
+    double getMeanRecalculationLatency();
+
+    long getMaxRecalculationLatency();
+
+    long getRecalculationLatency99thPercentile();
+
+    /**
+     * @return Le nombre de recalculs par classe de durée (voir {@link LongHistogram}).
+     */
+    long[] getRecalculationLatencyHistogram();
+
+    /**
+     * Remet toutes les mesures à zéro.
+     */
+    void reset();
+}
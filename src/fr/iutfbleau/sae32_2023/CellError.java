@@ -0,0 +1,103 @@
+/**
+ * CellError regroupe les erreurs que peut produire le calcul d'une formule. Comme celui d'un tableur, le
+ * résultat d'une formule incalculable est une valeur d'erreur plutôt qu'une exception : l'erreur est codée dans
+ * la charge utile d'un NaN (« NaN-boxing ») et rangée dans le {@link ValueStore} à la place de la valeur, si bien
+ * qu'une formule qui lit la cellule reprend son erreur sans rien lever. L'état de la cellule (voir
+ * {@link CellState}), et donc la couleur de sa {@link CellLabel}, se déduit de son erreur.
+ * Les codes sont rangés par gravité croissante : une plage qui contient plusieurs erreurs donne la plus grave.
+ *
+ * @version 1.0
+ */
+public final class CellError {
+
+    // Pas d'erreur : la cellule est vide ou calculable.
+    public static final byte NONE = 0;
+
+    // La formule divise par 0.
+    public static final byte DIV_ZERO = 1;
+
+    // La formule lit une cellule vide, ou une plage sans valeur pour une moyenne, un minimum ou un maximum.
+    public static final byte EMPTY = 2;
+
+    // La formule est incorrecte, ou lit une cellule dont la formule est incorrecte.
+    public static final byte REF = 3;
+
+    // La cellule fait partie d'une référence circulaire, ou en dépend.
+    public static final byte CYCLE = 4;
+
+    private static final String[] TEXTS = {"", "#DIV/0!", "#EMPTY", "#REF!", "#CYCLE"};
+
+    private static final String[] MESSAGES = {
+            "",
+            "Formule incalculable : division par 0.",
+            "Formule incalculable : la formule lit une cellule vide ou une plage sans valeur.",
+            "Formule incorrecte : la formule lit une formule incorrecte.",
+            "Formule incorrecte : référence circulaire détectée."
+    };
+
+    // NaN silencieux dont l'octet de poids faible porte le code de l'erreur. Les NaN produits par l'arithmétique,
+    // dont la charge utile est nulle, ne sont pas des erreurs.
+    private static final long BOXED_ERROR = 0x7ff8_0000_ce11_0000L;
+
+    private CellError() {
+    }
+
+    /**
+     * Code une erreur dans un double.
+     *
+     * @param error Le code de l'erreur.
+     * @return La valeur d'erreur.
+     */
+    public static double toValue(byte error) {
+        return Double.longBitsToDouble(BOXED_ERROR | error);
+    }
+
+    /**
+     * Décode l'erreur portée par une valeur.
+     *
+     * @param value La valeur.
+     * @return Le code de l'erreur, ou {@link #NONE} si la valeur n'est pas une valeur d'erreur.
+     */
+    public static byte fromValue(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        return (bits & ~0xffL) == BOXED_ERROR ? (byte) bits : NONE;
+    }
+
+    /**
+     * Renvoie l'état d'une cellule dont le calcul a produit une erreur.
+     *
+     * @param error Le code de l'erreur.
+     * @return {@link CellState#INCORRECT} pour une formule incorrecte ou circulaire,
+     * {@link CellState#INCALCULABLE} sinon.
+     */
+    public static byte getState(byte error) {
+        return error >= REF ? CellState.INCORRECT : CellState.INCALCULABLE;
+    }
+
+    /**
+     * Renvoie l'erreur telle qu'elle s'affiche dans une cellule, par exemple {@code #DIV/0!}.
+     *
+     * @param error Le code de l'erreur.
+     * @return Le texte de l'erreur, vide pour {@link #NONE}.
+     */
+    public static String getText(byte error) {
+        return TEXTS[error];
+    }
+
+    /**
+     * Construit l'exception qui décrit une erreur, pour les appelants qui en attendent une (voir
+     * {@link Sheet#getError(long)}). Les exceptions ne sont jamais levées pendant le calcul.
+     *
+     * @param error Le code de l'erreur.
+     * @return L'exception, ou null pour {@link #NONE}.
+     */
+    public static Exception toException(byte error) {
+        if (error == NONE) {
+            return null;
+        }
+        String message = MESSAGES[error] + " (" + TEXTS[error] + ")";
+        return getState(error) == CellState.INCORRECT
+                ? new IncorrectFormulaException(message)
+                : new IncalculableFormulaException(message);
+    }
+}
@@ -1,27 +1,27 @@
 import javax.swing.*;
+import javax.swing.border.Border;
 import java.awt.*;
 
 /**
  * CellLabel étend JLabel, c'est conçu pour représenter visuellement l'état d'une cellule de tableur.
  * Elle affiche différents arrière-plans et bordures en fonction de l'état de la formule de la cellule associée.
+ * Une seule étiquette sert à dessiner toutes les cellules visibles d'une {@link SheetGrid} : elle est
+ * reconfigurée puis peinte pour chaque cellule, sans jamais être ajoutée à l'interface.
  *
  * @version 1.0
  */
 
 public class CellLabel extends JLabel {
 
-
-    private Cell cell;
+    private static final Border DEFAULT_BORDER = BorderFactory.createLineBorder(Color.BLACK);
+    private static final Border SELECTED_BORDER = BorderFactory.createLineBorder(new Color(0, 100, 0), 3);
+    private static final Color MOUSE_ON_COLOR = new Color(230, 230, 230);
 
     /**
      * Constructeur de CellLabel.
-     * Initialise l'étiquette (label) avec une cellule spécifique, définit son apparence par défaut et ses
-     * paramètres d'alignement.
-     *
-     * @param cell La cellule à associer à ce label.
+     * Initialise l'étiquette (label) avec son apparence par défaut et ses paramètres d'alignement.
      */
-    public CellLabel(Cell cell) {
-        this.cell = cell;
+    public CellLabel() {
         this.setText("");
         this.setHorizontalAlignment(SwingConstants.CENTER);
         this.setOpaque(true);
@@ -42,10 +42,17 @@ public class CellLabel extends JLabel {
      */
     public void setDefaultAppearance() {
         this.setBackground(Color.WHITE);
-        this.setBorder(BorderFactory.createLineBorder(Color.BLACK));
+        this.setBorder(DEFAULT_BORDER);
         this.setForeground(Color.BLACK);
     }
 
+    /**
+     * Encadre l'étiquette pour indiquer la cellule sélectionnée.
+     */
+    public void setSelectedAppearance() {
+        this.setBorder(SELECTED_BORDER);
+    }
+
     /**
      * Change la couleur de fond pour indiquer une formule calculable.
      * Utilisé pour représenter visuellement qu'une formule peut être évaluée sans erreurs.
@@ -70,12 +77,28 @@ public class CellLabel extends JLabel {
         this.setBackground(Color.RED);
     }
 
+    /**
+     * Affiche l'erreur produite par le calcul de la cellule, par exemple {@code #DIV/0!}, sur la couleur de
+     * l'état qu'elle donne à la cellule : incorrecte pour une référence circulaire ou une formule incorrecte,
+     * incalculable sinon.
+     *
+     * @param error Le code de l'erreur (voir {@link CellError}).
+     */
+    public void setErrorAppearance(byte error) {
+        this.setText(CellError.getText(error));
+        if (CellError.getState(error) == CellState.INCORRECT) {
+            this.setIncorrectFormulaColor();
+        } else {
+            this.setIncalculableFormulaColor();
+        }
+    }
+
     /**
      * Change la couleur de fond lorsque la souris survole l'étiquette.
      * Utilisé pour une meilleure expérience utilisateur en indiquant visuellement la cellule active.
      */
     public void setMouseOnColor() {
-        this.setBackground(new Color(230, 230, 230));
+        this.setBackground(MOUSE_ON_COLOR);
     }
 
     /**
@@ -86,12 +109,26 @@ public class CellLabel extends JLabel {
         this.setBackground(Color.WHITE);
     }
 
+    // L'étiquette n'est jamais affichée pour elle-même : comme pour les rendus de JTable, les notifications de
+    // changement, qui coûteraient à chaque cellule peinte, sont supprimées.
+
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public void revalidate() {
+    }
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+    }
 
-    public Cell getCell() {
-        return this.cell;
+    @Override
+    public void repaint(Rectangle r) {
     }
 
-    public void setCell(Cell cell) {
-        this.cell = cell;
+    @Override
+    protected void firePropertyChange(String propertyName, Object oldValue, Object newValue) {
     }
 }
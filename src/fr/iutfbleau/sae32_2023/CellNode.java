@@ -1,55 +1,98 @@
-import java.util.HashSet;
-
 /**
  * CellNode représente un nœud dans un arbre de syntaxe abstraite (AST) qui fait référence à une cellule d'un tableur.
- * Il est utilisé pour évaluer la valeur de cette cellule dans le contexte de l'AST.
+ * La cellule est désignée par sa position relative à la cellule qui contient la formule (notation R1C1), si bien
+ * qu'un même nœud sert à toutes les cellules dont les formules lisent la même cellule voisine.
+ * Une référence à une autre feuille du classeur, par exemple {@code Feuille2!B7}, garde en plus le numéro et le
+ * nom de cette feuille ; la position reste relative, comme lorsqu'une formule est recopiée dans un tableur.
  *
  * @version 1.0
  */
 public class CellNode extends Node {
-    String cellReference;
-    AbstractSyntaxTree fatherAst;
+    final int rowOffset;
+    final int colOffset;
+
+    // Numéro de la feuille lue dans le classeur et nom de celle-ci, ou -1 et null pour la feuille de la formule.
+    final int sheet;
+    final String sheetName;
 
     /**
      * Constructeur de CellNode.
      *
-     * @param cellReference La référence de la cellule que ce nœud représente.
-     * @param fatherAst     L'arbre de syntaxe abstraite parent dans lequel ce nœud est contenu.
+     * @param rowOffset Le décalage de ligne de la cellule référencée par rapport à la cellule de la formule.
+     * @param colOffset Le décalage de colonne de la cellule référencée par rapport à la cellule de la formule.
      */
-    CellNode(String cellReference, AbstractSyntaxTree fatherAst) {
-        this.cellReference = cellReference;
-        this.fatherAst = fatherAst;
+    CellNode(int rowOffset, int colOffset) {
+        this(-1, null, rowOffset, colOffset);
     }
 
     /**
-     * Évalue la valeur de la cellule référencée par ce nœud.
-     * Cette méthode vérifie également les références circulaires et les cellules vides, lançant des exceptions
-     * si nécessaire.
+     * Constructeur de CellNode pour une cellule d'une autre feuille.
      *
-     * @param visited Un ensemble de références de cellules déjà visitées pour détecter les références circulaires.
-     * @return La valeur évaluée de la cellule.
-     * @throws IncorrectFormulaException    Si une référence circulaire est détectée.
-     * @throws IncalculableFormulaException Si la cellule référencée est vide ou ne peut pas être évaluée.
+     * @param sheet     Le numéro de la feuille lue dans le classeur, ou -1 pour la feuille de la formule.
+     * @param sheetName Le nom de la feuille lue, ou null pour la feuille de la formule.
+     * @param rowOffset Le décalage de ligne de la cellule référencée par rapport à la cellule de la formule.
+     * @param colOffset Le décalage de colonne de la cellule référencée par rapport à la cellule de la formule.
+     */
+    CellNode(int sheet, String sheetName, int rowOffset, int colOffset) {
+        super(31 * (31 * sheet + rowOffset) + colOffset);
+        this.rowOffset = rowOffset;
+        this.colOffset = colOffset;
+        this.sheet = sheet;
+        this.sheetName = sheetName;
+    }
+
+    /**
+     * Compile ce nœud en une instruction qui lit la valeur mémorisée de la cellule référencée, ou sa copie pour
+     * une cellule d'une autre feuille.
+     * Les cellules vides ou en erreur sont détectées lors de l'évaluation du programme.
+     *
+     * @param compiler Le compilateur qui reçoit les instructions.
      */
     @Override
-    public double evaluate(HashSet<String> visited) throws IncorrectFormulaException, IncalculableFormulaException {
+    public void compile(FormulaCompiler compiler) {
+        compiler.loadCell(sheet, rowOffset, colOffset);
+    }
 
-        if (visited.contains(cellReference)) {
-            throw new IncorrectFormulaException("Formule incorrecte : référence circulaire détectée dans la cellule " + cellReference);
+    @Override
+    void appendCanonicalForm(StringBuilder builder) {
+        if (sheetName != null) {
+            builder.append(sheetName).append('!');
         }
-        visited.add(cellReference);
-
-        int row = CellOperations.getRowFromCellReference(cellReference);
-        int col = CellOperations.getColFromCellReference(cellReference);
-        System.out.println("Récupération de l'AST de " + cellReference);
-        AbstractSyntaxTree abstractSyntaxTree = this.fatherAst.getAbstractSyntaxTreeArray()[row][col];
+        appendRelativeReference(builder, rowOffset, colOffset);
+    }
 
-        if (abstractSyntaxTree == null) {
-            throw new IncalculableFormulaException("Formule incalculable : la cellule " + cellReference + " est vide.");
+    @Override
+    void appendFormula(StringBuilder builder, int originRow, int originCol) {
+        if (sheetName != null) {
+            builder.append(sheetName).append('!');
         }
+        builder.append(CellOperations.getCellReferenceFromCoordinates(originRow + rowOffset, originCol + colOffset));
+    }
 
-        fatherAst.addDependentCell(cellReference);
+    /**
+     * Écrit une référence relative en notation R1C1, par exemple {@code R[-1]C[2]}.
+     *
+     * @param builder   Le tampon qui reçoit la référence.
+     * @param rowOffset Le décalage de ligne.
+     * @param colOffset Le décalage de colonne.
+     */
+    static void appendRelativeReference(StringBuilder builder, int rowOffset, int colOffset) {
+        builder.append('R');
+        if (rowOffset != 0) {
+            builder.append('[').append(rowOffset).append(']');
+        }
+        builder.append('C');
+        if (colOffset != 0) {
+            builder.append('[').append(colOffset).append(']');
+        }
+    }
 
-        return abstractSyntaxTree.evaluate(visited);
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof CellNode)) {
+            return false;
+        }
+        CellNode cellNode = (CellNode) other;
+        return rowOffset == cellNode.rowOffset && colOffset == cellNode.colOffset && sheet == cellNode.sheet;
     }
 }
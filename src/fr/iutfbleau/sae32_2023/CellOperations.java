@@ -1,45 +1,190 @@
 /**
  * La classe CellOperations fournit des méthodes statiques pour effectuer la conversion entre les références de
- * cellules et leurs coordonnées correspondantes dans un tableur.
+ * cellules, leurs coordonnées correspondantes dans un tableur et leur adresse compacte.
+ * Une adresse regroupe la ligne et la colonne d'une cellule dans un seul entier long, ce qui permet de ranger
+ * les cellules dans des tables creuses sans créer de chaînes de caractères.
+ * Une référence à une cellule d'une autre feuille du classeur a une adresse externe, dont les bits de poids
+ * fort portent le numéro de cette feuille (voir {@link #getExternalAddress(int, long)}).
  *
  * @version 1.0
  */
 
 public class CellOperations {
 
+    // Nombre maximal de lignes d'une feuille (1 à 1 048 576).
+    public static final int MAX_ROWS = 1 << 20;
+
+    // Nombre maximal de colonnes d'une feuille (A à XFD).
+    public static final int MAX_COLUMNS = 1 << 14;
+
+    // Nombre maximal de feuilles d'un classeur, leur numéro devant tenir dans les onze bits qui suivent la
+    // ligne et la colonne d'une adresse.
+    public static final int MAX_SHEETS = (1 << 11) - 1;
+
+    // Nombre de bits occupés par la colonne dans une adresse.
+    private static final int COLUMN_BITS = 14;
+
+    // Nombre de bits occupés par la ligne et la colonne dans une adresse.
+    private static final int CELL_BITS = COLUMN_BITS + 20;
+
     /**
      * Convertit une référence de cellule en sa colonne correspondante.
-     * Par exemple, 'A' est converti en 0, 'B' en 1, etc.
+     * Par exemple, 'A' est converti en 0, 'B' en 1, 'Z' en 25, 'AA' en 26, etc.
      *
      * @param cellReference La référence de la cellule sous forme de chaîne de caractères.
      * @return L'index de la colonne correspondant à la référence de la cellule.
      */
     public static int getColFromCellReference(String cellReference) {
-        return (cellReference.charAt(0) - (int) 'A');
+        int col = 0;
+        for (int index = 0; index < cellReference.length() && isColumnLetter(cellReference.charAt(index)); index++) {
+            col = col * 26 + (cellReference.charAt(index) - 'A' + 1);
+        }
+        return col - 1;
     }
 
     /**
      * Convertit une référence de cellule en sa ligne correspondante.
-     * Par exemple, le deuxième caractère '1' est converti en 0, '2' en 1, etc.
+     * Par exemple, 'A1' est converti en 0, 'B2' en 1, 'AB10' en 9, etc.
      *
      * @param cellReference La référence de la cellule sous forme de chaîne de caractères.
      * @return L'index de la ligne correspondant à la référence de la cellule.
      */
     public static int getRowFromCellReference(String cellReference) {
-        return (cellReference.charAt(1) - (int) '1');
+        int index = 0;
+        while (isColumnLetter(cellReference.charAt(index))) {
+            index++;
+        }
+        return Integer.parseInt(cellReference, index, cellReference.length(), 10) - 1;
     }
 
     /**
      * Convertit les coordonnées de ligne et de colonne en une référence de cellule.
-     * Par exemple, la ligne 0 et la colonne 0 sont converties en 'A1'.
+     * Par exemple, la ligne 0 et la colonne 0 sont converties en 'A1', la ligne 9 et la colonne 27 en 'AB10'.
      *
      * @param row L'index de la ligne.
      * @param col L'index de la colonne.
      * @return La référence de la cellule sous forme de chaîne de caractères.
      */
     public static String getCellReferenceFromCoordinates(int row, int col) {
-        char colChar = (char) ('A' + col);
-        int rowNum = row + 1;
-        return colChar + "" + rowNum;
+        return getColumnName(col) + (row + 1);
+    }
+
+    /**
+     * Convertit un index de colonne en son nom.
+     * Par exemple, 0 est converti en 'A', 25 en 'Z', 26 en 'AA' et 16383 en 'XFD'.
+     *
+     * @param col L'index de la colonne.
+     * @return Le nom de la colonne.
+     */
+    public static String getColumnName(int col) {
+        StringBuilder name = new StringBuilder(3);
+        for (int remaining = col + 1; remaining > 0; remaining = (remaining - 1) / 26) {
+            name.append((char) ('A' + (remaining - 1) % 26));
+        }
+        return name.reverse().toString();
+    }
+
+    /**
+     * Vérifie si une chaîne de caractères est une référence de cellule valide, c'est-à-dire une à trois lettres
+     * majuscules désignant une colonne entre A et XFD, suivies d'un numéro de ligne entre 1 et 1 048 576 écrit
+     * sans zéro initial.
+     *
+     * @param part La chaîne de caractères à vérifier.
+     * @return Vrai si la chaîne est une référence de cellule valide, faux sinon.
+     */
+    public static boolean isValidCellReference(String part) {
+        int length = part.length();
+        int letters = 0;
+        while (letters < length && isColumnLetter(part.charAt(letters))) {
+            letters++;
+        }
+        int digits = length - letters;
+        if (letters == 0 || letters > 3 || digits == 0 || digits > 7 || part.charAt(letters) == '0') {
+            return false;
+        }
+        for (int index = letters; index < length; index++) {
+            char digit = part.charAt(index);
+            if (digit < '0' || digit > '9') {
+                return false;
+            }
+        }
+        return getColFromCellReference(part) < MAX_COLUMNS && getRowFromCellReference(part) < MAX_ROWS;
+    }
+
+    /**
+     * Regroupe une ligne et une colonne en une adresse compacte.
+     *
+     * @param row L'index de la ligne.
+     * @param col L'index de la colonne.
+     * @return L'adresse de la cellule.
+     */
+    public static long getAddress(int row, int col) {
+        return ((long) row << COLUMN_BITS) | col;
+    }
+
+    /**
+     * Convertit une référence de cellule valide en son adresse compacte.
+     *
+     * @param cellReference La référence de la cellule sous forme de chaîne de caractères.
+     * @return L'adresse de la cellule.
+     */
+    public static long getAddressFromCellReference(String cellReference) {
+        return getAddress(getRowFromCellReference(cellReference), getColFromCellReference(cellReference));
+    }
+
+    /**
+     * Convertit une adresse compacte en la référence de cellule correspondante.
+     *
+     * @param address L'adresse de la cellule.
+     * @return La référence de la cellule sous forme de chaîne de caractères.
+     */
+    public static String getCellReferenceFromAddress(long address) {
+        return getCellReferenceFromCoordinates(getRowFromAddress(address), getColFromAddress(address));
+    }
+
+    /**
+     * Construit l'adresse externe d'une cellule d'une autre feuille, sous laquelle une feuille range la copie de
+     * sa valeur. Le numéro de la feuille n'occupe que des bits de poids fort, si bien que
+     * {@link #getRowFromAddress(long)} le laisse au-dessus des vingt bits de la ligne : une adresse externe se
+     * range par blocs de lignes comme une autre, sans jamais se confondre avec une cellule de la feuille.
+     *
+     * @param sheet   Le numéro de la feuille dans le classeur, inférieur à {@link #MAX_SHEETS}.
+     * @param address L'adresse de la cellule dans sa feuille.
+     * @return L'adresse externe de la cellule.
+     */
+    public static long getExternalAddress(int sheet, long address) {
+        return ((long) (sheet + 1) << CELL_BITS) | address;
+    }
+
+    /**
+     * Renvoie la feuille désignée par une adresse.
+     *
+     * @param address L'adresse d'une cellule.
+     * @return Le numéro de la feuille d'une adresse externe, ou -1 pour une cellule de la feuille elle-même.
+     */
+    public static int getSheetFromAddress(long address) {
+        return (int) (address >>> CELL_BITS) - 1;
+    }
+
+    /**
+     * Renvoie l'adresse d'une cellule dans sa propre feuille.
+     *
+     * @param address L'adresse de la cellule, externe ou non.
+     * @return L'adresse sans numéro de feuille.
+     */
+    public static long getLocalAddress(long address) {
+        return address & ((1L << CELL_BITS) - 1);
+    }
+
+    public static int getRowFromAddress(long address) {
+        return (int) (address >>> COLUMN_BITS);
+    }
+
+    public static int getColFromAddress(long address) {
+        return (int) (address & (MAX_COLUMNS - 1));
+    }
+
+    private static boolean isColumnLetter(char character) {
+        return character >= 'A' && character <= 'Z';
     }
 }
@@ -0,0 +1,23 @@
+/**
+ * CellState regroupe les états possibles du résultat d'une cellule, codés sur un octet pour être rangés dans
+ * des tableaux primitifs. Chaque état correspond à une couleur de {@link CellLabel}.
+ *
+ * @version 1.0
+ */
+public final class CellState {
+
+    // La cellule ne contient pas de formule.
+    public static final byte EMPTY = 0;
+
+    // La formule est correcte et sa valeur a pu être calculée.
+    public static final byte CALCULABLE = 1;
+
+    // La formule est correcte mais sa valeur n'a pas pu être calculée.
+    public static final byte INCALCULABLE = 2;
+
+    // La formule est incorrecte, par exemple parce qu'elle fait partie d'une référence circulaire.
+    public static final byte INCORRECT = 3;
+
+    private CellState() {
+    }
+}
@@ -0,0 +1,158 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ChannelWriter écrit un fichier à travers un tampon d'un mégaoctet, sans jamais construire le fichier entier en
+ * mémoire. Il suit la position atteinte afin de pouvoir aligner les tableaux d'un fichier de classeur (voir
+ * {@link WorkbookFile}). Les nombres sont écrits l'octet de poids faible d'abord.
+ *
+ * @version 1.0
+ */
+public class ChannelWriter {
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    private long position;
+
+    /**
+     * Constructeur de ChannelWriter.
+     *
+     * @param channel Le canal dans lequel écrire, à partir de sa position actuelle.
+     */
+    public ChannelWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Renvoie le nombre d'octets écrits depuis la création de l'écrivain, y compris ceux encore dans le tampon.
+     *
+     * @return La position atteinte.
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    public void putByte(byte value) throws IOException {
+        reserve(1);
+        buffer.put(value);
+        position++;
+    }
+
+    public void putInt(int value) throws IOException {
+        reserve(4);
+        buffer.putInt(value);
+        position += 4;
+    }
+
+    public void putLong(long value) throws IOException {
+        reserve(8);
+        buffer.putLong(value);
+        position += 8;
+    }
+
+    public void putLongs(long[] array, int count) throws IOException {
+        for (int offset = 0; offset < count; ) {
+            reserve(8);
+            int length = Math.min(count - offset, buffer.remaining() / 8);
+            buffer.asLongBuffer().put(array, offset, length);
+            buffer.position(buffer.position() + length * 8);
+            offset += length;
+            position += length * 8L;
+        }
+    }
+
+    public void putDoubles(double[] array, int count) throws IOException {
+        for (int offset = 0; offset < count; ) {
+            reserve(8);
+            int length = Math.min(count - offset, buffer.remaining() / 8);
+            buffer.asDoubleBuffer().put(array, offset, length);
+            buffer.position(buffer.position() + length * 8);
+            offset += length;
+            position += length * 8L;
+        }
+    }
+
+    public void putBytes(byte[] array, int count) throws IOException {
+        for (int offset = 0; offset < count; ) {
+            reserve(1);
+            int length = Math.min(count - offset, buffer.remaining());
+            buffer.put(array, offset, length);
+            offset += length;
+            position += length;
+        }
+    }
+
+    /**
+     * Recopie le contenu restant d'un tampon, par exemple la section projetée en mémoire d'une feuille qui n'a
+     * pas été modifiée, directement dans le canal.
+     *
+     * @param source Le tampon, dont la position avance jusqu'à sa limite.
+     * @throws IOException Si le canal ne peut pas être écrit.
+     */
+    public void putBuffer(ByteBuffer source) throws IOException {
+        flush();
+        position += source.remaining();
+        while (source.hasRemaining()) {
+            channel.write(source);
+        }
+    }
+
+    /**
+     * Écrit un texte précédé de sa longueur en octets, une fois encodé en UTF-8.
+     *
+     * @param string Le texte.
+     * @throws IOException Si le canal ne peut pas être écrit.
+     */
+    public void putString(String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        putInt(bytes.length);
+        putBytes(bytes, bytes.length);
+    }
+
+    /**
+     * Écrit un texte qui ne contient que des caractères ASCII, par exemple un nombre, sans sa longueur.
+     *
+     * @param text Le texte.
+     * @throws IOException Si le canal ne peut pas être écrit.
+     */
+    public void putAscii(String text) throws IOException {
+        reserve(text.length());
+        for (int index = 0; index < text.length(); index++) {
+            buffer.put((byte) text.charAt(index));
+        }
+        position += text.length();
+    }
+
+    /**
+     * Complète par des zéros jusqu'au prochain multiple de huit octets.
+     *
+     * @throws IOException Si le canal ne peut pas être écrit.
+     */
+    public void align() throws IOException {
+        while ((position & 7) != 0) {
+            putByte((byte) 0);
+        }
+    }
+
+    /**
+     * Écrit dans le canal le contenu du tampon.
+     *
+     * @throws IOException Si le canal ne peut pas être écrit.
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void reserve(int length) throws IOException {
+        if (buffer.remaining() < length) {
+            flush();
+        }
+    }
+}
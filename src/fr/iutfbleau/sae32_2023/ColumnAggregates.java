@@ -0,0 +1,220 @@
+import java.util.Arrays;
+
+/**
+ * ColumnAggregates tient à jour les agrégats des valeurs d'une colonne dans un arbre de segments : chaque nœud
+ * résume un intervalle de lignes par la somme, le nombre, le minimum et le maximum des valeurs calculables qu'il
+ * contient, ainsi que la plus grave des erreurs (voir {@link CellError}) de ses cellules.
+ * Modifier une cellule ou calculer un agrégat sur un intervalle de lignes ne visite qu'un nombre de nœuds
+ * logarithmique en la hauteur de la colonne, sans parcourir les cellules de l'intervalle.
+ * Les cellules vides sont ignorées par les agrégats. L'arbre ne couvre que les lignes déjà occupées et double
+ * de taille lorsqu'une cellule est calculée plus bas.
+ *
+ * @version 1.0
+ */
+public class ColumnAggregates {
+
+    private static final int MINIMUM_CAPACITY = 64;
+
+    // Nombre de feuilles de l'arbre, une puissance de deux : la feuille de la ligne r est le nœud capacity + r,
+    // et les enfants du nœud i sont les nœuds 2i et 2i + 1.
+    private int capacity;
+
+    private double[] sums;
+    private double[] minimums;
+    private double[] maximums;
+    private int[] counts;
+    private byte[] worstErrors;
+
+    /**
+     * Construit les agrégats d'une colonne vide.
+     */
+    public ColumnAggregates() {
+        allocate(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Met à jour la cellule d'une ligne puis les nœuds qui la couvrent.
+     *
+     * @param row   La ligne de la cellule.
+     * @param state L'état de la cellule.
+     * @param value La valeur de la cellule, ou sa valeur d'erreur si elle est incalculable ou incorrecte.
+     */
+    public void set(int row, byte state, double value) {
+        if (row >= capacity) {
+            if (state == CellState.EMPTY) {
+                return;
+            }
+            resize(Integer.highestOneBit(row) << 1);
+        }
+
+        int node = capacity + row;
+        worstErrors[node] = state == CellState.INCALCULABLE || state == CellState.INCORRECT ? CellError.fromValue(value) : CellError.NONE;
+        if (state == CellState.CALCULABLE) {
+            sums[node] = value;
+            minimums[node] = value;
+            maximums[node] = value;
+            counts[node] = 1;
+        } else {
+            sums[node] = 0;
+            minimums[node] = Double.POSITIVE_INFINITY;
+            maximums[node] = Double.NEGATIVE_INFINITY;
+            counts[node] = 0;
+        }
+
+        for (node >>= 1; node > 0; node >>= 1) {
+            combine(node);
+        }
+    }
+
+    /**
+     * Renvoie la somme des valeurs calculables d'un intervalle de lignes.
+     *
+     * @param firstRow La première ligne de l'intervalle.
+     * @param lastRow  La dernière ligne de l'intervalle, incluse.
+     * @return La somme, 0 si l'intervalle ne contient aucune valeur.
+     */
+    public double sum(int firstRow, int lastRow) {
+        double sum = 0;
+        for (int left = capacity + firstRow, right = capacity + clamp(lastRow) + 1; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                sum += sums[left++];
+            }
+            if ((right & 1) == 1) {
+                sum += sums[--right];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Renvoie le nombre de valeurs calculables d'un intervalle de lignes.
+     *
+     * @param firstRow La première ligne de l'intervalle.
+     * @param lastRow  La dernière ligne de l'intervalle, incluse.
+     * @return Le nombre de valeurs.
+     */
+    public int count(int firstRow, int lastRow) {
+        int count = 0;
+        for (int left = capacity + firstRow, right = capacity + clamp(lastRow) + 1; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                count += counts[left++];
+            }
+            if ((right & 1) == 1) {
+                count += counts[--right];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Renvoie la plus petite valeur calculable d'un intervalle de lignes.
+     *
+     * @param firstRow La première ligne de l'intervalle.
+     * @param lastRow  La dernière ligne de l'intervalle, incluse.
+     * @return Le minimum, ou l'infini positif si l'intervalle ne contient aucune valeur.
+     */
+    public double min(int firstRow, int lastRow) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int left = capacity + firstRow, right = capacity + clamp(lastRow) + 1; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                min = Math.min(min, minimums[left++]);
+            }
+            if ((right & 1) == 1) {
+                min = Math.min(min, minimums[--right]);
+            }
+        }
+        return min;
+    }
+
+    /**
+     * Renvoie la plus grande valeur calculable d'un intervalle de lignes.
+     *
+     * @param firstRow La première ligne de l'intervalle.
+     * @param lastRow  La dernière ligne de l'intervalle, incluse.
+     * @return Le maximum, ou l'infini négatif si l'intervalle ne contient aucune valeur.
+     */
+    public double max(int firstRow, int lastRow) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int left = capacity + firstRow, right = capacity + clamp(lastRow) + 1; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                max = Math.max(max, maximums[left++]);
+            }
+            if ((right & 1) == 1) {
+                max = Math.max(max, maximums[--right]);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Renvoie la plus grave des erreurs des cellules d'un intervalle de lignes.
+     *
+     * @param firstRow La première ligne de l'intervalle.
+     * @param lastRow  La dernière ligne de l'intervalle, incluse.
+     * @return Le code de l'erreur, ou {@link CellError#NONE} si aucune cellule n'est en erreur.
+     */
+    public byte getWorstError(int firstRow, int lastRow) {
+        byte worstError = CellError.NONE;
+        for (int left = capacity + firstRow, right = capacity + clamp(lastRow) + 1; left < right; left >>= 1, right >>= 1) {
+            if ((left & 1) == 1) {
+                worstError = (byte) Math.max(worstError, worstErrors[left++]);
+            }
+            if ((right & 1) == 1) {
+                worstError = (byte) Math.max(worstError, worstErrors[--right]);
+            }
+        }
+        return worstError;
+    }
+
+    /**
+     * Ramène la dernière ligne d'un intervalle dans l'arbre : les lignes qui n'y figurent pas sont vides.
+     */
+    private int clamp(int lastRow) {
+        return Math.min(lastRow, capacity - 1);
+    }
+
+    private void combine(int node) {
+        int left = node << 1;
+        int right = left + 1;
+        sums[node] = sums[left] + sums[right];
+        minimums[node] = Math.min(minimums[left], minimums[right]);
+        maximums[node] = Math.max(maximums[left], maximums[right]);
+        counts[node] = counts[left] + counts[right];
+        worstErrors[node] = (byte) Math.max(worstErrors[left], worstErrors[right]);
+    }
+
+    private void allocate(int newCapacity) {
+        capacity = newCapacity;
+        sums = new double[2 * newCapacity];
+        minimums = new double[2 * newCapacity];
+        maximums = new double[2 * newCapacity];
+        counts = new int[2 * newCapacity];
+        worstErrors = new byte[2 * newCapacity];
+        Arrays.fill(minimums, Double.POSITIVE_INFINITY);
+        Arrays.fill(maximums, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Agrandit l'arbre : les feuilles sont recopiées puis les nœuds internes recalculés.
+     *
+     * @param newCapacity La nouvelle capacité, une puissance de deux.
+     */
+    private void resize(int newCapacity) {
+        int oldCapacity = capacity;
+        double[] oldSums = sums;
+        double[] oldMinimums = minimums;
+        double[] oldMaximums = maximums;
+        int[] oldCounts = counts;
+        byte[] oldWorstErrors = worstErrors;
+        allocate(newCapacity);
+
+        System.arraycopy(oldSums, oldCapacity, sums, newCapacity, oldCapacity);
+        System.arraycopy(oldMinimums, oldCapacity, minimums, newCapacity, oldCapacity);
+        System.arraycopy(oldMaximums, oldCapacity, maximums, newCapacity, oldCapacity);
+        System.arraycopy(oldCounts, oldCapacity, counts, newCapacity, oldCapacity);
+        System.arraycopy(oldWorstErrors, oldCapacity, worstErrors, newCapacity, oldCapacity);
+        for (int node = newCapacity - 1; node > 0; node--) {
+            combine(node);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+/**
+ * CompiledFormula est implémentée par les classes cachées que {@link FormulaClassGenerator} engendre pour les
+ * formules les plus souvent évaluées. Chaque implémentation calcule une forme de formule en code linéaire, que
+ * le compilateur à la volée de la JVM peut ensuite intégrer entièrement, et sert à toutes les cellules qui
+ * partagent cette forme.
+ *
+ * @version 1.0
+ */
+public interface CompiledFormula {
+
+    /**
+     * Calcule la formule à partir des valeurs des cellules.
+     * Les cellules lues doivent avoir été vérifiées calculables auparavant.
+     *
+     * @param values Les valeurs des cellules, indexées par emplacement dans le {@link ValueStore}.
+     * @param slots  L'emplacement de chaque référence de la formule pour la cellule évaluée.
+     * @return Le résultat de la formule, NaN en cas de division par 0 (voir {@link FormulaProgram#divide}).
+     */
+    double eval(double[] values, int[] slots);
+}
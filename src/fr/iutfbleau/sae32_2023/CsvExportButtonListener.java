@@ -0,0 +1,41 @@
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * CsvExportButtonListener est un ActionListener qui exporte les valeurs calculées de la feuille d'une page dans
+ * un fichier CSV choisi par l'utilisateur. L'export a lieu sur le fil du moteur de calcul de la page.
+ *
+ * @version 1.0
+ */
+public class CsvExportButtonListener implements ActionListener {
+
+    private final TabPage tabPage;
+
+    /**
+     * Constructeur de CsvExportButtonListener.
+     *
+     * @param tabPage La page dont la feuille est exportée.
+     */
+    public CsvExportButtonListener(TabPage tabPage) {
+        this.tabPage = tabPage;
+    }
+
+    /**
+     * Demande un fichier à l'utilisateur et confie l'export au moteur de calcul. Une erreur d'écriture est
+     * signalée par une boîte de dialogue.
+     *
+     * @param e L'événement d'action qui a déclenché cette méthode.
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        JFileChooser fileChooser = new JFileChooser();
+        if (fileChooser.showSaveDialog(tabPage) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        tabPage.calculationEngine.exportCsv(fileChooser.getSelectedFile().toPath(), message ->
+                JOptionPane.showMessageDialog(tabPage, "Le fichier n'a pas pu être exporté : " + message,
+                        "Petit Tableur", JOptionPane.ERROR_MESSAGE));
+    }
+}
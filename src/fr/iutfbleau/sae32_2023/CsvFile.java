@@ -0,0 +1,366 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * CsvFile importe des cellules depuis un fichier CSV et exporte les valeurs calculées d'une feuille, en
+ * flux : ni le fichier ni son contenu analysé ne sont jamais entièrement en mémoire.
+ * Chaque ligne du fichier correspond à une ligne de la feuille et chaque champ, séparé par une virgule, à une
+ * cellule : le champ contient la formule de la cellule, telle qu'elle serait saisie (un nombre ou une formule en
+ * notation préfixée). Un champ peut être placé entre guillemets, un guillemet y étant alors doublé, mais ne peut
+ * pas contenir de fin de ligne.
+ * L'import lit le fichier par fenêtres projetées en mémoire, découpe chaque fenêtre en morceaux de lignes
+ * entières et analyse les morceaux en parallèle sur un {@link ForkJoinPool}. Les cellules analysées sont ensuite
+ * installées dans la feuille sans recalcul, et la feuille n'est recalculée qu'une fois, à la fin du fichier.
+ *
+ * @version 1.0
+ */
+public class CsvFile {
+
+    static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+
+    // Taille maximale d'une fenêtre du fichier, et donc d'une ligne.
+    private static final int WINDOW_SIZE = 8 << 20;
+
+    // Taille approximative d'un morceau analysé par une même tâche.
+    private static final int CHUNK_SIZE = 256 << 10;
+
+    private CsvFile() {
+    }
+
+    /**
+     * Importe un fichier CSV dans une feuille, les morceaux du fichier étant analysés sur le pool commun.
+     *
+     * @see #importSheet(Sheet, Path, ForkJoinPool)
+     */
+    public static RecalculationResult importSheet(Sheet sheet, Path path) throws IOException, IncorrectFormulaException {
+        return importSheet(sheet, path, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Importe un fichier CSV dans une feuille : chaque champ non vide remplace la formule de sa cellule, les
+     * champs vides laissant leur cellule inchangée. La feuille est recalculée une seule fois, à la fin.
+     * Si une formule est incorrecte, l'import s'arrête juste avant elle : les cellules qui la précèdent dans le
+     * fichier restent importées et sont recalculées. Une formule qui ferme une référence circulaire arrête
+     * l'import de la même façon.
+     *
+     * @param sheet La feuille, qui ne doit pas être utilisée par un autre fil pendant l'import.
+     * @param path  Le chemin du fichier.
+     * @param pool  Le pool qui analyse les morceaux du fichier.
+     * @return Le résultat du recalcul.
+     * @throws IOException               Si le fichier ne peut pas être lu ou a une ligne de plus de 8 Mo.
+     * @throws IncorrectFormulaException Si une formule n'est pas syntaxiquement correcte ou ferme une référence
+     *                                   circulaire, ou si un champ non vide tombe en dehors de la feuille.
+     */
+    public static RecalculationResult importSheet(Sheet sheet, Path path, ForkJoinPool pool) throws IOException, IncorrectFormulaException {
+        // Cellules à recalculer : les formules, et les nombres que des formules lisent.
+        long[] modifiedCells = new long[64];
+        int modifiedCount = 0;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int firstRow = 0;
+            for (long windowStart = 0; windowStart < size; ) {
+                int length = (int) Math.min(WINDOW_SIZE, size - windowStart);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+                if (windowStart + length < size) {
+                    length = lastLineEnd(window, length);
+                    if (length == 0) {
+                        throw new IOException("Ligne de plus de " + (WINDOW_SIZE >> 20) + " Mo à la position " + windowStart);
+                    }
+                }
+
+                Chunk[] chunks = split(window, length);
+                pool.invoke(new ChunkTask(chunks, 0, chunks.length, null));
+                for (Chunk chunk : chunks) {
+                    chunk.firstRow = firstRow;
+                    firstRow += chunk.lineCount;
+                }
+                pool.invoke(new ChunkTask(chunks, 0, chunks.length, sheet.getFormulaInterner()));
+
+                // Un morceau dont l'analyse a échoué garde les cellules qui précèdent l'erreur : elles sont
+                // installées avec celles des morceaux précédents, et les morceaux suivants sont ignorés.
+                for (Chunk chunk : chunks) {
+                    for (int cell = 0; cell < chunk.cellCount; cell++) {
+                        long address = chunk.addresses[cell];
+                        if (chunk.templates[cell] != null) {
+                            try {
+                                sheet.installFormula(address, chunk.templates[cell], chunk.formulas[cell]);
+                            } catch (IncorrectFormulaException exception) {
+                                sheet.recalculate(Arrays.copyOf(modifiedCells, modifiedCount), () -> false);
+                                throw new IncorrectFormulaException("Cellule " + CellOperations.getCellReferenceFromAddress(address)
+                                        + " : " + exception.getMessage());
+                            }
+                        } else {
+                            sheet.installConstant(address, chunk.constants[cell], chunk.formulas[cell]);
+                            if (!sheet.hasDependents(address)) {
+                                continue;
+                            }
+                        }
+                        if (modifiedCount == modifiedCells.length) {
+                            modifiedCells = Arrays.copyOf(modifiedCells, modifiedCount * 2);
+                        }
+                        modifiedCells[modifiedCount++] = address;
+                    }
+                    sheet.getMetrics().recordParses(chunk.cellCount);
+                    if (chunk.error != null) {
+                        sheet.recalculate(Arrays.copyOf(modifiedCells, modifiedCount), () -> false);
+                        throw chunk.error;
+                    }
+                }
+                windowStart += length;
+            }
+        }
+        return sheet.recalculate(Arrays.copyOf(modifiedCells, modifiedCount), () -> false);
+    }
+
+    /**
+     * Exporte les valeurs calculées d'une feuille, de la cellule A1 jusqu'à la dernière ligne et la dernière
+     * colonne non vides. Une cellule vide, incalculable ou incorrecte donne un champ vide, comme une valeur qui
+     * n'est pas un nombre fini (un NaN ou un infini), qu'aucune formule ne sait écrire. Les champs vides en fin
+     * de ligne sont omis.
+     * Les cellules sont lues par bandes de {@link ValueStore#BLOCK_ROWS} lignes, une recherche de bloc par colonne
+     * et par bande, et écrites à travers un tampon de taille fixe.
+     *
+     * @param sheet La feuille, qui ne doit pas être modifiée pendant l'export.
+     * @param path  Le chemin du fichier, remplacé s'il existe.
+     * @throws IOException Si le fichier ne peut pas être écrit.
+     */
+    public static void exportSheet(Sheet sheet, Path path) throws IOException {
+        // Les valeurs périmées d'une feuille en évaluation paresseuse sont recalculées avant d'être écrites.
+        sheet.evaluateStaleCells(() -> false);
+        ValueStore valueStore = sheet.getValueStore();
+        int lastRow = -1;
+        int lastCol = -1;
+        for (int block = 0; block < valueStore.getBlockCount(); block++) {
+            long blockAddress = valueStore.getBlockAddress(block);
+            if (CellOperations.getSheetFromAddress(blockAddress) >= 0) {
+                // Copies de cellules d'autres feuilles.
+                continue;
+            }
+            for (int row = ValueStore.BLOCK_ROWS - 1; row >= 0; row--) {
+                if (valueStore.getState(block * ValueStore.BLOCK_ROWS + row) != CellState.EMPTY) {
+                    lastRow = Math.max(lastRow, CellOperations.getRowFromAddress(blockAddress) + row);
+                    lastCol = Math.max(lastCol, CellOperations.getColFromAddress(blockAddress));
+                    break;
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter writer = new ChannelWriter(channel);
+            int[] bandSlots = new int[lastCol + 1];
+            for (int bandRow = 0; bandRow <= lastRow; bandRow += ValueStore.BLOCK_ROWS) {
+                for (int col = 0; col <= lastCol; col++) {
+                    bandSlots[col] = valueStore.findSlot(CellOperations.getAddress(bandRow, col));
+                }
+                for (int row = 0; row < ValueStore.BLOCK_ROWS && bandRow + row <= lastRow; row++) {
+                    int separators = 0;
+                    for (int col = 0; col <= lastCol; col++) {
+                        if (bandSlots[col] < 0 || valueStore.getState(bandSlots[col] + row) != CellState.CALCULABLE
+                                || !Double.isFinite(valueStore.getValue(bandSlots[col] + row))) {
+                            separators++;
+                            continue;
+                        }
+                        for (; separators > 0; separators--) {
+                            writer.putByte(SEPARATOR);
+                        }
+                        writer.putAscii(NumberNode.format(valueStore.getValue(bandSlots[col] + row)));
+                        separators = 1;
+                    }
+                    writer.putByte((byte) '\n');
+                }
+            }
+            writer.flush();
+        }
+    }
+
+    /**
+     * Renvoie la longueur de la partie d'une fenêtre qui se termine par la dernière fin de ligne.
+     *
+     * @return La longueur, fin de ligne comprise, ou 0 si la fenêtre n'en contient pas.
+     */
+    private static int lastLineEnd(MappedByteBuffer window, int length) {
+        for (int index = length - 1; index >= 0; index--) {
+            if (window.get(index) == '\n') {
+                return index + 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Découpe une fenêtre en morceaux d'environ {@link #CHUNK_SIZE} octets, chacun fait de lignes entières.
+     */
+    private static Chunk[] split(MappedByteBuffer window, int length) {
+        Chunk[] chunks = new Chunk[length / CHUNK_SIZE + 1];
+        int count = 0;
+        for (int start = 0, end; start < length; start = end) {
+            end = Math.min(length, start + CHUNK_SIZE);
+            while (end < length && window.get(end - 1) != '\n') {
+                end++;
+            }
+            byte[] bytes = new byte[end - start];
+            window.get(start, bytes);
+            chunks[count++] = new Chunk(bytes);
+        }
+        return Arrays.copyOf(chunks, count);
+    }
+
+    /**
+     * Chunk est un morceau de fichier fait de lignes entières, et les cellules qui y ont été analysées.
+     */
+    private static final class Chunk {
+        private final byte[] bytes;
+        private int lineCount;
+        private int firstRow;
+
+        private int cellCount;
+        private long[] addresses;
+        private double[] constants;
+        private FormulaTemplate[] templates;
+        private String[] formulas;
+        private IncorrectFormulaException error;
+
+        Chunk(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        void countLines() {
+            for (byte character : bytes) {
+                if (character == '\n') {
+                    lineCount++;
+                }
+            }
+            // La dernière ligne du fichier peut ne pas se terminer par une fin de ligne.
+            if (bytes.length > 0 && bytes[bytes.length - 1] != '\n') {
+                lineCount++;
+            }
+        }
+
+        /**
+         * Analyse les champs du morceau : un nombre est reconnu sans arbre, une formule est analysée en un modèle
+         * partagé par l'interner de la feuille. La première formule incorrecte arrête l'analyse.
+         */
+        void parse(FormulaInterner interner) {
+            int capacity = 64;
+            addresses = new long[capacity];
+            constants = new double[capacity];
+            templates = new FormulaTemplate[capacity];
+            formulas = new String[capacity];
+
+            int row = firstRow;
+            int col = 0;
+            for (int position = 0; position < bytes.length; ) {
+                int fieldEnd = position;
+                String field;
+                if (bytes[position] == QUOTE) {
+                    StringBuilder builder = new StringBuilder();
+                    for (fieldEnd = position + 1; fieldEnd < bytes.length && bytes[fieldEnd] != '\n'; fieldEnd++) {
+                        if (bytes[fieldEnd] == QUOTE) {
+                            if (fieldEnd + 1 < bytes.length && bytes[fieldEnd + 1] == QUOTE) {
+                                fieldEnd++;
+                            } else {
+                                fieldEnd++;
+                                break;
+                            }
+                        }
+                        builder.append((char) (bytes[fieldEnd] & 0xFF));
+                    }
+                    field = new String(builder.toString().getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+                    while (fieldEnd < bytes.length && bytes[fieldEnd] != SEPARATOR && bytes[fieldEnd] != '\n') {
+                        fieldEnd++;
+                    }
+                } else {
+                    while (fieldEnd < bytes.length && bytes[fieldEnd] != SEPARATOR && bytes[fieldEnd] != '\n') {
+                        fieldEnd++;
+                    }
+                    int textEnd = fieldEnd > position && bytes[fieldEnd - 1] == '\r' ? fieldEnd - 1 : fieldEnd;
+                    field = new String(bytes, position, textEnd - position, StandardCharsets.UTF_8);
+                }
+
+                if (!field.isBlank()) {
+                    if (row >= CellOperations.MAX_ROWS || col >= CellOperations.MAX_COLUMNS) {
+                        error = new IncorrectFormulaException("Ligne " + (row + 1) + ", champ " + (col + 1)
+                                + " : en dehors de la feuille");
+                        return;
+                    }
+                    if (cellCount == capacity) {
+                        capacity *= 2;
+                        addresses = Arrays.copyOf(addresses, capacity);
+                        constants = Arrays.copyOf(constants, capacity);
+                        templates = Arrays.copyOf(templates, capacity);
+                        formulas = Arrays.copyOf(formulas, capacity);
+                    }
+                    long address = CellOperations.getAddress(row, col);
+                    addresses[cellCount] = address;
+                    constants[cellCount] = FormulaParser.parseConstant(field);
+                    formulas[cellCount] = field;
+                    if (Double.isNaN(constants[cellCount])) {
+                        try {
+                            templates[cellCount] = interner.template(FormulaParser.parse(field, address, interner));
+                        } catch (IncorrectFormulaException exception) {
+                            error = new IncorrectFormulaException("Cellule " + CellOperations.getCellReferenceFromAddress(address)
+                                    + " : " + exception.getMessage());
+                            return;
+                        }
+                        if (field.equals(templates[cellCount].getFormula(address))) {
+                            formulas[cellCount] = null;
+                        }
+                    }
+                    cellCount++;
+                }
+
+                if (fieldEnd < bytes.length && bytes[fieldEnd] == SEPARATOR) {
+                    col++;
+                } else {
+                    row++;
+                    col = 0;
+                }
+                position = fieldEnd + 1;
+            }
+        }
+    }
+
+    /**
+     * ChunkTask compte les lignes, ou analyse les cellules, d'une tranche de morceaux en la coupant en deux
+     * jusqu'à n'avoir plus qu'un morceau.
+     */
+    private static final class ChunkTask extends RecursiveAction {
+        private final Chunk[] chunks;
+        private final int start;
+        private final int end;
+
+        // L'interner qui partage les formules de la feuille, ou null pour seulement compter les lignes.
+        private final FormulaInterner interner;
+
+        ChunkTask(Chunk[] chunks, int start, int end, FormulaInterner interner) {
+            this.chunks = chunks;
+            this.start = start;
+            this.end = end;
+            this.interner = interner;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start == 1) {
+                if (interner == null) {
+                    chunks[start].countLines();
+                } else {
+                    chunks[start].parse(interner);
+                }
+            } else if (end - start > 1) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new ChunkTask(chunks, start, middle, interner), new ChunkTask(chunks, middle, end, interner));
+            }
+        }
+    }
+}
@@ -0,0 +1,43 @@
+import javax.swing.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * CsvImportButtonListener est un ActionListener qui importe un fichier CSV dans la feuille d'une page.
+ * Le fichier est choisi par l'utilisateur, puis importé et recalculé par le moteur de calcul de la page, hors du
+ * fil de l'interface.
+ *
+ * @version 1.0
+ */
+public class CsvImportButtonListener implements ActionListener {
+
+    private final TabPage tabPage;
+
+    /**
+     * Constructeur de CsvImportButtonListener.
+     *
+     * @param tabPage La page dont la feuille reçoit les cellules importées.
+     */
+    public CsvImportButtonListener(TabPage tabPage) {
+        this.tabPage = tabPage;
+    }
+
+    /**
+     * Demande un fichier CSV à l'utilisateur et confie son import au moteur de calcul. Les cellules affichées
+     * sont relues une fois l'import terminé ; une erreur d'import est signalée par une boîte de dialogue.
+     *
+     * @param e L'événement d'action qui a déclenché cette méthode.
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        JFileChooser fileChooser = new JFileChooser();
+        if (fileChooser.showOpenDialog(tabPage) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        tabPage.calculationEngine.importCsv(fileChooser.getSelectedFile().toPath(), message ->
+                JOptionPane.showMessageDialog(tabPage, "L'import a été interrompu : " + message,
+                        "Petit Tableur", JOptionPane.ERROR_MESSAGE));
+        tabPage.calculationEngine.refresh(tabPage.getDisplayedCells());
+    }
+}
@@ -0,0 +1,474 @@
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * DependencyGraph mémorise les liens entre les cellules du tableur : pour chaque cellule, les cellules qu'elle
+ * lit (ses précédents) et les cellules qui la lisent (ses dépendants).
+ * Les deux sens sont tenus à jour à chaque remplacement ou suppression de formule, ce qui permet de retrouver
+ * les dépendants d'une cellule sans parcourir toute la feuille.
+ * Les cellules sont désignées par leur adresse compacte (voir {@link CellOperations#getAddress(int, int)}).
+ * Les plages lues par les fonctions d'agrégat ne sont pas détaillées cellule par cellule : elles sont rangées
+ * telles quelles dans un {@link RangeDependencyIndex}, si bien que la mémoire occupée dépend du nombre de
+ * formules et non du nombre de cellules qu'elles couvrent.
+ * Les dépendances d'une feuille ouverte depuis un fichier restent dans la table enregistrée du fichier (voir
+ * {@link StoredSheet}) jusqu'à ce que leurs formules soient modifiées ou recalculées.
+ * Le graphe reste sans cycle et tient à jour un ordre topologique : chaque cellule qui lit d'autres cellules a
+ * un rang strictement supérieur à celui des cellules qu'elle lit, les autres cellules précédant toutes les
+ * autres. Lorsqu'une formule reçoit de nouveaux précédents, seuls ses dépendants dont le rang ne dépasse pas
+ * celui de ses précédents sont parcourus (comme dans l'algorithme de Pearce et Kelly) : si l'un d'eux est un
+ * précédent, la formule fermerait une référence circulaire et elle est refusée, sinon ils reçoivent de
+ * nouveaux rangs, placés entre ceux de ses précédents et ceux de leurs dépendants.
+ * Les graphes des feuilles d'un même classeur partagent un seul ordre (voir {@link #attach(Workbook, int)}) :
+ * la copie d'une cellule d'une autre feuille (voir {@link CellOperations#getExternalAddress(int, long)}) a le rang
+ * de cette cellule dans le graphe de sa feuille, et le parcours d'une formule suit aussi les cellules des autres
+ * feuilles qui lisent les cellules parcourues. Une formule n'est ainsi refusée que si elle ferme une véritable
+ * référence circulaire, éventuellement à travers plusieurs feuilles.
+ *
+ * @version 1.0
+ */
+public class DependencyGraph {
+
+    // Cellules lues par chaque cellule.
+    private final LongObjectHashMap<LongHashSet> precedents = new LongObjectHashMap<>();
+
+    // Cellules qui lisent chaque cellule.
+    private final LongObjectHashMap<LongHashSet> dependents = new LongObjectHashMap<>();
+
+    // Plages lues par chaque cellule, quatre entiers par plage (voir FormulaProgram#bindRanges).
+    private final LongObjectHashMap<int[]> precedentRanges = new LongObjectHashMap<>();
+
+    // Cellules qui lisent chaque plage.
+    private final RangeDependencyIndex rangeDependents = new RangeDependencyIndex();
+
+    // Dépendances enregistrées des formules qui n'ont pas encore d'arbre, ou null.
+    private StoredSheet storedSheet;
+
+    // Classeur dont les feuilles partagent l'ordre du graphe et numéro de la feuille, ou null et -1 pour une
+    // feuille isolée.
+    private Workbook workbook;
+    private int sheet = -1;
+
+    // Écart entre deux rangs attribués à la suite : il laisse de la place pour insérer des cellules entre eux.
+    static final long LABEL_GAP = 1L << 20;
+
+    // Nombre de cellules au-delà duquel les plages lues par une formule ne sont pas énumérées pour la placer.
+    private static final long MAX_SCANNED_RANGE_AREA = 4096;
+
+    // Rang des cellules qui ne lisent aucune cellule, inférieur à tous les autres.
+    static final long UNLABELED = Long.MIN_VALUE;
+
+    // Rang de chaque cellule qui lit d'autres cellules, et rang attribué à la prochaine cellule placée à la fin
+    // de l'ordre tant que la feuille n'appartient à aucun classeur.
+    private final LongLongHashMap labels = new LongLongHashMap();
+    private long nextLabel;
+
+    // Structures de travail du parcours qui ordonne une formule, conservées d'un appel à l'autre. Les cellules
+    // parcourues, qui peuvent appartenir à d'autres feuilles, sont désignées par leur adresse externe.
+    private final LongHashSet visitedSet = new LongHashSet();
+    private long[] visitedCells = new long[16];
+    private int visitedCount;
+    private long searchBound;
+    private long frontierLabel;
+
+    // Graphe dont les dépendants sont en cours de parcours.
+    private DependencyGraph exploredGraph;
+
+    private final LongConsumer visitDependent = dependentCell -> {
+        long key = exploredGraph.getKey(dependentCell);
+        if (visitedSet.contains(key)) {
+            return;
+        }
+        long label = exploredGraph.getOwnLabel(dependentCell);
+        if (label <= searchBound) {
+            visit(key);
+        } else {
+            frontierLabel = Math.min(frontierLabel, label);
+        }
+    };
+
+    /**
+     * Complète le graphe par les dépendances enregistrées d'une feuille ouverte depuis un fichier.
+     *
+     * @param storedSheet La feuille enregistrée.
+     */
+    public void setStoredSheet(StoredSheet storedSheet) {
+        this.storedSheet = storedSheet;
+        nextLabel = Math.max(nextLabel, storedSheet.getMaxLabel() + LABEL_GAP);
+    }
+
+    /**
+     * Range le graphe dans l'ordre commun des feuilles d'un classeur. Les rangs enregistrés d'une feuille ouverte
+     * depuis un fichier de classeur appartiennent déjà à cet ordre.
+     *
+     * @param workbook Le classeur.
+     * @param sheet    Le numéro de la feuille du graphe dans le classeur.
+     */
+    void attach(Workbook workbook, int sheet) {
+        this.workbook = workbook;
+        this.sheet = sheet;
+        workbook.raiseNextLabel(nextLabel);
+    }
+
+    /**
+     * Remplace les précédents d'une cellule, à moins que la nouvelle formule ne ferme une référence circulaire.
+     * Les liens de l'ancienne formule sont retirés et ceux de la nouvelle sont ajoutés, sans toucher au reste
+     * du graphe ; l'ordre topologique n'est corrigé que pour les dépendants de la cellule qui le demandent.
+     *
+     * @param address         L'adresse de la cellule dont la formule a changé.
+     * @param precedentCells  Les adresses des cellules lues isolément par la nouvelle formule.
+     * @param precedentRanges Les coins des plages lues par la nouvelle formule, quatre entiers par plage.
+     * @return Faux si la cellule dépend d'elle-même à travers la nouvelle formule, auquel cas le graphe est
+     * inchangé.
+     */
+    public boolean setPrecedents(long address, LongHashSet precedentCells, int[] precedentRanges) {
+        if (precedentCells.isEmpty() && precedentRanges.length == 0) {
+            removeCell(address);
+            return true;
+        }
+        if (!order(address, precedentCells, precedentRanges)) {
+            return false;
+        }
+        removeLinks(address);
+        addLinks(address, precedentCells, precedentRanges);
+        return true;
+    }
+
+    /**
+     * Remplace les précédents enregistrés d'une formule par ceux de son arbre, lorsqu'elle est analysée, sans
+     * chercher de référence circulaire : son rang enregistré, ou celui qu'elle a reçu depuis l'ouverture de la
+     * feuille, la place déjà après les cellules qu'elle lit. Les rangs des feuilles lues ne sont ainsi pas
+     * consultés, et ces feuilles n'ont pas à être construites.
+     *
+     * @param address         L'adresse de la formule enregistrée.
+     * @param precedentCells  Les adresses des cellules lues isolément par la formule.
+     * @param precedentRanges Les coins des plages lues par la formule, quatre entiers par plage.
+     */
+    void setStoredPrecedents(long address, LongHashSet precedentCells, int[] precedentRanges) {
+        if (precedentCells.isEmpty() && precedentRanges.length == 0) {
+            removeCell(address);
+            return;
+        }
+        // Le rang est conservé une fois la formule détachée de la feuille enregistrée.
+        labels.put(address, getOwnLabel(address));
+        removeLinks(address);
+        addLinks(address, precedentCells, precedentRanges);
+    }
+
+    /**
+     * Déclare les plages lues par une formule enregistrée, dont le rang est lu dans le fichier (voir
+     * {@link StoredSheet#getLabel(long)}).
+     *
+     * @param address         L'adresse de la formule.
+     * @param precedentRanges Les coins des plages, quatre entiers par plage.
+     */
+    void addStoredRanges(long address, int[] precedentRanges) {
+        addLinks(address, LongHashSet.EMPTY, precedentRanges);
+    }
+
+    private void addLinks(long address, LongHashSet precedentCells, int[] precedentRanges) {
+        if (precedentRanges.length > 0) {
+            this.precedentRanges.put(address, precedentRanges);
+            for (int range = 0; range < precedentRanges.length; range += 4) {
+                rangeDependents.add(address, precedentRanges[range], precedentRanges[range + 1],
+                        precedentRanges[range + 2], precedentRanges[range + 3]);
+            }
+        }
+
+        if (precedentCells.isEmpty()) {
+            return;
+        }
+
+        this.precedents.put(address, new LongHashSet(precedentCells));
+        precedentCells.forEach(precedentCell -> {
+            LongHashSet precedentDependents = this.dependents.get(precedentCell);
+            if (precedentDependents == null) {
+                precedentDependents = new LongHashSet();
+                this.dependents.put(precedentCell, precedentDependents);
+            }
+            precedentDependents.add(address);
+        });
+    }
+
+    /**
+     * Retire tous les liens partant d'une cellule, par exemple lorsque sa formule est supprimée.
+     * Les cellules qui lisent cette cellule restent ses dépendantes.
+     *
+     * @param address L'adresse de la cellule dont la formule est supprimée.
+     */
+    public void removeCell(long address) {
+        removeLinks(address);
+        // Une cellule qui ne lit plus rien précède toutes les autres.
+        labels.remove(address);
+    }
+
+    private void removeLinks(long address) {
+        int[] oldRanges = this.precedentRanges.remove(address);
+        if (oldRanges != null) {
+            for (int range = 0; range < oldRanges.length; range += 4) {
+                rangeDependents.remove(address, oldRanges[range], oldRanges[range + 1], oldRanges[range + 2], oldRanges[range + 3]);
+            }
+        }
+
+        LongHashSet oldPrecedents = this.precedents.remove(address);
+
+        if (oldPrecedents == null) {
+            return;
+        }
+
+        oldPrecedents.forEach(precedentCell -> {
+            LongHashSet precedentDependents = this.dependents.get(precedentCell);
+            precedentDependents.remove(address);
+            if (precedentDependents.isEmpty()) {
+                this.dependents.remove(precedentCell);
+            }
+        });
+    }
+
+    /**
+     * Applique une action à chaque cellule qui lit directement la cellule spécifiée, par une référence ou à
+     * travers une plage. Une cellule qui lit plusieurs fois la cellule spécifiée peut être visitée plusieurs
+     * fois, mais toujours le même nombre de fois tant que le graphe n'est pas modifié.
+     *
+     * @param address  L'adresse de la cellule.
+     * @param consumer L'action à appliquer à l'adresse de chaque cellule dépendante.
+     */
+    public void forEachDependent(long address, LongConsumer consumer) {
+        LongHashSet cellDependents = this.dependents.get(address);
+        if (cellDependents != null) {
+            cellDependents.forEach(consumer);
+        }
+        // Les plages ne couvrent que des cellules de leur feuille, jamais les copies d'autres feuilles, dont
+        // l'adresse externe ne désigne aucune ligne de la feuille.
+        if (CellOperations.getSheetFromAddress(address) < 0) {
+            rangeDependents.forEachDependent(address, consumer);
+        }
+        if (storedSheet != null) {
+            storedSheet.forEachDependent(address, consumer);
+        }
+    }
+
+    /**
+     * Indique si au moins une cellule lit la cellule spécifiée, par une référence ou à travers une plage.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Vrai si la cellule a au moins un dépendant.
+     */
+    public boolean hasDependents(long address) {
+        boolean[] found = {false};
+        forEachDependent(address, dependentCell -> found[0] = true);
+        return found[0];
+    }
+
+    /**
+     * Renvoie le rang d'une cellule dans l'ordre topologique du graphe.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Le rang, ou {@link #UNLABELED} si la cellule ne lit aucune cellule.
+     */
+    public long getLabel(long address) {
+        int addressSheet = CellOperations.getSheetFromAddress(address);
+        if (addressSheet >= 0 && workbook != null) {
+            // La copie d'une cellule d'une autre feuille a le rang de cette cellule.
+            return workbook.getDependencyGraph(addressSheet).getOwnLabel(CellOperations.getLocalAddress(address));
+        }
+        return getOwnLabel(address);
+    }
+
+    private long getOwnLabel(long address) {
+        long label = labels.get(address, UNLABELED);
+        return label == UNLABELED && storedSheet != null ? storedSheet.getLabel(address) : label;
+    }
+
+    /**
+     * Renvoie la clé sous laquelle le parcours d'une formule désigne une cellule de la feuille du graphe : son
+     * adresse externe, qui la distingue des cellules des autres feuilles du classeur.
+     */
+    private long getKey(long address) {
+        return sheet < 0 ? address : CellOperations.getExternalAddress(sheet, address);
+    }
+
+    /**
+     * Renvoie le graphe de la feuille d'une cellule désignée par sa clé.
+     */
+    private DependencyGraph getGraph(long key) {
+        int keySheet = CellOperations.getSheetFromAddress(key);
+        return keySheet == sheet || keySheet < 0 ? this : workbook.getDependencyGraph(keySheet);
+    }
+
+    private long getNextLabel() {
+        return workbook == null ? nextLabel : workbook.getNextLabel();
+    }
+
+    private void raiseNextLabel(long label) {
+        if (workbook == null) {
+            nextLabel = Math.max(nextLabel, label);
+        } else {
+            workbook.raiseNextLabel(label);
+        }
+    }
+
+    /**
+     * Vérifie qu'une formule peut lire ses nouveaux précédents sans référence circulaire, puis donne de nouveaux
+     * rangs à la cellule et à ceux de ses dépendants qui ne viennent pas déjà après ses précédents.
+     * Seuls les dépendants de rang inférieur ou égal au plus grand rang des précédents sont parcourus : un chemin
+     * de la cellule vers un précédent ne passe que par de tels rangs. Les cellules des grandes plages ne sont pas
+     * énumérées : une formule qui en lit parcourt tous ses dépendants.
+     *
+     * @return Faux si un précédent dépend de la cellule, auquel cas aucun rang n'est modifié.
+     */
+    private boolean order(long address, LongHashSet precedentCells, int[] precedentRanges) {
+        searchBound = UNLABELED;
+        for (long precedentCell : precedentCells.toArray()) {
+            searchBound = Math.max(searchBound, getLabel(precedentCell));
+        }
+        long rangeArea = 0;
+        for (int range = 0; range < precedentRanges.length; range += 4) {
+            rangeArea += (long) (precedentRanges[range + 2] - precedentRanges[range] + 1)
+                    * (precedentRanges[range + 3] - precedentRanges[range + 1] + 1);
+        }
+        if (rangeArea > MAX_SCANNED_RANGE_AREA) {
+            searchBound = Long.MAX_VALUE;
+        } else {
+            for (int range = 0; range < precedentRanges.length; range += 4) {
+                for (int row = precedentRanges[range]; row <= precedentRanges[range + 2]; row++) {
+                    for (int col = precedentRanges[range + 1]; col <= precedentRanges[range + 3]; col++) {
+                        searchBound = Math.max(searchBound, getLabel(CellOperations.getAddress(row, col)));
+                    }
+                }
+            }
+        }
+        long label = getLabel(address);
+        if (label != UNLABELED && label > searchBound) {
+            // Le rang d'une formule enregistrée est conservé une fois qu'elle est détachée.
+            labels.put(address, label);
+            return true;
+        }
+
+        long key = getKey(address);
+        search(key);
+        for (int index = 0; index < visitedCount; index++) {
+            // Une cellule d'une autre feuille est lue à travers sa copie, rangée à son adresse externe.
+            long visitedCell = getGraph(visitedCells[index]) == this
+                    ? CellOperations.getLocalAddress(visitedCells[index]) : visitedCells[index];
+            if (reads(visitedCell, precedentCells, precedentRanges)) {
+                return false;
+            }
+        }
+
+        // Les cellules parcourues sont placées, dans leur ordre actuel, juste après les précédents et avant les
+        // dépendants qui n'ont pas été parcourus. S'il n'y a pas assez de place entre les deux, tous les
+        // dépendants de la cellule sont placés à la fin de l'ordre.
+        long low;
+        long step = LABEL_GAP;
+        if (searchBound == Long.MAX_VALUE) {
+            low = getNextLabel();
+        } else if (frontierLabel == Long.MAX_VALUE) {
+            low = searchBound == UNLABELED ? 0 : searchBound;
+        } else if (searchBound == UNLABELED) {
+            low = frontierLabel - (visitedCount + 1L) * LABEL_GAP;
+        } else {
+            low = searchBound;
+            step = (frontierLabel - low) / (visitedCount + 1);
+            if (step < 1) {
+                searchBound = Long.MAX_VALUE;
+                search(key);
+                low = getNextLabel();
+                step = LABEL_GAP;
+            }
+        }
+
+        long[] oldLabels = new long[visitedCount];
+        for (int index = 0; index < visitedCount; index++) {
+            oldLabels[index] = visitedCells[index] == key ? UNLABELED
+                    : getGraph(visitedCells[index]).getOwnLabel(CellOperations.getLocalAddress(visitedCells[index]));
+        }
+        relabel(oldLabels, low, step);
+        return true;
+    }
+
+    /**
+     * Rassemble dans visitedCells la cellule et ses dépendants, directs ou non, de rang inférieur ou égal à
+     * searchBound, et relève dans frontierLabel le plus petit rang des dépendants écartés. Les dépendants d'une
+     * cellule comprennent les cellules des autres feuilles qui lisent sa copie.
+     *
+     * @param key La clé de la cellule (voir {@link #getKey(long)}).
+     */
+    private void search(long key) {
+        visitedSet.clear();
+        visitedCount = 0;
+        frontierLabel = Long.MAX_VALUE;
+        visit(key);
+        for (int explored = 0; explored < visitedCount; explored++) {
+            long visitedCell = visitedCells[explored];
+            exploredGraph = getGraph(visitedCell);
+            exploredGraph.forEachDependent(CellOperations.getLocalAddress(visitedCell), visitDependent);
+            if (workbook == null) {
+                continue;
+            }
+            int visitedSheet = CellOperations.getSheetFromAddress(visitedCell);
+            int[] readers = workbook.getReaders(visitedSheet, CellOperations.getLocalAddress(visitedCell));
+            if (readers != null) {
+                for (int reader : readers) {
+                    exploredGraph = workbook.getDependencyGraph(reader);
+                    exploredGraph.forEachDependent(visitedCell, visitDependent);
+                }
+            }
+        }
+        exploredGraph = null;
+    }
+
+    private void visit(long address) {
+        visitedSet.add(address);
+        if (visitedCount == visitedCells.length) {
+            visitedCells = Arrays.copyOf(visitedCells, visitedCount * 2);
+        }
+        visitedCells[visitedCount++] = address;
+    }
+
+    /**
+     * Donne aux cellules parcourues des rangs régulièrement espacés, dans l'ordre de leurs anciens rangs. Des
+     * cellules de même rang, qui ne peuvent pas se lire l'une l'autre, reçoivent le même rang.
+     *
+     * @param oldLabels Les anciens rangs des cellules parcourues.
+     * @param low       Le rang qui précède le premier nouveau rang.
+     * @param step      L'écart entre deux nouveaux rangs.
+     */
+    private void relabel(long[] oldLabels, long low, long step) {
+        long[] sortedLabels = oldLabels.clone();
+        Arrays.sort(sortedLabels);
+        for (int index = 0; index < visitedCount; index++) {
+            int rank = Arrays.binarySearch(sortedLabels, oldLabels[index]);
+            getGraph(visitedCells[index]).labels.put(CellOperations.getLocalAddress(visitedCells[index]), low + (rank + 1) * step);
+        }
+        raiseNextLabel(low + (visitedCount + 1) * step);
+    }
+
+    /**
+     * Indique si une cellule fait partie des précédents d'une formule.
+     */
+    private static boolean reads(long address, LongHashSet precedentCells, int[] precedentRanges) {
+        if (precedentCells.contains(address)) {
+            return true;
+        }
+        int row = CellOperations.getRowFromAddress(address);
+        int col = CellOperations.getColFromAddress(address);
+        for (int range = 0; range < precedentRanges.length; range += 4) {
+            if (row >= precedentRanges[range] && col >= precedentRanges[range + 1]
+                    && row <= precedentRanges[range + 2] && col <= precedentRanges[range + 3]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Renvoie les cellules lues isolément par la cellule spécifiée, sans les cellules de ses plages.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Les adresses des cellules précédentes, qui ne doivent pas être modifiées.
+     */
+    public LongHashSet getPrecedents(long address) {
+        LongHashSet cellPrecedents = this.precedents.get(address);
+        return cellPrecedents == null ? LongHashSet.EMPTY : cellPrecedents;
+    }
+}
@@ -9,6 +9,17 @@ import java.awt.event.ActionListener;
  */
 public class ExitButtonListener implements ActionListener {
 
+    private final HomePage homePage;
+
+    /**
+     * Constructeur pour ExitButtonListener.
+     *
+     * @param homePage La fenêtre principale, qui enregistre le classeur avant de fermer l'application.
+     */
+    public ExitButtonListener(HomePage homePage) {
+        this.homePage = homePage;
+    }
+
     /**
      * Gère l'action de fermeture de l'application.
      * Cette méthode est appelée lorsque l'événement associé à ce listener est déclenché,
@@ -19,6 +30,6 @@ public class ExitButtonListener implements ActionListener {
     @Override
     public void actionPerformed(ActionEvent e) {
 
-        System.exit(0);
+        homePage.close();
     }
 }
@@ -1,7 +1,6 @@
 import javax.swing.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.HashSet;
 
 /**
  * FormulaBarListener est un ActionListener qui réagit aux actions effectuées sur la barre de formule.
@@ -24,8 +23,8 @@ public class FormulaBarListener implements ActionListener {
 
     /**
      * Gère l'action effectuée sur la barre de formule.
-     * Lorsqu'une formule est entrée ou modifiée, cette méthode met à jour la cellule sélectionnée avec
-     * la nouvelle formule, évalue cette formule, et met à jour l'affichage de la cellule selon le résultat ou les
+     * Lorsqu'une formule est entrée ou modifiée, cette méthode la transmet au moteur de calcul, qui l'analyse,
+     * recalcule la feuille puis met à jour la cellule sélectionnée et son affichage selon le résultat ou les
      * erreurs générées.
      *
      * @param e L'événement d'action qui a déclenché cette méthode.
@@ -34,48 +33,16 @@ public class FormulaBarListener implements ActionListener {
     public void actionPerformed(ActionEvent e) {
         JTextField formulaBar = (JTextField) e.getSource();
         String formula = formulaBar.getText();
-        CellLabel selectedCellLabel = tabPage.selectedCellLabel;
+        long selectedAddress = tabPage.grid.getSelectedAddress();
 
         // Lorsque la fenêtre charge, aucune cellule n'est cliquée et
         // donc le texte rentré dans le JTextField ne doit pas être pris en compte.
-        if (selectedCellLabel == null) {
+        if (selectedAddress < 0) {
             return;
         }
 
-        if (formula.isEmpty()) {
-            // Supprimer la formule de la cellule
-            selectedCellLabel.getCell().setFormula("");
-            // Supprimer le résultat de l'affichage
-            selectedCellLabel.setText("");
-            // Supprimer l'AST
-            tabPage.abstractSyntaxTrees[selectedCellLabel.getCell().getRow()][selectedCellLabel.getCell().getCol()] = null;
-
-            selectedCellLabel.setEmptyFormulaBackgroundColor();
-
-        } else {
-            String previousFormula = selectedCellLabel.getCell().getFormula();
-            try {
-                // Évaluer la formule et mettre à jour l'affichage de la cellule
-                AbstractSyntaxTree ast = new AbstractSyntaxTree(selectedCellLabel.getCell().getCellReference(), formula, tabPage.abstractSyntaxTrees);
-                HashSet<String> visited = new HashSet<>();
-                double result = ast.evaluate(visited);
-                selectedCellLabel.setText(String.valueOf(result));
-                // Mise à jour de l'AST dans le tableau pour des références futures
-                tabPage.abstractSyntaxTrees[selectedCellLabel.getCell().getRow()][selectedCellLabel.getCell().getCol()] = ast;
-                // Mettre à jour la formule de la cellule
-                selectedCellLabel.getCell().setFormula(formula);
-                selectedCellLabel.setCalculableFormulaColor();
-            } catch (IncalculableFormulaException exception) {
-                System.err.println(exception.getMessage());
-                selectedCellLabel.setIncalculableFormulaColor();
-                // Remettre la formule précédente dans la cellule en cas d'erreur.
-                selectedCellLabel.getCell().setFormula(previousFormula);
-            } catch (IncorrectFormulaException exception) {
-                System.err.println(exception.getMessage());
-                selectedCellLabel.setIncorrectFormulaColor();
-                // Remettre la formule précédente dans la cellule en cas d'erreur.
-                selectedCellLabel.getCell().setFormula(previousFormula);
-            }
-        }
+        // L'analyse et le recalcul ont lieu hors du fil de l'interface ; la cellule reçoit sa nouvelle formule
+        // lorsque le résultat est publié.
+        tabPage.calculationEngine.submitFormula(selectedAddress, formula);
     }
 }
@@ -0,0 +1,266 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+
+/**
+ * FormulaClassGenerator traduit un {@link FormulaProgram} en une classe cachée de la JVM qui implémente
+ * {@link CompiledFormula}. Le fichier de classe est écrit directement octet par octet : une constante par nombre,
+ * une lecture de l'emplacement puis de la valeur par cellule lue et une instruction arithmétique par opérateur,
+ * sans aucun branchement, ce qui évite d'avoir à produire des StackMapTable.
+ * La classe n'est engendrée qu'après un certain nombre d'évaluations de la formule, réglable par la propriété
+ * système {@code petittableur.compilationThreshold} (une valeur nulle ou négative désactive la génération).
+ *
+ * @version 1.0
+ */
+public final class FormulaClassGenerator {
+
+    // Nombre d'évaluations d'une formule avant de la traduire en classe cachée.
+    static final int COMPILATION_THRESHOLD = Integer.getInteger("petittableur.compilationThreshold", 1000);
+
+    // Taille maximale du code d'une méthode imposée par le format des fichiers de classe.
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    // Entrées fixes du réservoir de constantes, numérotées dans l'ordre où writeFixedConstants les écrit.
+    private static final int THIS_CLASS = 2;
+    private static final int OBJECT_CLASS = 4;
+    private static final int COMPILED_FORMULA_CLASS = 6;
+    private static final int INIT_NAME = 7;
+    private static final int INIT_DESCRIPTOR = 8;
+    private static final int OBJECT_CONSTRUCTOR = 10;
+    private static final int EVAL_NAME = 11;
+    private static final int EVAL_DESCRIPTOR = 12;
+    private static final int CODE_ATTRIBUTE = 13;
+    private static final int DIVIDE_METHOD = 19;
+    private static final int FIXED_CONSTANTS = 19;
+
+    private static final byte CONSTANT_UTF8 = 1;
+    private static final byte CONSTANT_INTEGER = 3;
+    private static final byte CONSTANT_DOUBLE = 6;
+    private static final byte CONSTANT_CLASS = 7;
+    private static final byte CONSTANT_METHODREF = 10;
+    private static final byte CONSTANT_NAME_AND_TYPE = 12;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int DCONST_0 = 0x0e;
+    private static final int DCONST_1 = 0x0f;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC_W = 0x13;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int IALOAD = 0x2e;
+    private static final int DALOAD = 0x31;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+
+    private FormulaClassGenerator() {
+    }
+
+    /**
+     * Traduit un programme en une classe cachée et en renvoie une instance.
+     *
+     * @param program Le programme à traduire.
+     * @return La formule compilée, ou null si le programme est trop long pour tenir dans une méthode.
+     * @throws ReflectiveOperationException Si la classe définie ne peut pas être instanciée. Une classe refusée
+     *                                      par la machine virtuelle lève quant à elle une {@link LinkageError}.
+     */
+    static CompiledFormula generate(FormulaProgram program) throws ReflectiveOperationException {
+        byte[] classFile;
+        try {
+            classFile = writeClassFile(program);
+        } catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        if (classFile == null) {
+            return null;
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup().defineHiddenClass(classFile, true);
+        return (CompiledFormula) lookup.lookupClass().getDeclaredConstructor().newInstance();
+    }
+
+    /**
+     * Écrit le fichier de classe correspondant à un programme.
+     *
+     * @param program Le programme à traduire.
+     * @return Le contenu du fichier de classe, ou null si le code de la méthode serait trop long.
+     * @throws IOException Ne se produit pas en pratique, l'écriture se faisant en mémoire.
+     */
+    private static byte[] writeClassFile(FormulaProgram program) throws IOException {
+        ByteArrayOutputStream constantsBytes = new ByteArrayOutputStream();
+        DataOutputStream constants = new DataOutputStream(constantsBytes);
+        writeFixedConstants(constants);
+        int constantsCount = FIXED_CONSTANTS;
+
+        ByteArrayOutputStream codeBytes = new ByteArrayOutputStream();
+        DataOutputStream code = new DataOutputStream(codeBytes);
+
+        for (int index = 0; index < program.opcodes.length; index++) {
+            int operand = program.operands[index];
+            switch (program.opcodes[index]) {
+                case FormulaProgram.PUSH_CONSTANT:
+                    double value = program.constants[operand];
+                    if (Double.doubleToRawLongBits(value) == 0L) {
+                        code.writeByte(DCONST_0);
+                    } else if (value == 1.0) {
+                        code.writeByte(DCONST_1);
+                    } else {
+                        constants.writeByte(CONSTANT_DOUBLE);
+                        constants.writeDouble(value);
+                        code.writeByte(LDC2_W);
+                        code.writeShort(constantsCount + 1);
+                        // Une constante double occupe deux entrées du réservoir.
+                        constantsCount += 2;
+                    }
+                    break;
+                case FormulaProgram.LOAD_CELL:
+                    // values[slots[operand]]
+                    code.writeByte(ALOAD_1);
+                    code.writeByte(ALOAD_2);
+                    if (operand <= 5) {
+                        code.writeByte(ICONST_0 + operand);
+                    } else if (operand <= Byte.MAX_VALUE) {
+                        code.writeByte(BIPUSH);
+                        code.writeByte(operand);
+                    } else if (operand <= Short.MAX_VALUE) {
+                        code.writeByte(SIPUSH);
+                        code.writeShort(operand);
+                    } else {
+                        constants.writeByte(CONSTANT_INTEGER);
+                        constants.writeInt(operand);
+                        code.writeByte(LDC_W);
+                        code.writeShort(constantsCount + 1);
+                        constantsCount++;
+                    }
+                    code.writeByte(IALOAD);
+                    code.writeByte(DALOAD);
+                    break;
+                case FormulaProgram.ADD:
+                    code.writeByte(DADD);
+                    break;
+                case FormulaProgram.SUBTRACT:
+                    code.writeByte(DSUB);
+                    break;
+                case FormulaProgram.MULTIPLY:
+                    code.writeByte(DMUL);
+                    break;
+                case FormulaProgram.DIVIDE:
+                    // La division passe par FormulaProgram.divide pour détecter la division par 0 sans branchement.
+                    code.writeByte(INVOKESTATIC);
+                    code.writeShort(DIVIDE_METHOD);
+                    break;
+                default:
+                    return null;
+            }
+        }
+        code.writeByte(DRETURN);
+
+        if (codeBytes.size() > MAX_CODE_LENGTH || constantsCount >= MAX_CODE_LENGTH) {
+            return null;
+        }
+
+        ByteArrayOutputStream classBytes = new ByteArrayOutputStream();
+        DataOutputStream classFile = new DataOutputStream(classBytes);
+        classFile.writeInt(0xCAFEBABE);
+        classFile.writeShort(0);
+        classFile.writeShort(52);
+        classFile.writeShort(constantsCount + 1);
+        constantsBytes.writeTo(classFile);
+        // public final super
+        classFile.writeShort(0x0031);
+        classFile.writeShort(THIS_CLASS);
+        classFile.writeShort(OBJECT_CLASS);
+        classFile.writeShort(1);
+        classFile.writeShort(COMPILED_FORMULA_CLASS);
+        classFile.writeShort(0);
+        classFile.writeShort(2);
+
+        // public <init>() { super(); }
+        classFile.writeShort(0x0001);
+        classFile.writeShort(INIT_NAME);
+        classFile.writeShort(INIT_DESCRIPTOR);
+        writeCodeAttribute(classFile, 1, 1, new byte[]{
+                (byte) ALOAD_0, (byte) INVOKESPECIAL, (byte) (OBJECT_CONSTRUCTOR >> 8), (byte) OBJECT_CONSTRUCTOR, (byte) RETURN});
+
+        // public final double eval(double[] values, int[] slots)
+        classFile.writeShort(0x0011);
+        classFile.writeShort(EVAL_NAME);
+        classFile.writeShort(EVAL_DESCRIPTOR);
+        // Chaque double occupe deux mots de pile, et la lecture d'une cellule empile les deux tableaux et l'index.
+        writeCodeAttribute(classFile, 2 * program.getMaxStackDepth() + 3, 3, codeBytes.toByteArray());
+
+        classFile.writeShort(0);
+        return classBytes.toByteArray();
+    }
+
+    /**
+     * Écrit les entrées du réservoir de constantes communes à toutes les formules.
+     *
+     * @param constants Le flux du réservoir de constantes.
+     * @throws IOException Ne se produit pas en pratique, l'écriture se faisant en mémoire.
+     */
+    private static void writeFixedConstants(DataOutputStream constants) throws IOException {
+        writeUtf8(constants, "CompiledFormulaImpl");        // 1
+        writeClass(constants, 1);                           // 2
+        writeUtf8(constants, "java/lang/Object");           // 3
+        writeClass(constants, 3);                           // 4
+        writeUtf8(constants, "CompiledFormula");            // 5
+        writeClass(constants, 5);                           // 6
+        writeUtf8(constants, "<init>");                     // 7
+        writeUtf8(constants, "()V");                        // 8
+        writeNameAndType(constants, 7, 8);                  // 9
+        writeMethodref(constants, 4, 9);                    // 10
+        writeUtf8(constants, "eval");                       // 11
+        writeUtf8(constants, "([D[I)D");                    // 12
+        writeUtf8(constants, "Code");                       // 13
+        writeUtf8(constants, "FormulaProgram");             // 14
+        writeClass(constants, 14);                          // 15
+        writeUtf8(constants, "divide");                     // 16
+        writeUtf8(constants, "(DD)D");                      // 17
+        writeNameAndType(constants, 16, 17);                // 18
+        writeMethodref(constants, 15, 18);                  // 19
+    }
+
+    private static void writeCodeAttribute(DataOutputStream classFile, int maxStack, int maxLocals, byte[] code) throws IOException {
+        classFile.writeShort(1);
+        classFile.writeShort(CODE_ATTRIBUTE);
+        classFile.writeInt(12 + code.length);
+        classFile.writeShort(maxStack);
+        classFile.writeShort(maxLocals);
+        classFile.writeInt(code.length);
+        classFile.write(code);
+        // Ni table des exceptions ni attribut.
+        classFile.writeShort(0);
+        classFile.writeShort(0);
+    }
+
+    private static void writeUtf8(DataOutputStream constants, String value) throws IOException {
+        constants.writeByte(CONSTANT_UTF8);
+        constants.writeUTF(value);
+    }
+
+    private static void writeClass(DataOutputStream constants, int nameIndex) throws IOException {
+        constants.writeByte(CONSTANT_CLASS);
+        constants.writeShort(nameIndex);
+    }
+
+    private static void writeNameAndType(DataOutputStream constants, int nameIndex, int descriptorIndex) throws IOException {
+        constants.writeByte(CONSTANT_NAME_AND_TYPE);
+        constants.writeShort(nameIndex);
+        constants.writeShort(descriptorIndex);
+    }
+
+    private static void writeMethodref(DataOutputStream constants, int classIndex, int nameAndTypeIndex) throws IOException {
+        constants.writeByte(CONSTANT_METHODREF);
+        constants.writeShort(classIndex);
+        constants.writeShort(nameAndTypeIndex);
+    }
+}
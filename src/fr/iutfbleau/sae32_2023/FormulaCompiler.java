@@ -0,0 +1,153 @@
+import java.util.Arrays;
+
+/**
+ * FormulaCompiler produit un {@link FormulaProgram} à partir d'un arbre de syntaxe abstraite.
+ * Chaque nœud de l'arbre y ajoute ses instructions en notation postfixée (voir {@link Node#compile}), et le
+ * compilateur tient le compte de la profondeur de pile nécessaire à l'évaluation.
+ * Les cellules lues sont numérotées dans l'ordre de leur première apparition : le programme ne connaît que leur
+ * position relative, les emplacements réels étant fournis par chaque cellule qui utilise le programme. Il en va
+ * de même pour les plages lues par les fonctions d'agrégat.
+ *
+ * @version 1.0
+ */
+public class FormulaCompiler {
+
+    private byte[] opcodes = new byte[8];
+    private int[] operands = new int[8];
+    private int length;
+
+    private double[] constants = new double[4];
+    private int constantsCount;
+
+    // Numéro attribué à chaque référence relative distincte, et feuille et décalages de chaque numéro.
+    private final LongIntHashMap references = new LongIntHashMap();
+    private int[] sheets = new int[4];
+    private int[] rowOffsets = new int[4];
+    private int[] colOffsets = new int[4];
+
+    // Coins relatifs de chaque plage lue, quatre entiers par plage.
+    private int[] rangeOffsets = new int[4];
+    private int rangesCount;
+
+    private int stackDepth;
+    private int maxStackDepth;
+
+    /**
+     * Compile un arbre de syntaxe abstraite.
+     *
+     * @param root    La racine de l'arbre.
+     * @param metrics Les mesures de la feuille de la formule.
+     * @return Le programme correspondant.
+     * @throws IncorrectFormulaException Si l'arbre contient un opérateur inconnu.
+     */
+    public static FormulaProgram compile(Node root, CalculationMetrics metrics) throws IncorrectFormulaException {
+        FormulaCompiler compiler = new FormulaCompiler();
+        root.compile(compiler);
+        return compiler.build(metrics);
+    }
+
+    /**
+     * Ajoute une instruction qui empile une constante.
+     *
+     * @param value La constante.
+     */
+    void pushConstant(double value) {
+        if (constantsCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantsCount * 2);
+        }
+        constants[constantsCount] = value;
+        emit(FormulaProgram.PUSH_CONSTANT, constantsCount++, 1);
+    }
+
+    /**
+     * Ajoute une instruction qui empile la valeur d'une cellule désignée par sa position relative.
+     *
+     * @param sheet     Le numéro de la feuille lue dans le classeur, ou -1 pour la feuille de la formule.
+     * @param rowOffset Le décalage de ligne par rapport à la cellule de la formule.
+     * @param colOffset Le décalage de colonne par rapport à la cellule de la formule.
+     */
+    void loadCell(int sheet, int rowOffset, int colOffset) {
+        // Les décalages tiennent sur 24 bits et le numéro de feuille sur 12.
+        long key = ((long) (sheet + 1) << 48) | ((rowOffset & 0xFFFFFFL) << 24) | (colOffset & 0xFFFFFFL);
+        int reference = references.get(key, -1);
+        if (reference < 0) {
+            reference = references.size();
+            if (reference == rowOffsets.length) {
+                sheets = Arrays.copyOf(sheets, reference * 2);
+                rowOffsets = Arrays.copyOf(rowOffsets, reference * 2);
+                colOffsets = Arrays.copyOf(colOffsets, reference * 2);
+            }
+            sheets[reference] = sheet;
+            rowOffsets[reference] = rowOffset;
+            colOffsets[reference] = colOffset;
+            references.put(key, reference);
+        }
+        emit(FormulaProgram.LOAD_CELL, reference, 1);
+    }
+
+    /**
+     * Ajoute une instruction qui empile l'agrégat d'une plage désignée par ses coins relatifs.
+     *
+     * @param function       Le code de la fonction (voir {@link AggregateNode#FUNCTIONS}).
+     * @param firstRowOffset Le décalage de ligne du coin supérieur gauche de la plage.
+     * @param firstColOffset Le décalage de colonne du coin supérieur gauche de la plage.
+     * @param lastRowOffset  Le décalage de ligne du coin inférieur droit de la plage.
+     * @param lastColOffset  Le décalage de colonne du coin inférieur droit de la plage.
+     */
+    void aggregate(int function, int firstRowOffset, int firstColOffset, int lastRowOffset, int lastColOffset) {
+        if (4 * rangesCount == rangeOffsets.length) {
+            rangeOffsets = Arrays.copyOf(rangeOffsets, rangeOffsets.length * 2);
+        }
+        rangeOffsets[4 * rangesCount] = firstRowOffset;
+        rangeOffsets[4 * rangesCount + 1] = firstColOffset;
+        rangeOffsets[4 * rangesCount + 2] = lastRowOffset;
+        rangeOffsets[4 * rangesCount + 3] = lastColOffset;
+        emit((byte) (FormulaProgram.SUM + function), rangesCount++, 1);
+    }
+
+    /**
+     * Ajoute une instruction qui applique un opérateur aux deux valeurs au sommet de la pile.
+     *
+     * @param operator L'opérateur ('+', '-', '*' ou '/').
+     * @throws IncorrectFormulaException Si l'opérateur est inconnu.
+     */
+    void operator(char operator) throws IncorrectFormulaException {
+        switch (operator) {
+            case '+':
+                emit(FormulaProgram.ADD, 0, -1);
+                break;
+            case '-':
+                emit(FormulaProgram.SUBTRACT, 0, -1);
+                break;
+            case '*':
+                emit(FormulaProgram.MULTIPLY, 0, -1);
+                break;
+            case '/':
+                emit(FormulaProgram.DIVIDE, 0, -1);
+                break;
+            default:
+                throw new IncorrectFormulaException("Formule incorrecte : opérateur inconnu.");
+        }
+    }
+
+    private void emit(byte opcode, int operand, int stackEffect) {
+        if (length == opcodes.length) {
+            opcodes = Arrays.copyOf(opcodes, length * 2);
+            operands = Arrays.copyOf(operands, length * 2);
+        }
+        opcodes[length] = opcode;
+        operands[length] = operand;
+        length++;
+
+        stackDepth += stackEffect;
+        maxStackDepth = Math.max(maxStackDepth, stackDepth);
+    }
+
+    private FormulaProgram build(CalculationMetrics metrics) {
+        int referencesCount = references.size();
+        return new FormulaProgram(Arrays.copyOf(opcodes, length), Arrays.copyOf(operands, length),
+                Arrays.copyOf(constants, constantsCount), maxStackDepth, Arrays.copyOf(sheets, referencesCount),
+                Arrays.copyOf(rowOffsets, referencesCount), Arrays.copyOf(colOffsets, referencesCount),
+                Arrays.copyOf(rangeOffsets, 4 * rangesCount), metrics);
+    }
+}
@@ -0,0 +1,169 @@
+import java.lang.ref.WeakReference;
+import java.util.WeakHashMap;
+
+/**
+ * FormulaInterner partage les formules d'une feuille : chaque nœud d'arbre (nombre, référence relative,
+ * agrégat d'une plage relative, opération sur deux nœuds déjà partagés) n'existe qu'en un seul exemplaire, et chaque arbre distinct n'est
+ * compilé qu'une fois en un {@link FormulaTemplate}.
+ * Les références gardées par l'interner sont faibles : un nœud ou un modèle que plus aucune cellule n'utilise
+ * est libéré par le ramasse-miettes.
+ * Les méthodes sont synchronisées, l'interner pouvant être utilisé par plusieurs fils d'exécution.
+ * L'interner d'une feuille rangée dans un classeur résout aussi les noms des autres feuilles, que les formules
+ * peuvent lire (par exemple {@code Feuille2!B7}).
+ *
+ * @version 1.0
+ */
+public class FormulaInterner {
+
+    // Exemplaire partagé de chaque nœud.
+    private final WeakHashMap<Node, WeakReference<Node>> nodes = new WeakHashMap<>();
+
+    // Modèle compilé de chaque arbre, rangé par racine partagée.
+    private final WeakHashMap<Node, WeakReference<FormulaTemplate>> templates = new WeakHashMap<>();
+
+    // Classeur de la feuille et numéro de celle-ci, ou null et -1 pour une feuille isolée. Ils ne sont pas
+    // protégés par le verrou de l'interner, pour que la recherche d'une feuille ne le garde pas en attendant
+    // celui du classeur.
+    private volatile Workbook workbook;
+    private volatile int sheet = -1;
+
+    // Mesures transmises aux programmes compilés par l'interner.
+    private final CalculationMetrics metrics;
+
+    /**
+     * Constructeur de FormulaInterner, pour des formules qui ne sont pas mesurées.
+     */
+    public FormulaInterner() {
+        this(new CalculationMetrics());
+    }
+
+    /**
+     * Constructeur de FormulaInterner.
+     *
+     * @param metrics Les mesures de la feuille, qui comptent entre autres les formules qui n'ont pas pu être
+     *                compilées.
+     */
+    public FormulaInterner(CalculationMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Rattache l'interner à la feuille d'un classeur, dont les autres feuilles peuvent alors être lues.
+     *
+     * @param workbook Le classeur.
+     * @param sheet    Le numéro de la feuille dans le classeur.
+     */
+    void attach(Workbook workbook, int sheet) {
+        this.sheet = sheet;
+        this.workbook = workbook;
+    }
+
+    /**
+     * Cherche une feuille du classeur par son nom.
+     *
+     * @param name Le nom de la feuille.
+     * @return Le numéro de la feuille, ou -1 si le classeur n'a pas de feuille de ce nom ou si la feuille de
+     * l'interner n'appartient à aucun classeur.
+     */
+    int findSheet(String name) {
+        Workbook workbook = this.workbook;
+        return workbook == null ? -1 : workbook.findSheet(name);
+    }
+
+    /**
+     * Indique si une feuille est celle dont l'interner partage les formules.
+     *
+     * @param sheet Le numéro de la feuille dans le classeur.
+     * @return Vrai pour la feuille de l'interner.
+     */
+    boolean isOwnSheet(int sheet) {
+        return this.sheet == sheet;
+    }
+
+    /**
+     * Renvoie le nœud partagé d'un nombre.
+     *
+     * @param value La valeur du nombre.
+     * @return Le nœud partagé.
+     */
+    public Node number(double value) {
+        return intern(new NumberNode(value));
+    }
+
+    /**
+     * Renvoie le nœud partagé d'une référence relative de cellule.
+     *
+     * @param rowOffset Le décalage de ligne par rapport à la cellule de la formule.
+     * @param colOffset Le décalage de colonne par rapport à la cellule de la formule.
+     * @return Le nœud partagé.
+     */
+    public Node cell(int rowOffset, int colOffset) {
+        return intern(new CellNode(rowOffset, colOffset));
+    }
+
+    /**
+     * Renvoie le nœud partagé d'une référence relative à une cellule d'une autre feuille.
+     *
+     * @param sheet     Le numéro de la feuille lue dans le classeur.
+     * @param sheetName Le nom de la feuille lue.
+     * @param rowOffset Le décalage de ligne par rapport à la cellule de la formule.
+     * @param colOffset Le décalage de colonne par rapport à la cellule de la formule.
+     * @return Le nœud partagé.
+     */
+    public Node cell(int sheet, String sheetName, int rowOffset, int colOffset) {
+        return intern(new CellNode(sheet, sheetName, rowOffset, colOffset));
+    }
+
+    /**
+     * Renvoie le nœud partagé d'une fonction d'agrégat appliquée à une plage relative.
+     *
+     * @param function       Le code de la fonction (voir {@link AggregateNode#FUNCTIONS}).
+     * @param firstRowOffset Le décalage de ligne du coin supérieur gauche de la plage.
+     * @param firstColOffset Le décalage de colonne du coin supérieur gauche de la plage.
+     * @param lastRowOffset  Le décalage de ligne du coin inférieur droit de la plage.
+     * @param lastColOffset  Le décalage de colonne du coin inférieur droit de la plage.
+     * @return Le nœud partagé.
+     */
+    public Node aggregate(int function, int firstRowOffset, int firstColOffset, int lastRowOffset, int lastColOffset) {
+        return intern(new AggregateNode(function, firstRowOffset, firstColOffset, lastRowOffset, lastColOffset));
+    }
+
+    /**
+     * Renvoie le nœud partagé d'une opération.
+     *
+     * @param operator L'opérateur.
+     * @param left     Le nœud partagé de l'opérande gauche.
+     * @param right    Le nœud partagé de l'opérande droit.
+     * @return Le nœud partagé.
+     */
+    public Node operator(char operator, Node left, Node right) {
+        return intern(new OperatorNode(operator, left, right));
+    }
+
+    /**
+     * Renvoie le modèle compilé d'un arbre construit par cet interner, en le compilant s'il n'existe pas encore.
+     *
+     * @param root La racine partagée de l'arbre.
+     * @return Le modèle de la formule.
+     * @throws IncorrectFormulaException Si l'arbre ne peut pas être compilé.
+     */
+    public synchronized FormulaTemplate template(Node root) throws IncorrectFormulaException {
+        WeakReference<FormulaTemplate> reference = templates.get(root);
+        FormulaTemplate template = reference == null ? null : reference.get();
+        if (template == null) {
+            template = new FormulaTemplate(root, FormulaCompiler.compile(root, metrics));
+            templates.put(root, new WeakReference<>(template));
+        }
+        return template;
+    }
+
+    private synchronized Node intern(Node node) {
+        WeakReference<Node> reference = nodes.get(node);
+        Node shared = reference == null ? null : reference.get();
+        if (shared == null) {
+            nodes.put(node, new WeakReference<>(node));
+            shared = node;
+        }
+        return shared;
+    }
+}
@@ -0,0 +1,414 @@
+import java.util.Arrays;
+
+/**
+ * FormulaParser analyse une formule en notation préfixée caractère par caractère et construit son arbre de
+ * syntaxe abstraite en une seule passe, sans découper la formule en chaînes ni lever d'exception tant que la
+ * formule est correcte.
+ * Les éléments de la formule peuvent être séparés par n'importe quels caractères d'espacement. En cas d'erreur,
+ * le message indique la position (à partir de 1) du caractère fautif.
+ * Les opérateurs en attente de leurs opérandes sont gardés sur une pile explicite plutôt que par récursion, la
+ * profondeur d'imbrication étant limitée à {@link #MAX_DEPTH}.
+ * Les références de cellules sont converties en positions relatives à la cellule qui contient la formule, et
+ * les nœuds sont obtenus auprès d'un {@link FormulaInterner}, si bien que deux formules de même forme relative
+ * produisent le même arbre.
+ * Une fonction d'agrégat (SUM, AVERAGE, MIN, MAX ou COUNT) est un opérande formé du nom de la fonction suivi
+ * d'une plage, par exemple {@code + SUM A1:A100 1} ; une plage réduite à une cellule peut s'écrire sans ':'.
+ * Une cellule d'une autre feuille du classeur s'écrit précédée du nom de celle-ci et d'un point d'exclamation,
+ * par exemple {@code * Feuille2!B7 2} ; les plages ne peuvent porter que sur la feuille de la formule.
+ *
+ * @version 1.0
+ */
+public final class FormulaParser {
+
+    // Profondeur maximale d'imbrication des opérateurs.
+    static final int MAX_DEPTH = 1024;
+
+    // Puissances de dix représentées exactement par un double.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    // Nombre de chiffres significatifs qu'un entier long convertit exactement en double.
+    private static final int MAX_EXACT_DIGITS = 15;
+
+    // Nombre maximal de colonnes d'une plage, chacune étant agrégée séparément ; le nombre de lignes n'est pas
+    // limité.
+    static final int MAX_RANGE_COLUMNS = 1024;
+
+    private final String formula;
+    private final int originRow;
+    private final int originCol;
+    private final FormulaInterner interner;
+    private int position;
+
+    private FormulaParser(String formula, int originRow, int originCol, FormulaInterner interner) {
+        this.formula = formula;
+        this.originRow = originRow;
+        this.originCol = originCol;
+        this.interner = interner;
+    }
+
+    /**
+     * Analyse une formule et construit son arbre de syntaxe abstraite.
+     *
+     * @param formula       La formule à analyser.
+     * @param originAddress L'adresse de la cellule qui contient la formule.
+     * @param interner      L'interner qui fournit les nœuds partagés.
+     * @return La racine de l'arbre, partagée.
+     * @throws IncorrectFormulaException Si la formule n'est pas syntaxiquement correcte.
+     */
+    public static Node parse(String formula, long originAddress, FormulaInterner interner) throws IncorrectFormulaException {
+        return new FormulaParser(formula, CellOperations.getRowFromAddress(originAddress),
+                CellOperations.getColFromAddress(originAddress), interner).parse();
+    }
+
+    /**
+     * Reconnaît une formule réduite à un nombre, sans construire d'arbre.
+     *
+     * @param formula La formule.
+     * @return La valeur du nombre, ou NaN si la formule n'est pas un nombre seul.
+     */
+    public static double parseConstant(String formula) {
+        FormulaParser parser = new FormulaParser(formula, 0, 0, null);
+        parser.skipWhitespace();
+        if (parser.position == formula.length()) {
+            return Double.NaN;
+        }
+        char first = formula.charAt(parser.position);
+        if (!isDigit(first) && first != '.' && first != '-' && first != '+') {
+            return Double.NaN;
+        }
+        // Un signe seul est un opérateur.
+        if ((first == '-' || first == '+') && parser.isTokenEnd(parser.position + 1)) {
+            return Double.NaN;
+        }
+        try {
+            double value = parser.readNumberValue();
+            parser.skipWhitespace();
+            return parser.position == formula.length() ? value : Double.NaN;
+        } catch (IncorrectFormulaException exception) {
+            return Double.NaN;
+        }
+    }
+
+    private Node parse() throws IncorrectFormulaException {
+        // Opérateurs en attente, avec leur opérande gauche une fois celui-ci construit.
+        char[] operators = new char[8];
+        Node[] leftOperands = new Node[8];
+        int depth = 0;
+
+        skipWhitespace();
+        if (position == formula.length()) {
+            throw error("formule vide", position);
+        }
+
+        while (true) {
+            skipWhitespace();
+            if (position == formula.length()) {
+                throw error("opérande manquante", position);
+            }
+
+            int start = position;
+            char character = formula.charAt(position);
+            if (isOperator(character) && isTokenEnd(position + 1)) {
+                if (depth == MAX_DEPTH) {
+                    throw error("formule trop imbriquée", start);
+                }
+                if (depth == operators.length) {
+                    operators = Arrays.copyOf(operators, depth * 2);
+                    leftOperands = Arrays.copyOf(leftOperands, depth * 2);
+                }
+                operators[depth] = character;
+                leftOperands[depth] = null;
+                depth++;
+                position++;
+                continue;
+            }
+
+            Node operand = readOperand();
+
+            // Un opérande complète tous les opérateurs qui n'attendaient plus que leur opérande droit.
+            while (depth > 0 && leftOperands[depth - 1] != null) {
+                depth--;
+                operand = interner.operator(operators[depth], leftOperands[depth], operand);
+                leftOperands[depth] = null;
+            }
+
+            if (depth == 0) {
+                skipWhitespace();
+                if (position < formula.length()) {
+                    throw error("élément en trop", position);
+                }
+                return operand;
+            }
+            leftOperands[depth - 1] = operand;
+        }
+    }
+
+    /**
+     * Lit un nombre, une référence de cellule, éventuellement d'une autre feuille, ou une fonction d'agrégat à
+     * partir de la position courante.
+     *
+     * @return Le nœud correspondant.
+     * @throws IncorrectFormulaException Si l'élément n'est ni un nombre, ni une référence de cellule, ni une
+     *                                   fonction d'agrégat valide.
+     */
+    private Node readOperand() throws IncorrectFormulaException {
+        int sheetNameEnd = findSheetNameEnd();
+        if (sheetNameEnd >= 0) {
+            return readExternalCell(sheetNameEnd);
+        }
+        char character = formula.charAt(position);
+        if (character >= 'A' && character <= 'Z') {
+            int end = position;
+            while (end < formula.length() && formula.charAt(end) >= 'A' && formula.charAt(end) <= 'Z') {
+                end++;
+            }
+            return isTokenEnd(end) ? readFunction(end) : readCell();
+        }
+        if (isDigit(character) || character == '.' || character == '-' || character == '+') {
+            return readNumber();
+        }
+        throw error("caractère inattendu '" + character + "'", position);
+    }
+
+    /**
+     * Lit un nombre.
+     *
+     * @return Le nœud du nombre.
+     * @throws IncorrectFormulaException Si le nombre est mal écrit.
+     */
+    private Node readNumber() throws IncorrectFormulaException {
+        return interner.number(readNumberValue());
+    }
+
+    /**
+     * Lit un nombre décimal : un signe facultatif, des chiffres avec au plus un point, puis un exposant facultatif.
+     * Les nombres d'au plus quinze chiffres sans exposant sont convertis directement, les autres par
+     * {@link Double#parseDouble(String)} une fois leur syntaxe vérifiée.
+     *
+     * @return La valeur du nombre.
+     * @throws IncorrectFormulaException Si le nombre est mal écrit.
+     */
+    private double readNumberValue() throws IncorrectFormulaException {
+        int start = position;
+        boolean negative = false;
+        char first = formula.charAt(position);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            position++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = 0;
+        boolean fraction = false;
+        boolean exponent = false;
+
+        for (; position < formula.length(); position++) {
+            char character = formula.charAt(position);
+            if (isDigit(character)) {
+                if (digits < MAX_EXACT_DIGITS) {
+                    mantissa = mantissa * 10 + (character - '0');
+                }
+                digits++;
+                if (fraction) {
+                    fractionDigits++;
+                }
+            } else if (character == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            throw error("nombre invalide", start);
+        }
+
+        if (position < formula.length() && (formula.charAt(position) == 'e' || formula.charAt(position) == 'E')) {
+            exponent = true;
+            position++;
+            if (position < formula.length() && (formula.charAt(position) == '-' || formula.charAt(position) == '+')) {
+                position++;
+            }
+            int exponentStart = position;
+            while (position < formula.length() && isDigit(formula.charAt(position))) {
+                position++;
+            }
+            if (position == exponentStart) {
+                throw error("exposant invalide", start);
+            }
+        }
+
+        if (!isTokenEnd(position)) {
+            throw error("nombre invalide", start);
+        }
+
+        if (!exponent && digits <= MAX_EXACT_DIGITS && fractionDigits < POWERS_OF_TEN.length) {
+            double value = mantissa / POWERS_OF_TEN[fractionDigits];
+            return negative ? -value : value;
+        }
+        return Double.parseDouble(formula.substring(start, position));
+    }
+
+    /**
+     * Lit une fonction d'agrégat et sa plage.
+     *
+     * @param nameEnd La position qui suit le nom de la fonction.
+     * @return Le nœud de l'agrégat, dont la plage est relative à la cellule de la formule.
+     * @throws IncorrectFormulaException Si la fonction est inconnue ou si la plage est invalide.
+     */
+    private Node readFunction(int nameEnd) throws IncorrectFormulaException {
+        int start = position;
+        String name = formula.substring(start, nameEnd);
+        int function = AggregateNode.getFunction(name);
+        if (function < 0) {
+            throw error("fonction inconnue '" + name + "'", start);
+        }
+        position = nameEnd;
+        skipWhitespace();
+        if (position == formula.length()) {
+            throw error("plage manquante", position);
+        }
+
+        int rangeStart = position;
+        if (findSheetNameEnd() >= 0) {
+            throw error("plage d'une autre feuille", rangeStart);
+        }
+        long first = readAddress(rangeStart);
+        long last = first;
+        if (position < formula.length() && formula.charAt(position) == ':') {
+            position++;
+            last = readAddress(rangeStart);
+        }
+        if (!isTokenEnd(position)) {
+            throw error("plage invalide", rangeStart);
+        }
+
+        int firstRow = Math.min(CellOperations.getRowFromAddress(first), CellOperations.getRowFromAddress(last));
+        int firstCol = Math.min(CellOperations.getColFromAddress(first), CellOperations.getColFromAddress(last));
+        int lastRow = Math.max(CellOperations.getRowFromAddress(first), CellOperations.getRowFromAddress(last));
+        int lastCol = Math.max(CellOperations.getColFromAddress(first), CellOperations.getColFromAddress(last));
+        if (lastCol - firstCol + 1 > MAX_RANGE_COLUMNS) {
+            throw error("plage trop grande", rangeStart);
+        }
+        return interner.aggregate(function, firstRow - originRow, firstCol - originCol, lastRow - originRow, lastCol - originCol);
+    }
+
+    /**
+     * Lit une référence de cellule isolée.
+     *
+     * @return Le nœud de la référence, relative à la cellule de la formule.
+     * @throws IncorrectFormulaException Si la référence est invalide.
+     */
+    private Node readCell() throws IncorrectFormulaException {
+        int start = position;
+        long address = readAddress(start);
+        if (!isTokenEnd(position)) {
+            throw error(formula.charAt(position) == ':' ? "plage en dehors d'une fonction d'agrégat" : "référence de cellule invalide", start);
+        }
+        return interner.cell(CellOperations.getRowFromAddress(address) - originRow, CellOperations.getColFromAddress(address) - originCol);
+    }
+
+    /**
+     * Lit une référence à une cellule d'une autre feuille, par exemple {@code Feuille2!B7}. Une référence à la
+     * feuille de la formule par son propre nom est une référence ordinaire.
+     *
+     * @param sheetNameEnd La position du point d'exclamation qui suit le nom de la feuille.
+     * @return Le nœud de la référence, relative à la cellule de la formule.
+     * @throws IncorrectFormulaException Si la feuille est inconnue ou si la référence est invalide.
+     */
+    private Node readExternalCell(int sheetNameEnd) throws IncorrectFormulaException {
+        int start = position;
+        String sheetName = formula.substring(start, sheetNameEnd);
+        int sheet = interner.findSheet(sheetName);
+        if (sheet < 0) {
+            throw error("feuille inconnue '" + sheetName + "'", start);
+        }
+        position = sheetNameEnd + 1;
+        long address = readAddress(start);
+        if (!isTokenEnd(position)) {
+            throw error(formula.charAt(position) == ':' ? "plage d'une autre feuille" : "référence de cellule invalide", start);
+        }
+        int rowOffset = CellOperations.getRowFromAddress(address) - originRow;
+        int colOffset = CellOperations.getColFromAddress(address) - originCol;
+        return interner.isOwnSheet(sheet) ? interner.cell(rowOffset, colOffset) : interner.cell(sheet, sheetName, rowOffset, colOffset);
+    }
+
+    /**
+     * Cherche un nom de feuille suivi d'un point d'exclamation à la position courante : une lettre puis des
+     * lettres, des chiffres ou des soulignés.
+     *
+     * @return La position du point d'exclamation, ou -1 si l'élément courant ne commence pas par un nom de
+     * feuille.
+     */
+    private int findSheetNameEnd() {
+        int end = position;
+        if (end == formula.length() || !Character.isLetter(formula.charAt(end))) {
+            return -1;
+        }
+        while (end < formula.length() && (Character.isLetterOrDigit(formula.charAt(end)) || formula.charAt(end) == '_')) {
+            end++;
+        }
+        return end < formula.length() && formula.charAt(end) == '!' ? end : -1;
+    }
+
+    /**
+     * Lit une référence de cellule : une à trois lettres majuscules pour la colonne (A à XFD), puis le numéro de
+     * ligne sans zéro initial (1 à 1 048 576). La référence peut être suivie d'autres caractères, que l'appelant
+     * vérifie.
+     *
+     * @param start La position du début de l'élément, pour les messages d'erreur.
+     * @return L'adresse de la cellule.
+     * @throws IncorrectFormulaException Si la référence est invalide.
+     */
+    private long readAddress(int start) throws IncorrectFormulaException {
+        int col = 0;
+        int letters = 0;
+        for (; position < formula.length() && formula.charAt(position) >= 'A' && formula.charAt(position) <= 'Z'; position++) {
+            col = col * 26 + (formula.charAt(position) - 'A' + 1);
+            letters++;
+        }
+
+        int row = 0;
+        int digits = 0;
+        for (; position < formula.length() && isDigit(formula.charAt(position)); position++) {
+            if (digits == 0 && formula.charAt(position) == '0') {
+                throw error("référence de cellule invalide", start);
+            }
+            if (digits < 8) {
+                row = row * 10 + (formula.charAt(position) - '0');
+            }
+            digits++;
+        }
+
+        if (letters == 0 || letters > 3 || digits == 0
+                || col > CellOperations.MAX_COLUMNS || row > CellOperations.MAX_ROWS) {
+            throw error("référence de cellule invalide", start);
+        }
+
+        return CellOperations.getAddress(row - 1, col - 1);
+    }
+
+    private void skipWhitespace() {
+        while (position < formula.length() && Character.isWhitespace(formula.charAt(position))) {
+            position++;
+        }
+    }
+
+    private boolean isTokenEnd(int index) {
+        return index == formula.length() || Character.isWhitespace(formula.charAt(index));
+    }
+
+    private static boolean isOperator(char character) {
+        return character == '+' || character == '-' || character == '*' || character == '/';
+    }
+
+    private static boolean isDigit(char character) {
+        return character >= '0' && character <= '9';
+    }
+
+    private IncorrectFormulaException error(String message, int index) {
+        return new IncorrectFormulaException("Formule incorrecte : " + message + " (position " + (index + 1) + ").");
+    }
+}
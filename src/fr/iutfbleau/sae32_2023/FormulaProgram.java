@@ -0,0 +1,317 @@
+/**
+ * FormulaProgram est la forme compilée d'une formule : une suite d'instructions en notation postfixée, un
+ * réservoir de constantes et la position relative des cellules lues. Un même programme est partagé par toutes
+ * les cellules dont la formule a la même forme relative (voir {@link FormulaTemplate}) : chacune fournit à
+ * l'évaluation les emplacements, déjà résolus dans le {@link ValueStore}, des cellules qu'elle lit.
+ * Son évaluation est une simple boucle sur une pile de doubles fournie par l'appelant, sans appel virtuel ni
+ * allocation. Une erreur interrompt la boucle et devient le résultat de la formule, sous la forme d'une valeur
+ * d'erreur (voir {@link CellError}) : aucune exception n'est levée. Une fois évalué un certain nombre de fois,
+ * le programme est traduit en une classe cachée (voir {@link FormulaClassGenerator}) qui prend le relais de la
+ * boucle.
+ * Les fonctions d'agrégat lisent leur plage dans les agrégats par colonne du ValueStore ; les programmes qui en
+ * contiennent restent interprétés, le coût de l'agrégat l'emportant sur celui de la boucle.
+ *
+ * @version 1.0
+ */
+public class FormulaProgram {
+
+    // Empile la constante dont l'index est donné par l'opérande.
+    static final byte PUSH_CONSTANT = 0;
+
+    // Empile la valeur de la cellule dont le numéro de référence est donné par l'opérande.
+    static final byte LOAD_CELL = 1;
+
+    // Dépilent deux valeurs et empilent le résultat de l'opération.
+    static final byte ADD = 2;
+    static final byte SUBTRACT = 3;
+    static final byte MULTIPLY = 4;
+    static final byte DIVIDE = 5;
+
+    // Empilent l'agrégat de la plage dont le numéro est donné par l'opérande, dans l'ordre de
+    // AggregateNode.FUNCTIONS.
+    static final byte SUM = 6;
+    static final byte AVERAGE = 7;
+    static final byte MIN = 8;
+    static final byte MAX = 9;
+    static final byte COUNT = 10;
+
+    final byte[] opcodes;
+    final int[] operands;
+    final double[] constants;
+    final int maxStackDepth;
+
+    // Feuille lue par chaque référence, -1 pour la feuille de la formule, et décalages de ligne et de colonne de
+    // chaque référence par rapport à la cellule de la formule.
+    final int[] sheets;
+    final int[] rowOffsets;
+    final int[] colOffsets;
+
+    // Coins relatifs de chaque plage : première ligne, première colonne, dernière ligne, dernière colonne.
+    final int[] rangeOffsets;
+
+    // Nombre d'évaluations interprétées, puis formule compilée une fois le seuil atteint. Le programme pouvant
+    // être évalué par plusieurs fils d'exécution lors d'un recalcul parallèle, le compte est approximatif et la
+    // formule compilée est publiée par un champ volatile.
+    private int evaluationsCount;
+    private volatile CompiledFormula compiledFormula;
+
+    // Mesures de la feuille, qui comptent les formules restées interprétées faute d'avoir pu être compilées.
+    private final CalculationMetrics metrics;
+
+    /**
+     * Constructeur de FormulaProgram, utilisé par {@link FormulaCompiler}.
+     *
+     * @param opcodes       Les codes des instructions.
+     * @param operands      L'opérande de chaque instruction (index de constante ou numéro de référence).
+     * @param constants     Le réservoir de constantes.
+     * @param maxStackDepth La profondeur maximale atteinte par la pile pendant l'évaluation.
+     * @param sheets        La feuille lue par chaque référence, -1 pour la feuille de la formule.
+     * @param rowOffsets    Le décalage de ligne de chaque référence.
+     * @param colOffsets    Le décalage de colonne de chaque référence.
+     * @param rangeOffsets  Les coins relatifs de chaque plage, quatre entiers par plage.
+     * @param metrics       Les mesures de la feuille.
+     */
+    FormulaProgram(byte[] opcodes, int[] operands, double[] constants, int maxStackDepth, int[] sheets, int[] rowOffsets,
+                   int[] colOffsets, int[] rangeOffsets, CalculationMetrics metrics) {
+        this.opcodes = opcodes;
+        this.operands = operands;
+        this.constants = constants;
+        this.maxStackDepth = maxStackDepth;
+        this.sheets = sheets;
+        this.rowOffsets = rowOffsets;
+        this.colOffsets = colOffsets;
+        this.rangeOffsets = rangeOffsets;
+        this.metrics = metrics;
+    }
+
+    public int getMaxStackDepth() {
+        return maxStackDepth;
+    }
+
+    /**
+     * Renvoie le nombre de cellules distinctes lues par le programme.
+     *
+     * @return Le nombre de références.
+     */
+    public int getReferencesCount() {
+        return rowOffsets.length;
+    }
+
+    /**
+     * Renvoie l'adresse de la cellule lue par une référence, pour une cellule d'origine donnée : une adresse
+     * externe (voir {@link CellOperations#getExternalAddress(int, long)}) si elle appartient à une autre feuille.
+     *
+     * @param reference Le numéro de la référence.
+     * @param originRow La ligne de la cellule qui contient la formule.
+     * @param originCol La colonne de la cellule qui contient la formule.
+     * @return L'adresse de la cellule lue.
+     */
+    long getReferenceAddress(int reference, int originRow, int originCol) {
+        long address = CellOperations.getAddress(originRow + rowOffsets[reference], originCol + colOffsets[reference]);
+        return sheets[reference] < 0 ? address : CellOperations.getExternalAddress(sheets[reference], address);
+    }
+
+    /**
+     * Résout les références du programme pour une cellule donnée : chaque position relative devient l'emplacement,
+     * dans le ValueStore, de la cellule lue. Une cellule d'une autre feuille est lue dans la copie qu'en garde la
+     * feuille de la formule, à son adresse externe.
+     *
+     * @param originAddress L'adresse de la cellule qui contient la formule.
+     * @param valueStore    Le ValueStore qui attribue les emplacements.
+     * @return L'emplacement de chaque référence.
+     */
+    public int[] bind(long originAddress, ValueStore valueStore) {
+        int originRow = CellOperations.getRowFromAddress(originAddress);
+        int originCol = CellOperations.getColFromAddress(originAddress);
+        int[] slots = new int[rowOffsets.length];
+        for (int reference = 0; reference < slots.length; reference++) {
+            slots[reference] = valueStore.getSlot(getReferenceAddress(reference, originRow, originCol));
+        }
+        return slots;
+    }
+
+    /**
+     * Résout les plages du programme pour une cellule donnée et demande au ValueStore d'agréger leurs colonnes.
+     *
+     * @param originAddress L'adresse de la cellule qui contient la formule.
+     * @param valueStore    Le ValueStore qui tient les agrégats.
+     * @return Les coins absolus de chaque plage, quatre entiers par plage.
+     */
+    public int[] bindRanges(long originAddress, ValueStore valueStore) {
+        int originRow = CellOperations.getRowFromAddress(originAddress);
+        int originCol = CellOperations.getColFromAddress(originAddress);
+        int[] ranges = new int[rangeOffsets.length];
+        for (int index = 0; index < ranges.length; index += 4) {
+            ranges[index] = originRow + rangeOffsets[index];
+            ranges[index + 1] = originCol + rangeOffsets[index + 1];
+            ranges[index + 2] = originRow + rangeOffsets[index + 2];
+            ranges[index + 3] = originCol + rangeOffsets[index + 3];
+            valueStore.aggregateColumns(ranges[index + 1], ranges[index + 3]);
+        }
+        return ranges;
+    }
+
+    /**
+     * Évalue le programme à partir des valeurs des cellules rangées dans le ValueStore.
+     *
+     * @param valueStore Les valeurs et les états des cellules.
+     * @param slots      L'emplacement de chaque référence, tel que renvoyé par {@link #bind(long, ValueStore)}.
+     * @param ranges     Les coins absolus de chaque plage, tels que renvoyés par {@link #bindRanges(long, ValueStore)}.
+     * @param stack      La pile de travail, d'une taille au moins égale à {@link #getMaxStackDepth()}.
+     * @return Le résultat de la formule, ou une valeur d'erreur (voir {@link CellError#fromValue(double)}) si une
+     * cellule lue est vide ou en erreur, si une plage contient une erreur ou n'a pas de valeur à agréger, ou en
+     * cas de division par 0.
+     */
+    public double evaluate(ValueStore valueStore, int[] slots, int[] ranges, double[] stack) {
+        CompiledFormula compiled = compiledFormula;
+        if (compiled != null) {
+            for (int slot : slots) {
+                if (valueStore.states[slot] != CellState.CALCULABLE) {
+                    return readError(valueStore, slot);
+                }
+            }
+            double result = compiled.eval(valueStore.values, slots);
+            // Un résultat en erreur est recalculé par l'interpréteur, qui s'arrête à la première erreur et renvoie donc
+            // la même valeur que sans compilation. Un NaN ordinaire, comme celui d'une soustraction de deux infinis,
+            // est renvoyé tel quel.
+            if (CellError.fromValue(result) == CellError.NONE) {
+                return result;
+            }
+        } else if (evaluationsCount < FormulaClassGenerator.COMPILATION_THRESHOLD
+                && ++evaluationsCount == FormulaClassGenerator.COMPILATION_THRESHOLD) {
+            compile();
+        }
+
+        double[] values = valueStore.values;
+        byte[] states = valueStore.states;
+        int top = -1;
+
+        for (int index = 0; index < opcodes.length; index++) {
+            switch (opcodes[index]) {
+                case PUSH_CONSTANT:
+                    stack[++top] = constants[operands[index]];
+                    break;
+                case LOAD_CELL:
+                    int slot = slots[operands[index]];
+                    if (states[slot] != CellState.CALCULABLE) {
+                        return readError(valueStore, slot);
+                    }
+                    stack[++top] = values[slot];
+                    break;
+                case ADD:
+                    top--;
+                    stack[top] += stack[top + 1];
+                    break;
+                case SUBTRACT:
+                    top--;
+                    stack[top] -= stack[top + 1];
+                    break;
+                case MULTIPLY:
+                    top--;
+                    stack[top] *= stack[top + 1];
+                    break;
+                case DIVIDE:
+                    top--;
+                    if (stack[top + 1] == 0) {
+                        return CellError.toValue(CellError.DIV_ZERO);
+                    }
+                    stack[top] /= stack[top + 1];
+                    break;
+                case SUM:
+                case AVERAGE:
+                case MIN:
+                case MAX:
+                case COUNT:
+                    double aggregate = aggregate(opcodes[index], valueStore, ranges, 4 * operands[index]);
+                    if (CellError.fromValue(aggregate) != CellError.NONE) {
+                        return aggregate;
+                    }
+                    stack[++top] = aggregate;
+                    break;
+                default:
+                    // Opérateur inconnu : le programme ne correspond à aucune formule correcte.
+                    return CellError.toValue(CellError.REF);
+            }
+        }
+        return stack[0];
+    }
+
+    /**
+     * Traduit le programme en classe cachée, une seule fois même si plusieurs fils d'exécution atteignent le seuil
+     * en même temps. Si la classe ne peut pas être définie, la formule continue d'être interprétée et l'échec est
+     * compté dans les mesures de la feuille.
+     */
+    private synchronized void compile() {
+        if (compiledFormula == null) {
+            try {
+                compiledFormula = FormulaClassGenerator.generate(this);
+            } catch (ReflectiveOperationException | LinkageError exception) {
+                metrics.recordCompilationFailure();
+            }
+        }
+    }
+
+    /**
+     * Divise deux valeurs. Utilisée par les formules compilées, qui n'ont pas de branchement.
+     *
+     * @param dividend Le dividende.
+     * @param divisor  Le diviseur.
+     * @return Le quotient, ou la valeur d'erreur {@link CellError#DIV_ZERO} en cas de division par 0.
+     */
+    public static double divide(double dividend, double divisor) {
+        return divisor == 0 ? CellError.toValue(CellError.DIV_ZERO) : dividend / divisor;
+    }
+
+    /**
+     * Calcule l'agrégat d'une plage à partir des agrégats par colonne du ValueStore. Les cellules vides de la plage
+     * sont ignorées.
+     *
+     * @param opcode     Le code de l'instruction, qui désigne la fonction.
+     * @param valueStore Les valeurs, les états et les agrégats des cellules.
+     * @param ranges     Les coins absolus des plages.
+     * @param range      L'index du premier coin de la plage dans ranges.
+     * @return L'agrégat, la plus grave des erreurs de la plage, ou {@link CellError#EMPTY} si elle ne contient
+     * aucune valeur pour une moyenne, un minimum ou un maximum.
+     */
+    private static double aggregate(byte opcode, ValueStore valueStore, int[] ranges, int range) {
+        int firstRow = ranges[range];
+        int firstCol = ranges[range + 1];
+        int lastRow = ranges[range + 2];
+        int lastCol = ranges[range + 3];
+
+        byte worstError = valueStore.getWorstError(firstRow, firstCol, lastRow, lastCol);
+        if (worstError != CellError.NONE) {
+            return CellError.toValue(worstError);
+        }
+
+        if (opcode == SUM) {
+            return valueStore.sum(firstRow, firstCol, lastRow, lastCol);
+        }
+        int count = valueStore.count(firstRow, firstCol, lastRow, lastCol);
+        if (opcode == COUNT) {
+            return count;
+        }
+        if (count == 0) {
+            return CellError.toValue(CellError.EMPTY);
+        }
+        switch (opcode) {
+            case AVERAGE:
+                return valueStore.sum(firstRow, firstCol, lastRow, lastCol) / count;
+            case MIN:
+                return valueStore.min(firstRow, firstCol, lastRow, lastCol);
+            default:
+                return valueStore.max(firstRow, firstCol, lastRow, lastCol);
+        }
+    }
+
+    /**
+     * Renvoie l'erreur d'une cellule lue qui n'a pas de valeur : celle de la cellule si elle est en erreur.
+     *
+     * @param valueStore Les valeurs et les états des cellules.
+     * @param slot       L'emplacement de la cellule lue.
+     * @return La valeur d'erreur.
+     */
+    private static double readError(ValueStore valueStore, int slot) {
+        return valueStore.states[slot] == CellState.EMPTY ? CellError.toValue(CellError.EMPTY) : valueStore.values[slot];
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * FormulaTemplate est la forme partagée d'une formule : son arbre, dont les références sont relatives à la
+ * cellule qui contient la formule, et le {@link FormulaProgram} compilé à partir de cet arbre.
+ * Toutes les cellules dont les formules ont la même forme relative, par exemple les formules recopiées vers le
+ * bas d'une colonne, utilisent le même modèle ; seules les cellules effectivement lues diffèrent, et elles sont
+ * résolues par chaque cellule (voir {@link FormulaProgram#bind(long, ValueStore)}).
+ * Les modèles sont obtenus auprès d'un {@link FormulaInterner}.
+ *
+ * @version 1.0
+ */
+public final class FormulaTemplate {
+    private final Node root;
+    private final FormulaProgram program;
+
+    /**
+     * Constructeur de FormulaTemplate.
+     *
+     * @param root    La racine de l'arbre, dont les nœuds sont partagés.
+     * @param program Le programme compilé à partir de l'arbre.
+     */
+    FormulaTemplate(Node root, FormulaProgram program) {
+        this.root = root;
+        this.program = program;
+    }
+
+    public Node getRoot() {
+        return root;
+    }
+
+    public FormulaProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Renvoie la forme canonique de la formule, en notation préfixée avec des références R1C1 relatives,
+     * par exemple {@code + R[-1]C R[-1]C[1]}.
+     *
+     * @return La forme canonique.
+     */
+    public String getCanonicalFormula() {
+        return root.toString();
+    }
+
+    /**
+     * Écrit la formule telle qu'elle s'écrit dans une cellule donnée, par exemple {@code + A1 B1} pour la cellule
+     * A2 d'un modèle {@code + R[-1]C R[-1]C[1]}. Les éléments sont séparés par une seule espace et les nombres
+     * écrits sous leur forme canonique.
+     *
+     * @param originAddress L'adresse de la cellule.
+     * @return La formule.
+     */
+    public String getFormula(long originAddress) {
+        StringBuilder builder = new StringBuilder();
+        root.appendFormula(builder, CellOperations.getRowFromAddress(originAddress), CellOperations.getColFromAddress(originAddress));
+        return builder.toString();
+    }
+}
@@ -0,0 +1,32 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * GridFrameListener est l'ActionListener du minuteur d'images d'une {@link SheetGrid} : à chaque image, il
+ * redessine en une fois les cellules modifiées depuis l'image précédente.
+ *
+ * @version 1.0
+ */
+public class GridFrameListener implements ActionListener {
+
+    private final SheetGrid grid;
+
+    /**
+     * Constructeur de GridFrameListener.
+     *
+     * @param grid La grille à redessiner.
+     */
+    public GridFrameListener(SheetGrid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Redessine les cellules modifiées de la grille.
+     *
+     * @param e L'événement du minuteur.
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        grid.repaintDirtyCells();
+    }
+}
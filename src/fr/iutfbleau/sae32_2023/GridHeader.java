@@ -0,0 +1,57 @@
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * GridHeader dessine les en-têtes des lignes ou des colonnes d'une {@link SheetGrid}, placés par le
+ * {@link JScrollPane} de la grille au bord de sa zone visible. Comme la grille, il ne peint que les en-têtes
+ * visibles, avec une seule étiquette de rendu.
+ *
+ * @version 1.0
+ */
+public class GridHeader extends JComponent {
+
+    // Largeur des en-têtes de ligne, assez grande pour le numéro de la dernière ligne.
+    private static final int ROW_HEADER_WIDTH = 64;
+
+    private final boolean rowHeader;
+    private final JLabel renderer = new JLabel("", SwingConstants.CENTER);
+    private final CellRendererPane rendererPane = new CellRendererPane();
+
+    /**
+     * Constructeur de GridHeader.
+     *
+     * @param rowHeader Vrai pour les en-têtes des lignes, faux pour ceux des colonnes.
+     */
+    public GridHeader(boolean rowHeader) {
+        this.rowHeader = rowHeader;
+        renderer.setOpaque(true);
+        renderer.setBackground(Color.LIGHT_GRAY);
+        renderer.setForeground(Color.BLACK);
+        renderer.setBorder(BorderFactory.createLineBorder(Color.BLACK));
+        add(rendererPane);
+        setPreferredSize(rowHeader
+                ? new Dimension(ROW_HEADER_WIDTH, CellOperations.MAX_ROWS * SheetGrid.CELL_HEIGHT)
+                : new Dimension(CellOperations.MAX_COLUMNS * SheetGrid.CELL_WIDTH, SheetGrid.CELL_HEIGHT));
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        if (rowHeader) {
+            int startRow = Math.max(0, clip.y / SheetGrid.CELL_HEIGHT);
+            int endRow = Math.min(CellOperations.MAX_ROWS - 1, (clip.y + clip.height - 1) / SheetGrid.CELL_HEIGHT);
+            for (int row = startRow; row <= endRow; row++) {
+                renderer.setText(Integer.toString(row + 1));
+                rendererPane.paintComponent(g, renderer, this, 0, row * SheetGrid.CELL_HEIGHT, ROW_HEADER_WIDTH, SheetGrid.CELL_HEIGHT, true);
+            }
+        } else {
+            int startCol = Math.max(0, clip.x / SheetGrid.CELL_WIDTH);
+            int endCol = Math.min(CellOperations.MAX_COLUMNS - 1, (clip.x + clip.width - 1) / SheetGrid.CELL_WIDTH);
+            for (int col = startCol; col <= endCol; col++) {
+                renderer.setText(CellOperations.getColumnName(col));
+                rendererPane.paintComponent(g, renderer, this, col * SheetGrid.CELL_WIDTH, 0, SheetGrid.CELL_WIDTH, SheetGrid.CELL_HEIGHT, true);
+            }
+        }
+        rendererPane.removeAll();
+    }
+}
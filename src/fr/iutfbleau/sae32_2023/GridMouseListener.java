@@ -0,0 +1,60 @@
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+
+/**
+ * GridMouseListener étend MouseAdapter pour gérer les interactions de la souris avec les cellules d'une
+ * {@link SheetGrid}. Un seul écouteur sert à toute la grille : la cellule visée est retrouvée à partir de la
+ * position de la souris. Il met en évidence la cellule survolée et, lors d'un clic, sélectionne la cellule et
+ * met à jour la barre de formule.
+ *
+ * @version 1.0
+ */
+public class GridMouseListener extends MouseAdapter {
+    private final TabPage tabPage;
+
+    /**
+     * Constructeur de GridMouseListener.
+     *
+     * @param tabPage La page qui contient la grille.
+     */
+    public GridMouseListener(TabPage tabPage) {
+        this.tabPage = tabPage;
+    }
+
+    /**
+     * Gère le déplacement de la souris au-dessus de la grille, en mettant en évidence la cellule survolée.
+     *
+     * @param e L'événement de la souris.
+     */
+    @Override
+    public void mouseMoved(MouseEvent e) {
+        tabPage.grid.setHoveredCell(tabPage.grid.getRowAt(e.getY()), tabPage.grid.getColAt(e.getX()));
+    }
+
+    /**
+     * Gère l'événement de la souris sortant de la grille : plus aucune cellule n'est survolée.
+     *
+     * @param e L'événement de la souris.
+     */
+    @Override
+    public void mouseExited(MouseEvent e) {
+        tabPage.grid.setHoveredCell(-1, -1);
+    }
+
+    /**
+     * Gère l'événement du clic de souris sur une cellule.
+     * Met en évidence la cellule sélectionnée et met à jour la barre de formule avec la formule de la cellule.
+     *
+     * @param e L'événement du clic de souris.
+     */
+    @Override
+    public void mouseClicked(MouseEvent e) {
+        int row = tabPage.grid.getRowAt(e.getY());
+        int col = tabPage.grid.getColAt(e.getX());
+        if (row < 0 || col < 0) {
+            return;
+        }
+        tabPage.grid.setSelectedCell(row, col);
+        tabPage.formulaBar.setText(tabPage.grid.getFormula(row, col));
+    }
+}
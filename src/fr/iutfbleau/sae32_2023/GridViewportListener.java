@@ -0,0 +1,35 @@
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * GridViewportListener réagit au défilement et au redimensionnement de la zone visible d'une
+ * {@link SheetGrid} : le moteur de calcul est informé des nouvelles cellules affichées, dont il publie alors le
+ * contenu.
+ *
+ * @version 1.0
+ */
+public class GridViewportListener implements ChangeListener {
+
+    private final TabPage tabPage;
+
+    /**
+     * Constructeur de GridViewportListener.
+     *
+     * @param tabPage La page qui contient la grille.
+     */
+    public GridViewportListener(TabPage tabPage) {
+        this.tabPage = tabPage;
+    }
+
+    /**
+     * Recalcule les cellules visibles de la grille et, si elles ont changé, les transmet au moteur de calcul.
+     *
+     * @param e L'événement de changement de la zone visible.
+     */
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        if (tabPage.grid.updateViewport()) {
+            tabPage.calculationEngine.setViewport(tabPage.grid.getViewportCells());
+        }
+    }
+}
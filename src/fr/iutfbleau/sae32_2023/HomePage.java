@@ -1,24 +1,52 @@
 import javax.swing.*;
 import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HomePage représente la fenêtre principale de l'application "Petit Tableur".
  * Elle fournit une interface utilisateur pour accéder aux différentes fonctionnalités de l'application,
  * comme le tableur lui-même et l'option de sortie.
+ * Lorsque le classeur a été ouvert depuis un fichier, ou doit y être enregistré, il l'est à la fermeture de la
+ * fenêtre (voir {@link WorkbookFile}).
+ * Chaque feuille du classeur a son onglet, mais sa {@link TabPage} n'est construite, et la feuille chargée, que
+ * lorsque l'onglet est ouvert pour la première fois. Les moteurs de calcul des pages partagent un même fil.
  *
  * @version 1.0
  */
 public class HomePage extends JFrame {
     public final CardLayout cardLayout;
 
+    // Classeur affiché par l'application.
+    public final Workbook workbook;
+
+    // Fichier dans lequel le classeur est enregistré à la fermeture, ou null.
+    private final Path file;
+
+    // Onglets des feuilles : un panneau vide tient la place d'une feuille qui n'a pas encore été ouverte.
+    public final JTabbedPane sheetTabs;
+
+    // Fil de calcul partagé par les pages des feuilles, qui peuvent se lire les unes les autres.
+    private final ExecutorService calculationExecutor = CalculationEngine.newExecutor();
+
     /**
      * Constructeur de HomePage.
      * Initialise la fenêtre avec un titre, une taille, une action par défaut de fermeture et la disposition.
+     *
+     * @param workbook Le classeur affiché, une feuille par onglet.
+     * @param file     Le fichier dans lequel enregistrer le classeur à la fermeture, ou null pour ne pas
+     *                 l'enregistrer.
      */
-    public HomePage() {
-        setTitle("Petit Tableur");
+    public HomePage(Workbook workbook, Path file) {
+        this.workbook = workbook;
+        this.file = file;
+
+        setTitle(file == null ? "Petit Tableur" : "Petit Tableur - " + file.getFileName());
         setSize(800, 600);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
+        addWindowListener(new HomePageWindowListener(this));
         setLocationRelativeTo(null);
 
         cardLayout = new CardLayout();
@@ -26,7 +54,62 @@ public class HomePage extends JFrame {
 
         JPanel mainPanel = createMainPanel();
         add(mainPanel, "MainPanel");
-        add(new TabPage(), "TabPage");
+        sheetTabs = new JTabbedPane();
+        for (String name : workbook.getSheetNames()) {
+            sheetTabs.addTab(name, new JPanel());
+        }
+        sheetTabs.addChangeListener(new SheetTabListener(this));
+        add(createSheetsPanel(), "TabPage");
+    }
+
+    /**
+     * Construit la page de la feuille de l'onglet sélectionné si elle ne l'a pas encore été. La feuille est alors
+     * chargée depuis le fichier du classeur si elle ne l'était pas.
+     */
+    public void openSelectedSheet() {
+        int index = sheetTabs.getSelectedIndex();
+        if (index < 0 || sheetTabs.getComponentAt(index) instanceof TabPage) {
+            return;
+        }
+        Sheet sheet = workbook.getSheet(sheetTabs.getTitleAt(index));
+        sheetTabs.setComponentAt(index, new TabPage(sheet, calculationExecutor));
+    }
+
+    /**
+     * Ajoute au classeur une feuille vide, nommée « FeuilleN » avec le premier numéro libre, et l'ouvre dans un
+     * nouvel onglet.
+     */
+    public void addSheet() {
+        int number = workbook.getSheetCount() + 1;
+        while (workbook.findSheet("Feuille" + number) >= 0) {
+            number++;
+        }
+        String name = "Feuille" + number;
+        workbook.createSheet(name);
+        sheetTabs.addTab(name, new JPanel());
+        sheetTabs.setSelectedIndex(sheetTabs.getTabCount() - 1);
+        openSelectedSheet();
+    }
+
+    /**
+     * Ferme l'application : le fil de calcul termine les modifications en cours, puis le classeur est
+     * enregistré s'il a un fichier. Un échec de l'enregistrement est signalé avant la fermeture.
+     */
+    public void close() {
+        try {
+            calculationExecutor.shutdown();
+            calculationExecutor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            if (file != null) {
+                WorkbookFile.save(workbook, file);
+            }
+        } catch (IOException exception) {
+            JOptionPane.showMessageDialog(this, "Le classeur n'a pas pu être enregistré : " + exception.getMessage(),
+                    "Petit Tableur", JOptionPane.ERROR_MESSAGE);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        dispose();
+        System.exit(0);
     }
 
     /**
@@ -51,6 +134,24 @@ public class HomePage extends JFrame {
         return mainPanel;
     }
 
+    /**
+     * Crée le panneau des feuilles : les onglets, et un bouton pour ajouter une feuille au classeur.
+     *
+     * @return Le JPanel créé pour les feuilles.
+     */
+    private JPanel createSheetsPanel() {
+        JButton btnNewSheet = createButton("Nouvelle feuille");
+        btnNewSheet.addActionListener(new NewSheetButtonListener(this));
+
+        JPanel toolbar = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        toolbar.add(btnNewSheet);
+
+        JPanel sheetsPanel = new JPanel(new BorderLayout());
+        sheetsPanel.add(toolbar, BorderLayout.NORTH);
+        sheetsPanel.add(sheetTabs, BorderLayout.CENTER);
+        return sheetsPanel;
+    }
+
     /**
      * Crée le label du titre pour la page d'accueil.
      * Définit le texte, la couleur, la police et l'alignement du titre.
@@ -78,7 +179,7 @@ public class HomePage extends JFrame {
 
         JButton btnQuitter = createButton("Quitter");
         btnQuitter.setAlignmentX(Component.CENTER_ALIGNMENT);
-        btnQuitter.addActionListener(new ExitButtonListener());
+        btnQuitter.addActionListener(new ExitButtonListener(this));
 
         JPanel buttonsPanel = new JPanel();
         buttonsPanel.setLayout(new BoxLayout(buttonsPanel, BoxLayout.Y_AXIS));
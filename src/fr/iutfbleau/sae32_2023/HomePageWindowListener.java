@@ -0,0 +1,32 @@
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+/**
+ * HomePageWindowListener ferme l'application lorsque l'utilisateur ferme la fenêtre principale, en passant par
+ * {@link HomePage#close()} afin que le classeur soit enregistré.
+ *
+ * @version 1.0
+ */
+public class HomePageWindowListener extends WindowAdapter {
+
+    private final HomePage homePage;
+
+    /**
+     * Constructeur pour HomePageWindowListener.
+     *
+     * @param homePage La fenêtre principale.
+     */
+    public HomePageWindowListener(HomePage homePage) {
+        this.homePage = homePage;
+    }
+
+    /**
+     * Gère la demande de fermeture de la fenêtre.
+     *
+     * @param e L'événement de fenêtre qui a déclenché cette méthode.
+     */
+    @Override
+    public void windowClosing(WindowEvent e) {
+        homePage.close();
+    }
+}
@@ -1,7 +1,8 @@
 /**
  * IncalculableFormulaException est une exception personnalisée qui indique qu'une formule dans le tableur ne peut pas
  * être calculée.
- * Cette exception peut être levée en cas d'erreurs dans la formule ou de problèmes lors de l'évaluation de celle-ci.
+ * L'évaluation ne la lève pas : elle produit une valeur d'erreur (voir {@link CellError}), que
+ * {@link Sheet#getError(long)} décrit par cette exception.
  *
  * @version 1.0
  */
@@ -0,0 +1,181 @@
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * LongHashSet est un ensemble d'entiers longs primitifs à adressage ouvert, utilisé pour les ensembles
+ * d'adresses de cellules. Il suit la même organisation que {@link LongObjectHashMap}.
+ *
+ * @version 1.0
+ */
+public class LongHashSet {
+
+    // Ensemble vide partagé, à ne jamais modifier.
+    static final LongHashSet EMPTY = new LongHashSet();
+
+    private static final int MINIMUM_CAPACITY = 4;
+
+    private long[] keys;
+    private boolean[] used;
+    private int size;
+
+    /**
+     * Construit un ensemble vide.
+     */
+    public LongHashSet() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Construit un ensemble vide pouvant recevoir le nombre d'éléments spécifié sans être agrandi.
+     *
+     * @param expectedSize Le nombre d'éléments attendu.
+     */
+    public LongHashSet(int expectedSize) {
+        allocate(LongHashing.capacityFor(expectedSize, MINIMUM_CAPACITY));
+    }
+
+    /**
+     * Construit un ensemble contenant les mêmes éléments qu'un autre.
+     *
+     * @param other L'ensemble à copier.
+     */
+    public LongHashSet(LongHashSet other) {
+        this.keys = other.keys.clone();
+        this.used = other.used.clone();
+        this.size = other.size;
+    }
+
+    public boolean contains(long key) {
+        int mask = keys.length - 1;
+        for (int slot = LongHashing.hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Ajoute un élément à l'ensemble.
+     *
+     * @param key L'élément à ajouter.
+     * @return Vrai si l'élément était absent, faux sinon.
+     */
+    public boolean add(long key) {
+        int mask = keys.length - 1;
+        int slot = LongHashing.hash(key) & mask;
+        for (; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return false;
+            }
+        }
+
+        keys[slot] = key;
+        used[slot] = true;
+        if (++size > LongHashing.maxSize(keys.length)) {
+            resize(keys.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * Retire un élément de l'ensemble.
+     *
+     * @param key L'élément à retirer.
+     * @return Vrai si l'élément était présent, faux sinon.
+     */
+    public boolean remove(long key) {
+        int mask = keys.length - 1;
+        for (int slot = LongHashing.hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                used[slot] = false;
+                size--;
+                shiftEntries(slot);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Vide l'ensemble sans réduire sa capacité.
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Applique une action à chaque élément de l'ensemble, dans un ordre quelconque.
+     * L'ensemble ne doit pas être modifié pendant le parcours.
+     *
+     * @param consumer L'action à appliquer.
+     */
+    public void forEach(LongConsumer consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                consumer.accept(keys[slot]);
+            }
+        }
+    }
+
+    /**
+     * Renvoie les éléments de l'ensemble dans un tableau, dans un ordre quelconque.
+     *
+     * @return Un nouveau tableau contenant les éléments.
+     */
+    public long[] toArray() {
+        long[] result = new long[size];
+        int index = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                result[index++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    private void shiftEntries(int freeSlot) {
+        int mask = keys.length - 1;
+        for (int slot = (freeSlot + 1) & mask; used[slot]; slot = (slot + 1) & mask) {
+            int idealSlot = LongHashing.hash(keys[slot]) & mask;
+            if (((slot - idealSlot) & mask) >= ((slot - freeSlot) & mask)) {
+                keys[freeSlot] = keys[slot];
+                used[freeSlot] = true;
+                used[slot] = false;
+                freeSlot = slot;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldUsed[oldSlot]) {
+                int slot = LongHashing.hash(oldKeys[oldSlot]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[oldSlot];
+                used[slot] = true;
+            }
+        }
+    }
+}
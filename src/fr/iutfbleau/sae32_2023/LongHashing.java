@@ -0,0 +1,49 @@
+/**
+ * LongHashing regroupe les calculs communs aux tables de hachage à clés longues primitives : brassage des clés
+ * et dimensionnement des tables, dont la capacité est toujours une puissance de deux.
+ *
+ * @version 1.0
+ */
+final class LongHashing {
+
+    private LongHashing() {
+    }
+
+    /**
+     * Brasse les bits d'une clé pour que des adresses de cellules voisines ne tombent pas dans des emplacements
+     * voisins de la table.
+     *
+     * @param key La clé.
+     * @return Le code de hachage de la clé.
+     */
+    static int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+
+    /**
+     * Calcule la capacité nécessaire pour recevoir un nombre d'entrées sans dépasser le taux de remplissage.
+     *
+     * @param expectedSize    Le nombre d'entrées attendu.
+     * @param minimumCapacity La capacité minimale.
+     * @return Une puissance de deux.
+     */
+    static int capacityFor(int expectedSize, int minimumCapacity) {
+        int capacity = minimumCapacity;
+        while (maxSize(capacity) < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Renvoie le nombre d'entrées au-delà duquel une table de la capacité spécifiée doit être agrandie
+     * (taux de remplissage de 3/4).
+     *
+     * @param capacity La capacité de la table.
+     * @return Le nombre maximal d'entrées.
+     */
+    static int maxSize(int capacity) {
+        return capacity - (capacity >>> 2);
+    }
+}
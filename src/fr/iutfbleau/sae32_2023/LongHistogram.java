@@ -0,0 +1,100 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LongHistogram compte des mesures entières positives (tailles, durées) dans des classes de largeur croissante :
+ * la classe 0 reçoit la valeur 0, et la classe k les valeurs de 2^(k-1) à 2^k - 1. Il garde aussi le nombre, la
+ * somme et le maximum des mesures.
+ * L'enregistrement d'une mesure ne prend aucun verrou et peut se faire depuis plusieurs fils d'exécution.
+ *
+ * @version 1.0
+ */
+public class LongHistogram {
+
+    // Une classe pour 0, puis une par puissance de deux.
+    static final int BUCKETS_COUNT = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Enregistre une mesure. Les valeurs négatives sont comptées comme nulles.
+     *
+     * @param value La mesure.
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        buckets.incrementAndGet(Math.min(BUCKETS_COUNT - 1, Long.SIZE - Long.numberOfLeadingZeros(value)));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getSum() {
+        return sum.sum();
+    }
+
+    public long getMax() {
+        return max.get();
+    }
+
+    public double getMean() {
+        long measures = count.sum();
+        return measures == 0 ? 0 : (double) sum.sum() / measures;
+    }
+
+    /**
+     * Renvoie une estimation par excès d'un quantile : la borne supérieure de la classe qui le contient.
+     *
+     * @param quantile Le quantile, entre 0 et 1 (par exemple 0.99).
+     * @return La borne supérieure de la classe du quantile, ou 0 s'il n'y a aucune mesure.
+     */
+    public long getQuantile(double quantile) {
+        long[] counts = getBuckets();
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank && counts[bucket] > 0) {
+                return bucket == 0 ? 0 : (1L << bucket) - 1;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Renvoie le nombre de mesures de chaque classe.
+     *
+     * @return Un nouveau tableau de {@link #BUCKETS_COUNT} compteurs.
+     */
+    public long[] getBuckets() {
+        long[] counts = new long[BUCKETS_COUNT];
+        for (int bucket = 0; bucket < BUCKETS_COUNT; bucket++) {
+            counts[bucket] = buckets.get(bucket);
+        }
+        return counts;
+    }
+
+    /**
+     * Remet l'histogramme à zéro. Les mesures enregistrées pendant la remise à zéro peuvent être perdues.
+     */
+    public void reset() {
+        for (int bucket = 0; bucket < BUCKETS_COUNT; bucket++) {
+            buckets.set(bucket, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+}
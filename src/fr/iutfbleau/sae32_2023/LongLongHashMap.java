@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * LongLongHashMap est une table de hachage à adressage ouvert associant des entiers longs primitifs à des clés
+ * longues primitives, par exemple un rang dans l'ordre topologique à une adresse de cellule. Elle suit la même
+ * organisation que {@link LongObjectHashMap}.
+ *
+ * @version 1.0
+ */
+public class LongLongHashMap {
+
+    private static final int MINIMUM_CAPACITY = 8;
+
+    private long[] keys;
+    private long[] values;
+    private boolean[] used;
+    private int size;
+
+    /**
+     * Construit une table vide.
+     */
+    public LongLongHashMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Construit une table vide pouvant recevoir le nombre d'entrées spécifié sans être agrandie.
+     *
+     * @param expectedSize Le nombre d'entrées attendu.
+     */
+    public LongLongHashMap(int expectedSize) {
+        allocate(LongHashing.capacityFor(expectedSize, MINIMUM_CAPACITY));
+    }
+
+    /**
+     * Renvoie la valeur associée à une clé.
+     *
+     * @param key          La clé recherchée.
+     * @param defaultValue La valeur renvoyée si la clé est absente.
+     * @return La valeur associée, ou la valeur par défaut si la clé est absente.
+     */
+    public long get(long key, long defaultValue) {
+        int slot = find(key);
+        return slot < 0 ? defaultValue : values[slot];
+    }
+
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+
+    /**
+     * Associe une valeur à une clé.
+     *
+     * @param key   La clé.
+     * @param value La valeur.
+     */
+    public void put(long key, long value) {
+        int mask = keys.length - 1;
+        int slot = LongHashing.hash(key) & mask;
+        for (; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                values[slot] = value;
+                return;
+            }
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        if (++size > LongHashing.maxSize(keys.length)) {
+            resize(keys.length << 1);
+        }
+    }
+
+    /**
+     * Retire une clé de la table.
+     *
+     * @param key La clé à retirer.
+     * @return Vrai si la clé était présente, faux sinon.
+     */
+    public boolean remove(long key) {
+        int slot = find(key);
+        if (slot < 0) {
+            return false;
+        }
+        used[slot] = false;
+        size--;
+        shiftEntries(slot);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Vide la table sans réduire sa capacité.
+     */
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    /**
+     * Renvoie les clés de la table dans un tableau, dans un ordre quelconque.
+     *
+     * @return Un nouveau tableau contenant les clés.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int index = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                result[index++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    private int find(long key) {
+        int mask = keys.length - 1;
+        for (int slot = LongHashing.hash(key) & mask; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void shiftEntries(int freeSlot) {
+        int mask = keys.length - 1;
+        for (int slot = (freeSlot + 1) & mask; used[slot]; slot = (slot + 1) & mask) {
+            int idealSlot = LongHashing.hash(keys[slot]) & mask;
+            if (((slot - idealSlot) & mask) >= ((slot - freeSlot) & mask)) {
+                keys[freeSlot] = keys[slot];
+                values[freeSlot] = values[slot];
+                used[freeSlot] = true;
+                used[slot] = false;
+                freeSlot = slot;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new long[capacity];
+        used = new boolean[capacity];
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldUsed[oldSlot]) {
+                int slot = LongHashing.hash(oldKeys[oldSlot]) & mask;
+                while (used[slot]) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[oldSlot];
+                values[slot] = oldValues[oldSlot];
+                used[slot] = true;
+            }
+        }
+    }
+}
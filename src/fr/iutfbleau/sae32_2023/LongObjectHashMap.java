@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * LongObjectHashMap est une table de hachage à adressage ouvert dont les clés sont des entiers longs primitifs.
+ * Elle sert à ranger les cellules d'une feuille par adresse : seules les cellules non vides y occupent de la place,
+ * sans objet intermédiaire par entrée comme dans une HashMap.
+ * Les collisions sont résolues par sondage linéaire et les suppressions décalent les entrées suivantes, si bien
+ * que la table ne contient jamais de marqueur de suppression. Les valeurs nulles ne sont pas acceptées.
+ *
+ * @param <V> Le type des valeurs.
+ * @version 1.0
+ */
+public class LongObjectHashMap<V> {
+
+    /**
+     * Action appliquée à chaque entrée de la table par {@link #forEach(EntryConsumer)}.
+     *
+     * @param <V> Le type des valeurs.
+     */
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    private static final int MINIMUM_CAPACITY = 8;
+
+    private long[] keys;
+    private Object[] values;
+    private int size;
+
+    /**
+     * Construit une table vide.
+     */
+    public LongObjectHashMap() {
+        this(MINIMUM_CAPACITY);
+    }
+
+    /**
+     * Construit une table vide pouvant recevoir le nombre d'entrées spécifié sans être agrandie.
+     *
+     * @param expectedSize Le nombre d'entrées attendu.
+     */
+    public LongObjectHashMap(int expectedSize) {
+        allocate(LongHashing.capacityFor(expectedSize, MINIMUM_CAPACITY));
+    }
+
+    /**
+     * Renvoie la valeur associée à une clé.
+     *
+     * @param key La clé recherchée.
+     * @return La valeur associée, ou null si la clé est absente.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int mask = keys.length - 1;
+        for (int slot = LongHashing.hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                return (V) values[slot];
+            }
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Associe une valeur à une clé.
+     *
+     * @param key   La clé.
+     * @param value La valeur, non nulle.
+     * @return L'ancienne valeur associée à la clé, ou null si la clé était absente.
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value);
+        int mask = keys.length - 1;
+        int slot = LongHashing.hash(key) & mask;
+        for (; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > LongHashing.maxSize(keys.length)) {
+            resize(keys.length << 1);
+        }
+        return null;
+    }
+
+    /**
+     * Retire une clé de la table.
+     *
+     * @param key La clé à retirer.
+     * @return La valeur qui était associée à la clé, ou null si la clé était absente.
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int mask = keys.length - 1;
+        for (int slot = LongHashing.hash(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = null;
+                size--;
+                shiftEntries(slot);
+                return previous;
+            }
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Vide la table sans réduire sa capacité.
+     */
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * Applique une action à chaque entrée de la table, dans un ordre quelconque.
+     * La table ne doit pas être modifiée pendant le parcours.
+     *
+     * @param consumer L'action à appliquer.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(EntryConsumer<? super V> consumer) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != null) {
+                consumer.accept(keys[slot], (V) values[slot]);
+            }
+        }
+    }
+
+    /**
+     * Renvoie les clés de la table dans un tableau, dans un ordre quelconque.
+     *
+     * @return Un nouveau tableau contenant les clés.
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int index = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (values[slot] != null) {
+                result[index++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Comble le trou laissé par une suppression en ramenant les entrées suivantes qui ont été déplacées par
+     * sondage linéaire au-delà de ce trou.
+     *
+     * @param freeSlot L'emplacement libéré.
+     */
+    private void shiftEntries(int freeSlot) {
+        int mask = keys.length - 1;
+        for (int slot = (freeSlot + 1) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+            int idealSlot = LongHashing.hash(keys[slot]) & mask;
+            if (((slot - idealSlot) & mask) >= ((slot - freeSlot) & mask)) {
+                keys[freeSlot] = keys[slot];
+                values[freeSlot] = values[slot];
+                values[slot] = null;
+                freeSlot = slot;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int oldSlot = 0; oldSlot < oldKeys.length; oldSlot++) {
+            if (oldValues[oldSlot] != null) {
+                int slot = LongHashing.hash(oldKeys[oldSlot]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[oldSlot];
+                values[slot] = oldValues[oldSlot];
+            }
+        }
+    }
+}
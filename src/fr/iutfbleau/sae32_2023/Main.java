@@ -1,3 +1,8 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
 /**
  * Main est la classe par défaut pour notre "Petit Tableur".
  * Elle contient la méthode main, qui est le point d'entrée de l'application.
@@ -9,8 +14,24 @@ public class Main {
     /**
      * Le point d'entrée principal de l'application.
      * Cette méthode crée et affiche la fenêtre principale de l'application, démarrant ainsi l'interface utilisateur.
+     * Le chemin d'un fichier de classeur peut être passé en argument : le classeur y est lu s'il existe, et y est
+     * enregistré à la fermeture.
      */
     public static void main(String[] args) {
-        new HomePage().setVisible(true);
+        Path file = args.length > 0 ? Paths.get(args[0]) : null;
+        Workbook workbook;
+        if (file != null && Files.exists(file)) {
+            try {
+                workbook = WorkbookFile.load(file);
+            } catch (IOException exception) {
+                System.err.println("Impossible d'ouvrir " + file + " : " + exception.getMessage());
+                System.exit(1);
+                return;
+            }
+        } else {
+            workbook = new Workbook();
+            workbook.createSheet("Feuille1");
+        }
+        new HomePage(workbook, file).setVisible(true);
     }
 }
@@ -0,0 +1,32 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+/**
+ * Classe NewSheetButtonListener implémente l'interface ActionListener.
+ * Elle écoute le bouton « Nouvelle feuille » et ajoute une feuille vide au classeur de la HomePage.
+ *
+ * @version 1.0
+ */
+public class NewSheetButtonListener implements ActionListener {
+
+    private final HomePage homePage;
+
+    /**
+     * Constructeur pour NewSheetButtonListener.
+     *
+     * @param homePage La HomePage dont le classeur reçoit la nouvelle feuille.
+     */
+    public NewSheetButtonListener(HomePage homePage) {
+        this.homePage = homePage;
+    }
+
+    /**
+     * Méthode appelée lors d'un clic sur le bouton : la feuille est créée et ouverte dans un nouvel onglet.
+     *
+     * @param e L'événement d'action qui contient les informations sur l'événement déclenché.
+     */
+    @Override
+    public void actionPerformed(ActionEvent e) {
+        homePage.addSheet();
+    }
+}
@@ -1,25 +1,66 @@
-import java.util.HashSet;
-
 /**
  * Node est une classe abstraite représentant un nœud dans un arbre de syntaxe abstraite (AST).
- * Les nœuds de cet arbre sont utilisés pour évaluer des expressions ou des formules dans le contexte de l'application.
+ * Les nœuds de cet arbre décrivent la structure d'une formule ; ils sont compilés en un {@link FormulaProgram}
+ * qui sert ensuite à évaluer la formule.
  *
  * @version 1.0
  */
 
 public abstract class Node {
 
+    // Empreinte structurelle du nœud, calculée une fois pour toutes à partir de celles de ses enfants.
+    private final int hash;
+
+    /**
+     * Constructeur de Node.
+     *
+     * @param hash L'empreinte structurelle du nœud.
+     */
+    Node(int hash) {
+        this.hash = hash;
+    }
+
+    /**
+     * Ajoute au compilateur les instructions qui calculent la valeur du nœud, en notation postfixée.
+     * Cette méthode est abstraite et doit être implémentée par des sous-classes pour gérer la compilation
+     * spécifique des différents types de nœuds (par exemple, les nœuds représentant des opérateurs, des nombres,
+     * ou des références de cellules).
+     *
+     * @param compiler Le compilateur qui reçoit les instructions.
+     * @throws IncorrectFormulaException Si la formule est incorrecte.
+     */
+    public abstract void compile(FormulaCompiler compiler) throws IncorrectFormulaException;
+
+    /**
+     * Écrit la forme canonique du nœud : notation préfixée, références relatives en notation R1C1.
+     *
+     * @param builder Le tampon qui reçoit la forme canonique.
+     */
+    abstract void appendCanonicalForm(StringBuilder builder);
+
+    /**
+     * Écrit le nœud tel qu'il s'écrirait dans une cellule donnée : notation préfixée, références en notation A1.
+     *
+     * @param builder   Le tampon qui reçoit la formule.
+     * @param originRow La ligne de la cellule qui contient la formule.
+     * @param originCol La colonne de la cellule qui contient la formule.
+     */
+    abstract void appendFormula(StringBuilder builder, int originRow, int originCol);
+
+    @Override
+    public final int hashCode() {
+        return hash;
+    }
+
     /**
-     * Évalue la valeur du nœud dans le contexte de l'arbre de syntaxe abstraite.
-     * Cette méthode est abstraite et doit être implémentée par des sous-classes pour gérer l'évaluation spécifique
-     * des différents types de nœuds (par exemple, les nœuds représentant des opérateurs, des nombres, ou des
-     * références de cellules).
+     * Renvoie la forme canonique du nœud, par exemple {@code + R[-1]C 1}.
      *
-     * @param visited Un ensemble de références de cellules déjà visitées. Cela est utilisé pour détecter des
-     *                références circulaires.
-     * @return Le résultat de l'évaluation du nœud.
-     * @throws IncalculableFormulaException Si la formule ne peut pas être calculée.
-     * @throws IncorrectFormulaException    Si la formule est incorrecte.
+     * @return La forme canonique.
      */
-    public abstract double evaluate(HashSet<String> visited) throws IncalculableFormulaException, IncorrectFormulaException;
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendCanonicalForm(builder);
+        return builder.toString();
+    }
 }
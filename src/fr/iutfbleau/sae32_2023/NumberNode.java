@@ -1,13 +1,11 @@
-import java.util.HashSet;
-
 /**
  * NumberNode est une sous-classe concrète de Node qui représente un nombre dans un arbre de syntaxe abstraite (AST).
- * Ce type de nœud est utilisé pour stocker et évaluer des valeurs numériques dans le contexte de l'AST.
+ * Ce type de nœud est utilisé pour stocker des valeurs numériques dans le contexte de l'AST.
  *
  * @version 1.0
  */
 public class NumberNode extends Node {
-    double value;
+    final double value;
 
     /**
      * Constructeur pour NumberNode.
@@ -16,19 +14,47 @@ public class NumberNode extends Node {
      * @param value La valeur numérique que ce nœud représente.
      */
     NumberNode(double value) {
+        super(Double.hashCode(value));
         this.value = value;
     }
 
     /**
-     * Évalue ce nœud et retourne sa valeur numérique.
-     * Dans le cas de NumberNode, cette méthode retourne simplement la valeur numérique stockée,
-     * car il n'y a pas de calcul supplémentaire nécessaire.
+     * Compile ce nœud en une instruction qui empile sa valeur numérique.
      *
-     * @param visited Un ensemble de références de cellules déjà visitées. Non utilisé dans cette implémentation.
-     * @return La valeur numérique de ce nœud.
+     * @param compiler Le compilateur qui reçoit les instructions.
      */
     @Override
-    public double evaluate(HashSet<String> visited) {
-        return value;
+    public void compile(FormulaCompiler compiler) {
+        compiler.pushConstant(value);
+    }
+
+    @Override
+    void appendCanonicalForm(StringBuilder builder) {
+        builder.append(format(value));
+    }
+
+    @Override
+    void appendFormula(StringBuilder builder, int originRow, int originCol) {
+        builder.append(format(value));
+    }
+
+    /**
+     * Écrit un nombre sous sa forme canonique : sans partie décimale s'il est entier, par exemple {@code 3}.
+     *
+     * @param value Le nombre.
+     * @return La forme canonique du nombre.
+     */
+    static String format(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15 && Double.doubleToRawLongBits(value) != Double.doubleToRawLongBits(-0.0)) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        // Deux nombres sont égaux s'ils ont la même représentation : 0 et -0 restent distincts.
+        return other instanceof NumberNode
+                && Double.doubleToLongBits(value) == Double.doubleToLongBits(((NumberNode) other).value);
     }
 }
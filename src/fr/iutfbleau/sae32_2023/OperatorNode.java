@@ -1,17 +1,17 @@
-import java.util.HashSet;
-
 /**
  * OperatorNode est une sous-classe de Node qui représente un opérateur arithmétique dans un arbre de
  * syntaxe abstraite (AST).
- * Elle contient des références à des nœuds gauche et droit et applique un opérateur arithmétique à leurs évaluations.
+ * Elle contient des références à des nœuds gauche et droit et applique un opérateur arithmétique à leurs valeurs.
+ * Les nœuds enfants étant partagés (voir {@link FormulaInterner}), deux opérateurs sont égaux s'ils combinent
+ * les mêmes nœuds par le même opérateur.
  *
  * @version 1.0
  */
 
 public class OperatorNode extends Node {
-    char operator;
-    Node left;
-    Node right;
+    final char operator;
+    final Node left;
+    final Node right;
 
     /**
      * Constructeur pour OperatorNode.
@@ -22,41 +22,49 @@ public class OperatorNode extends Node {
      * @param right    Le nœud enfant droit.
      */
     OperatorNode(char operator, Node left, Node right) {
+        super(31 * (31 * operator + left.hashCode()) + right.hashCode());
         this.operator = operator;
         this.left = left;
         this.right = right;
     }
 
     /**
-     * Évalue l'opération arithmétique représentée par ce nœud.
-     * Utilise l'opérateur stocké dans ce nœud pour appliquer une opération arithmétique aux résultats évalués
-     * des nœuds enfants gauche et droit. Cette méthode gère également les cas spéciaux tels que la division par zéro.
+     * Compile l'opération arithmétique représentée par ce nœud : les instructions du nœud gauche, puis celles du
+     * nœud droit, puis l'opérateur qui combine leurs deux valeurs. La division par zéro est détectée lors de
+     * l'évaluation du programme.
      *
-     * @param visited Un ensemble de références de cellules déjà visitées, utilisé pour détecter les références
-     *                circulaires.
-     * @return Le résultat de l'opération arithmétique.
-     * @throws IncalculableFormulaException Si une opération ne peut pas être calculée (comme une division par zéro).
-     * @throws IncorrectFormulaException    Si un opérateur inconnu est utilisé.
+     * @param compiler Le compilateur qui reçoit les instructions.
+     * @throws IncorrectFormulaException Si un opérateur inconnu est utilisé.
      */
     @Override
-    public double evaluate(HashSet<String> visited) throws IncalculableFormulaException, IncorrectFormulaException {
-        switch (operator) {
-            case '+':
-                return left.evaluate(visited) + right.evaluate(visited);
-            case '-':
-                return left.evaluate(visited) - right.evaluate(visited);
-            case '*':
-                return left.evaluate(visited) * right.evaluate(visited);
-            case '/':
-                double leftResult = left.evaluate(visited);
-                double rightResult = right.evaluate(visited);
-                if (rightResult == 0) {
-                    throw new IncalculableFormulaException("Formule incalculable : division par 0.");
-                }
-                return leftResult / rightResult;
+    public void compile(FormulaCompiler compiler) throws IncorrectFormulaException {
+        left.compile(compiler);
+        right.compile(compiler);
+        compiler.operator(operator);
+    }
+
+    @Override
+    void appendCanonicalForm(StringBuilder builder) {
+        builder.append(operator).append(' ');
+        left.appendCanonicalForm(builder);
+        builder.append(' ');
+        right.appendCanonicalForm(builder);
+    }
 
-            default:
-                throw new IncorrectFormulaException("Formule incorrecte : opérateur inconnu.");
+    @Override
+    void appendFormula(StringBuilder builder, int originRow, int originCol) {
+        builder.append(operator).append(' ');
+        left.appendFormula(builder, originRow, originCol);
+        builder.append(' ');
+        right.appendFormula(builder, originRow, originCol);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof OperatorNode)) {
+            return false;
         }
+        OperatorNode operatorNode = (OperatorNode) other;
+        return operator == operatorNode.operator && left == operatorNode.left && right == operatorNode.right;
     }
 }
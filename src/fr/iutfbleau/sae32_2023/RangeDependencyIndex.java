@@ -0,0 +1,121 @@
+import java.util.function.LongConsumer;
+
+/**
+ * RangeDependencyIndex retrouve les formules qui lisent une cellule à travers une plage, sans mémoriser un lien
+ * par cellule couverte.
+ * Chaque colonne d'une plage est découpée, comme dans un arbre de segments couvrant toutes les lignes de la
+ * feuille, en au plus deux intervalles par niveau de l'arbre : une plage n'occupe donc que quelques dizaines
+ * d'entrées par colonne, quelle que soit sa hauteur. Les nœuds de l'arbre ne sont pas alloués : seuls ceux qui
+ * portent au moins une plage figurent dans une table de hachage, sous une clé qui combine la colonne et le
+ * numéro du nœud.
+ * Les formules qui lisent une cellule sont celles rangées dans les nœuds qui couvrent sa ligne, de la feuille à
+ * la racine, soit une recherche par niveau de l'arbre.
+ *
+ * @version 1.0
+ */
+public class RangeDependencyIndex {
+
+    // Nombre de bits du numéro d'un nœud : l'arbre a une feuille par ligne de la feuille de calcul, et la
+    // feuille de la ligne r est le nœud MAX_ROWS + r.
+    private static final int NODE_BITS = Integer.numberOfTrailingZeros(CellOperations.MAX_ROWS) + 1;
+
+    // Formules rangées dans chaque nœud portant au moins une plage, par colonne et numéro de nœud.
+    private final LongObjectHashMap<LongHashSet> nodes = new LongObjectHashMap<>();
+
+    // Nombre de plages qui couvrent chaque colonne, alloué à la première plage : les colonnes sans plage ne
+    // coûtent aucune recherche.
+    private int[] rangesPerColumn;
+
+    /**
+     * Ajoute une plage lue par une formule.
+     *
+     * @param dependentCell L'adresse de la cellule dont la formule lit la plage.
+     * @param firstRow      La première ligne de la plage.
+     * @param firstCol      La première colonne de la plage.
+     * @param lastRow       La dernière ligne de la plage, incluse.
+     * @param lastCol       La dernière colonne de la plage, incluse.
+     */
+    public void add(long dependentCell, int firstRow, int firstCol, int lastRow, int lastCol) {
+        if (rangesPerColumn == null) {
+            rangesPerColumn = new int[CellOperations.MAX_COLUMNS];
+        }
+        for (int col = firstCol; col <= lastCol; col++) {
+            rangesPerColumn[col]++;
+            for (int left = CellOperations.MAX_ROWS + firstRow, right = CellOperations.MAX_ROWS + lastRow + 1; left < right; left >>= 1, right >>= 1) {
+                if ((left & 1) == 1) {
+                    addToNode(getKey(col, left++), dependentCell);
+                }
+                if ((right & 1) == 1) {
+                    addToNode(getKey(col, --right), dependentCell);
+                }
+            }
+        }
+    }
+
+    /**
+     * Retire une plage ajoutée par {@link #add(long, int, int, int, int)}. Deux plages d'une même formule
+     * pouvant partager un nœud, toutes les plages d'une formule doivent être retirées ensemble.
+     *
+     * @param dependentCell L'adresse de la cellule dont la formule lisait la plage.
+     * @param firstRow      La première ligne de la plage.
+     * @param firstCol      La première colonne de la plage.
+     * @param lastRow       La dernière ligne de la plage, incluse.
+     * @param lastCol       La dernière colonne de la plage, incluse.
+     */
+    public void remove(long dependentCell, int firstRow, int firstCol, int lastRow, int lastCol) {
+        for (int col = firstCol; col <= lastCol; col++) {
+            rangesPerColumn[col]--;
+            for (int left = CellOperations.MAX_ROWS + firstRow, right = CellOperations.MAX_ROWS + lastRow + 1; left < right; left >>= 1, right >>= 1) {
+                if ((left & 1) == 1) {
+                    removeFromNode(getKey(col, left++), dependentCell);
+                }
+                if ((right & 1) == 1) {
+                    removeFromNode(getKey(col, --right), dependentCell);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applique une action à chaque formule qui lit la cellule spécifiée à travers une plage. Une formule dont
+     * plusieurs plages contiennent la cellule peut être visitée plusieurs fois.
+     *
+     * @param address  L'adresse de la cellule.
+     * @param consumer L'action à appliquer à l'adresse de chaque formule.
+     */
+    public void forEachDependent(long address, LongConsumer consumer) {
+        int col = CellOperations.getColFromAddress(address);
+        if (rangesPerColumn == null || rangesPerColumn[col] == 0) {
+            return;
+        }
+        for (int node = CellOperations.MAX_ROWS + CellOperations.getRowFromAddress(address); node > 0; node >>= 1) {
+            LongHashSet dependentCells = nodes.get(getKey(col, node));
+            if (dependentCells != null) {
+                dependentCells.forEach(consumer);
+            }
+        }
+    }
+
+    private void addToNode(long key, long dependentCell) {
+        LongHashSet dependentCells = nodes.get(key);
+        if (dependentCells == null) {
+            dependentCells = new LongHashSet();
+            nodes.put(key, dependentCells);
+        }
+        dependentCells.add(dependentCell);
+    }
+
+    private void removeFromNode(long key, long dependentCell) {
+        LongHashSet dependentCells = nodes.get(key);
+        if (dependentCells != null) {
+            dependentCells.remove(dependentCell);
+            if (dependentCells.isEmpty()) {
+                nodes.remove(key);
+            }
+        }
+    }
+
+    private static long getKey(int col, int node) {
+        return ((long) col << NODE_BITS) | node;
+    }
+}
@@ -0,0 +1,37 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * RecalculationEvent est l'événement JFR (JDK Flight Recorder) émis pour chaque passe de recalcul.
+ * Il n'est créé que si JFR est démarré, et tant qu'il n'est pas activé dans un enregistrement, son coût se
+ * limite à la création d'un objet par passe.
+ *
+ * @version 1.0
+ */
+@Name(CalculationMetrics.DOMAIN + ".Recalculation")
+@Label("Recalcul")
+@Category({"Petit Tableur", "Calcul"})
+@Description("Passe de recalcul des cellules touchées par une ou plusieurs modifications")
+class RecalculationEvent extends Event {
+
+    @Label("Cellules modifiées")
+    int modifiedCells;
+
+    @Label("Cellules évaluées")
+    int evaluatedCells;
+
+    @Label("Cellules circulaires")
+    int circularCells;
+
+    @Label("Niveaux")
+    int levels;
+
+    @Label("Niveaux parallèles")
+    int parallelLevels;
+
+    @Label("Interrompu")
+    boolean cancelled;
+}
@@ -0,0 +1,35 @@
+/**
+ * RecalculationResult décrit le résultat d'une passe de recalcul : les cellules évaluées, dans l'ordre où elles
+ * l'ont été, et les cellules qui n'ont pas pu être ordonnées parce qu'elles appartiennent à une référence
+ * circulaire ou en dépendent. Les cellules sont désignées par leur adresse compacte.
+ *
+ * @version 1.0
+ */
+public class RecalculationResult {
+
+    private final long[] evaluatedCells;
+    private final long[] circularCells;
+
+    /**
+     * Constructeur de RecalculationResult.
+     *
+     * @param evaluatedCells Les adresses des cellules évaluées, dans l'ordre topologique.
+     * @param circularCells  Les adresses des cellules prises dans une référence circulaire.
+     */
+    public RecalculationResult(long[] evaluatedCells, long[] circularCells) {
+        this.evaluatedCells = evaluatedCells;
+        this.circularCells = circularCells;
+    }
+
+    public long[] getEvaluatedCells() {
+        return this.evaluatedCells;
+    }
+
+    public long[] getCircularCells() {
+        return this.circularCells;
+    }
+
+    public boolean hasCircularReference() {
+        return this.circularCells.length > 0;
+    }
+}
@@ -0,0 +1,565 @@
+import jdk.jfr.FlightRecorder;
+
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+
+/**
+ * Recalculator recalcule les cellules touchées par la modification d'une cellule.
+ * Il rassemble toutes les cellules qui en dépendent, directement ou non, les ordonne de façon à ce qu'une
+ * cellule soit toujours calculée après les cellules qu'elle lit, puis évalue chacune d'elles une seule fois.
+ * Les structures de travail sont conservées d'une passe à l'autre, si bien qu'un recalcul n'alloue rien par
+ * cellule. Un Recalculator ne doit donc être utilisé que par un seul fil d'exécution à la fois.
+ * Les cellules sont évaluées niveau par niveau : toutes les cellules d'un même niveau ne dépendent que de
+ * cellules des niveaux précédents et peuvent donc être calculées en même temps. Les niveaux d'au moins
+ * {@link #PARALLEL_THRESHOLD} cellules sont répartis entre les fils d'un {@link ForkJoinPool}, les plus petits
+ * restant évalués séquentiellement.
+ * Un recalcul peut être interrompu entre deux niveaux, ou en cours de niveau, lorsqu'il est devenu inutile.
+ * En évaluation paresseuse, une modification ne fait que marquer comme périmées les cellules qui en dépendent
+ * (voir {@link #markStale(long[])}) ; une cellule périmée n'est recalculée, avec ses seuls précédents
+ * périmés, que lorsque sa valeur est demandée (voir {@link #evaluateStale(long[], BooleanSupplier)}).
+ * Chaque passe est mesurée dans un {@link CalculationMetrics} et signalée par un {@link RecalculationEvent}.
+ *
+ * @version 1.0
+ */
+public class Recalculator {
+
+    // Taille minimale d'un niveau pour qu'il soit évalué en parallèle ; une valeur nulle ou négative désactive
+    // le recalcul parallèle.
+    static final int PARALLEL_THRESHOLD = Integer.getInteger("petittableur.parallelThreshold", 4096);
+
+    // Nombre minimal de cellules évaluées par une même tâche parallèle.
+    private static final int MINIMUM_TASK_SIZE = 256;
+
+    // Nombre de cellules évaluées séquentiellement entre deux vérifications d'interruption.
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    private static final BooleanSupplier NEVER_CANCELLED = () -> false;
+
+    private final LongObjectHashMap<AbstractSyntaxTree> abstractSyntaxTrees;
+    private final DependencyGraph dependencyGraph;
+    private final ForkJoinPool pool;
+    private final CalculationMetrics metrics;
+    private final LongPredicate formulaLoader;
+
+    // Cellules à recalculer, dans l'ordre où elles ont été découvertes.
+    private final LongHashSet dirtySet = new LongHashSet();
+    private long[] dirtyCells = new long[64];
+    private int dirtyCount;
+
+    // Cellules dont la valeur est périmée en évaluation paresseuse. Tout dépendant d'une cellule périmée l'est
+    // aussi, si bien que le marquage s'arrête aux cellules déjà périmées.
+    private final LongHashSet staleCells = new LongHashSet();
+
+    // Nombre de précédents de chaque cellule qui restent à calculer dans la passe en cours.
+    private final LongIntHashMap pendingPrecedents = new LongIntHashMap();
+
+    // Cellules prêtes, dans l'ordre où elles sont évaluées.
+    private long[] orderedCells = new long[64];
+    private int orderedCount;
+
+    // Pile de travail partagée par toutes les évaluations séquentielles.
+    private double[] stack = new double[16];
+
+    // Indique si le recalcul en cours doit être interrompu.
+    private BooleanSupplier cancellation = NEVER_CANCELLED;
+
+    // Avancement de la passe en cours, pour les mesures.
+    private int evaluatedCount;
+    private int levelsCount;
+    private int parallelLevelsCount;
+
+    private final LongConsumer addDependentCell = dependentCell -> {
+        if (dirtySet.add(dependentCell)) {
+            dirtyCells = append(dirtyCells, dirtyCount++, dependentCell);
+        }
+    };
+
+    private final LongConsumer addFreshDependentCell = dependentCell -> {
+        if (!staleCells.contains(dependentCell)) {
+            addDependentCell.accept(dependentCell);
+        }
+    };
+
+    private final LongConsumer addStalePrecedentCell = precedentCell -> {
+        if (isStale(precedentCell)) {
+            addDependentCell.accept(precedentCell);
+        }
+    };
+
+    // Seuls les précédents sales sont comptés : une évaluation à la demande ne recalcule qu'une partie des
+    // cellules périmées, dont les dépendants ne sont pas tous sales.
+    private final LongConsumer countPendingPrecedent = dependentCell -> {
+        if (dirtySet.contains(dependentCell)) {
+            pendingPrecedents.put(dependentCell, pendingPrecedents.get(dependentCell, 0) + 1);
+        }
+    };
+
+    private final LongConsumer releaseDependentCell = dependentCell -> {
+        int count = pendingPrecedents.get(dependentCell, 0);
+        if (count == 1) {
+            pendingPrecedents.remove(dependentCell);
+            orderedCells = append(orderedCells, orderedCount++, dependentCell);
+        } else if (count > 1) {
+            pendingPrecedents.put(dependentCell, count - 1);
+        }
+    };
+
+    /**
+     * Constructeur de Recalculator, qui évalue les grands niveaux sur le pool commun.
+     *
+     * @param abstractSyntaxTrees Les arbres de syntaxe abstraite de la feuille, rangés par adresse de cellule.
+     * @param dependencyGraph     Le graphe des dépendances entre les cellules de la feuille.
+     */
+    public Recalculator(LongObjectHashMap<AbstractSyntaxTree> abstractSyntaxTrees, DependencyGraph dependencyGraph) {
+        this(abstractSyntaxTrees, dependencyGraph, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructeur de Recalculator.
+     *
+     * @param abstractSyntaxTrees Les arbres de syntaxe abstraite de la feuille, rangés par adresse de cellule.
+     * @param dependencyGraph     Le graphe des dépendances entre les cellules de la feuille.
+     * @param pool                Le pool qui évalue les grands niveaux, ou null pour un recalcul séquentiel.
+     */
+    public Recalculator(LongObjectHashMap<AbstractSyntaxTree> abstractSyntaxTrees, DependencyGraph dependencyGraph, ForkJoinPool pool) {
+        this(abstractSyntaxTrees, dependencyGraph, pool, new CalculationMetrics());
+    }
+
+    /**
+     * Constructeur de Recalculator.
+     *
+     * @param abstractSyntaxTrees Les arbres de syntaxe abstraite de la feuille, rangés par adresse de cellule.
+     * @param dependencyGraph     Le graphe des dépendances entre les cellules de la feuille.
+     * @param pool                Le pool qui évalue les grands niveaux, ou null pour un recalcul séquentiel.
+     * @param metrics             Les mesures qui comptent les passes de recalcul.
+     */
+    public Recalculator(LongObjectHashMap<AbstractSyntaxTree> abstractSyntaxTrees, DependencyGraph dependencyGraph,
+                        ForkJoinPool pool, CalculationMetrics metrics) {
+        this(abstractSyntaxTrees, dependencyGraph, pool, metrics, address -> false);
+    }
+
+    /**
+     * Constructeur de Recalculator pour une feuille dont certaines formules n'ont pas encore d'arbre, par exemple
+     * celles d'un fichier de classeur qui ne sont analysées que lorsqu'elles doivent être recalculées.
+     *
+     * @param abstractSyntaxTrees Les arbres de syntaxe abstraite de la feuille, rangés par adresse de cellule.
+     * @param dependencyGraph     Le graphe des dépendances entre les cellules de la feuille.
+     * @param pool                Le pool qui évalue les grands niveaux, ou null pour un recalcul séquentiel.
+     * @param metrics             Les mesures qui comptent les passes de recalcul.
+     * @param formulaLoader       Range dans les arbres de la feuille celui d'une cellule qui n'en a pas encore,
+     *                            et indique si la cellule contient une formule.
+     */
+    public Recalculator(LongObjectHashMap<AbstractSyntaxTree> abstractSyntaxTrees, DependencyGraph dependencyGraph,
+                        ForkJoinPool pool, CalculationMetrics metrics, LongPredicate formulaLoader) {
+        this.abstractSyntaxTrees = abstractSyntaxTrees;
+        this.dependencyGraph = dependencyGraph;
+        this.pool = pool;
+        this.metrics = metrics;
+        this.formulaLoader = formulaLoader;
+    }
+
+    /**
+     * Recalcule la cellule modifiée et toutes les cellules qui en dépendent.
+     * Les cellules sont évaluées dans l'ordre topologique du graphe des dépendances (algorithme de Kahn), un
+     * niveau après l'autre : les cellules libérées par l'évaluation d'un niveau forment le niveau suivant.
+     * Celles qui restent sans ordre à la fin font partie d'une référence circulaire ou en dépendent : elles
+     * ne sont pas évaluées et sont renvoyées dans le résultat.
+     *
+     * @param address L'adresse de la cellule modifiée.
+     * @return Le résultat du recalcul.
+     */
+    public RecalculationResult recalculate(long address) {
+        return recalculate(new long[]{address}, NEVER_CANCELLED);
+    }
+
+    /**
+     * Recalcule en une seule passe plusieurs cellules modifiées et toutes les cellules qui en dépendent, chaque
+     * cellule n'étant évaluée qu'une fois même si elle dépend de plusieurs cellules modifiées.
+     * Le recalcul est interrompu dès que la condition d'interruption devient vraie : les cellules qui n'ont pas
+     * encore été évaluées restent alors sales, et il faut relancer un recalcul des mêmes cellules modifiées.
+     *
+     * @param addresses    Les adresses des cellules modifiées.
+     * @param cancellation La condition d'interruption, consultée régulièrement pendant le recalcul.
+     * @return Le résultat du recalcul.
+     * @throws CancellationException Si le recalcul a été interrompu.
+     */
+    public RecalculationResult recalculate(long[] addresses, BooleanSupplier cancellation) {
+        return run(addresses, cancellation, false);
+    }
+
+    /**
+     * Marque comme périmées, sans rien évaluer, les cellules modifiées qui contiennent une formule et toutes les
+     * cellules qui en dépendent. Le parcours s'arrête aux cellules déjà périmées, dont les dépendants le sont
+     * déjà : le coût d'une modification ne dépend que des cellules qu'elle rend périmées.
+     *
+     * @param addresses Les adresses des cellules modifiées.
+     */
+    public void markStale(long[] addresses) {
+        dirtySet.clear();
+        dirtyCount = 0;
+        for (long address : addresses) {
+            addDependentCell.accept(address);
+        }
+        for (int explored = 0; explored < dirtyCount; explored++) {
+            dependencyGraph.forEachDependent(dirtyCells[explored], addFreshDependentCell);
+        }
+
+        for (int index = 0; index < dirtyCount; index++) {
+            long dirtyCell = dirtyCells[index];
+            if (abstractSyntaxTrees.containsKey(dirtyCell) || formulaLoader.test(dirtyCell)) {
+                abstractSyntaxTrees.get(dirtyCell).markDirty();
+                staleCells.add(dirtyCell);
+            } else {
+                staleCells.remove(dirtyCell);
+            }
+        }
+    }
+
+    /**
+     * Recalcule les cellules périmées parmi celles spécifiées, ainsi que leurs précédents périmés, directement
+     * ou non. Les autres cellules périmées, qui ne sont pas lues par les cellules demandées, restent périmées.
+     * Si le recalcul est interrompu, les cellules déjà évaluées ne sont plus périmées.
+     *
+     * @param addresses    Les adresses des cellules dont la valeur est demandée.
+     * @param cancellation La condition d'interruption, consultée régulièrement pendant le recalcul.
+     * @return Le résultat du recalcul.
+     * @throws CancellationException Si le recalcul a été interrompu.
+     */
+    public RecalculationResult evaluateStale(long[] addresses, BooleanSupplier cancellation) {
+        return run(addresses, cancellation, true);
+    }
+
+    /**
+     * Recalcule toutes les cellules périmées.
+     *
+     * @param cancellation La condition d'interruption, consultée régulièrement pendant le recalcul.
+     * @return Le résultat du recalcul.
+     * @throws CancellationException Si le recalcul a été interrompu.
+     */
+    public RecalculationResult evaluateAllStale(BooleanSupplier cancellation) {
+        return evaluateStale(staleCells.toArray(), cancellation);
+    }
+
+    /**
+     * Indique si la valeur d'une cellule est périmée et doit être recalculée avant d'être lue.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Vrai si la cellule est périmée.
+     */
+    public boolean isStale(long address) {
+        if (!staleCells.contains(address)) {
+            return false;
+        }
+        // Une cellule dont la formule a été remplacée par un nombre depuis son marquage n'est plus à recalculer.
+        if (!abstractSyntaxTrees.containsKey(address)) {
+            staleCells.remove(address);
+            return false;
+        }
+        return true;
+    }
+
+    public boolean hasStaleCells() {
+        return !staleCells.isEmpty();
+    }
+
+    private RecalculationResult run(long[] addresses, BooleanSupplier cancellation, boolean onDemand) {
+        // Le chargement d'une classe d'événement initialise JFR, ce qui prend plusieurs centaines de millisecondes :
+        // l'événement n'est créé que si JFR est déjà démarré.
+        RecalculationEvent event = FlightRecorder.isInitialized() ? new RecalculationEvent() : null;
+        if (event != null) {
+            event.begin();
+        }
+        long start = System.nanoTime();
+        this.cancellation = cancellation;
+        evaluatedCount = 0;
+        levelsCount = 0;
+        parallelLevelsCount = 0;
+
+        RecalculationResult result = null;
+        try {
+            result = onDemand ? recalculateStaleCells(addresses) : recalculateDirtyCells(addresses);
+            metrics.recordRecalculation(evaluatedCount, result.getCircularCells().length, System.nanoTime() - start);
+            return result;
+        } catch (CancellationException exception) {
+            metrics.recordCancelledRecalculation(evaluatedCount);
+            throw exception;
+        } finally {
+            this.cancellation = NEVER_CANCELLED;
+            if (event != null && event.shouldCommit()) {
+                event.modifiedCells = addresses.length;
+                event.evaluatedCells = evaluatedCount;
+                event.circularCells = result == null ? 0 : result.getCircularCells().length;
+                event.levels = levelsCount;
+                event.parallelLevels = parallelLevelsCount;
+                event.cancelled = result == null;
+                event.commit();
+            }
+        }
+    }
+
+    private RecalculationResult recalculateDirtyCells(long[] addresses) {
+        collectDirtyCells(addresses);
+        return evaluateDirtyCells();
+    }
+
+    private RecalculationResult recalculateStaleCells(long[] addresses) {
+        collectStalePrecedents(addresses);
+        try {
+            return evaluateDirtyCells();
+        } finally {
+            // Les cellules évaluées, ou marquées comme circulaires, ne sont plus sales.
+            for (int index = 0; index < dirtyCount; index++) {
+                if (!abstractSyntaxTrees.get(dirtyCells[index]).isDirty()) {
+                    staleCells.remove(dirtyCells[index]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Évalue dans l'ordre topologique les cellules sales rassemblées dans dirtyCells.
+     *
+     * @return Le résultat du recalcul.
+     */
+    private RecalculationResult evaluateDirtyCells() {
+        // Les précédents sales d'une cellule sont comptés en parcourant les dépendants des cellules sales, qui
+        // sont eux-mêmes tous sales, plutôt que tous ses précédents : une cellule qui lit une grande plage ne
+        // coûte ainsi que les cellules modifiées de la plage.
+        pendingPrecedents.clear();
+        orderedCount = 0;
+        for (int index = 0; index < dirtyCount; index++) {
+            dependencyGraph.forEachDependent(dirtyCells[index], countPendingPrecedent);
+        }
+        for (int index = 0; index < dirtyCount; index++) {
+            if (!pendingPrecedents.containsKey(dirtyCells[index])) {
+                orderedCells = append(orderedCells, orderedCount++, dirtyCells[index]);
+            }
+        }
+
+        // orderedCells[levelStart..levelEnd[ forme le niveau en cours.
+        for (int levelStart = 0, levelEnd; levelStart < orderedCount; levelStart = levelEnd) {
+            levelEnd = orderedCount;
+            evaluateLevel(levelStart, levelEnd);
+            evaluatedCount = levelEnd;
+            levelsCount++;
+            checkCancellation();
+            for (int index = levelStart; index < levelEnd; index++) {
+                dependencyGraph.forEachDependent(orderedCells[index], releaseDependentCell);
+            }
+        }
+
+        long[] circularCells = pendingPrecedents.keys();
+        for (long circularCell : circularCells) {
+            abstractSyntaxTrees.get(circularCell).markCircularReference();
+        }
+
+        return new RecalculationResult(Arrays.copyOf(orderedCells, orderedCount), circularCells);
+    }
+
+    /**
+     * Rassemble les cellules modifiées qui contiennent une formule et toutes les cellules qui dépendent des
+     * cellules modifiées, directement ou non, en les marquant comme sales.
+     *
+     * @param addresses Les adresses des cellules modifiées.
+     */
+    private void collectDirtyCells(long[] addresses) {
+        dirtySet.clear();
+        dirtyCount = 0;
+
+        for (long address : addresses) {
+            addDependentCell.accept(address);
+        }
+
+        // Parcours en largeur : dirtyCells[explored..dirtyCount[ reste à explorer.
+        for (int explored = 0; explored < dirtyCount; explored++) {
+            dependencyGraph.forEachDependent(dirtyCells[explored], addDependentCell);
+        }
+
+        // Une cellule modifiée n'est à recalculer que si elle contient une formule, dont l'arbre est construit
+        // maintenant s'il ne l'a pas encore été. Le graphe parcouru reste le même : seule la table qui range les
+        // liens de la cellule change.
+        int kept = 0;
+        for (int index = 0; index < dirtyCount; index++) {
+            long dirtyCell = dirtyCells[index];
+            if (abstractSyntaxTrees.containsKey(dirtyCell) || formulaLoader.test(dirtyCell)) {
+                dirtyCells[kept++] = dirtyCell;
+            } else {
+                dirtySet.remove(dirtyCell);
+            }
+        }
+        dirtyCount = kept;
+
+        for (int index = 0; index < dirtyCount; index++) {
+            abstractSyntaxTrees.get(dirtyCells[index]).markDirty();
+        }
+    }
+
+    /**
+     * Rassemble les cellules périmées demandées et leurs précédents périmés, directement ou non, qui sont déjà
+     * marqués comme sales.
+     *
+     * @param addresses Les adresses des cellules demandées.
+     */
+    private void collectStalePrecedents(long[] addresses) {
+        dirtySet.clear();
+        dirtyCount = 0;
+
+        for (long address : addresses) {
+            addStalePrecedentCell.accept(address);
+        }
+
+        // Parcours en largeur, en remontant les précédents isolés puis les plages.
+        for (int explored = 0; explored < dirtyCount; explored++) {
+            long dirtyCell = dirtyCells[explored];
+            dependencyGraph.getPrecedents(dirtyCell).forEach(addStalePrecedentCell);
+            int[] ranges = abstractSyntaxTrees.get(dirtyCell).getPrecedentRanges();
+            for (int range = 0; range < ranges.length; range += 4) {
+                collectStaleCells(ranges[range], ranges[range + 1], ranges[range + 2], ranges[range + 3]);
+            }
+        }
+    }
+
+    /**
+     * Rassemble les cellules périmées d'une plage, en parcourant la plage ou les cellules périmées selon ce qui
+     * est le plus court.
+     */
+    private void collectStaleCells(int firstRow, int firstCol, int lastRow, int lastCol) {
+        long area = (long) (lastRow - firstRow + 1) * (lastCol - firstCol + 1);
+        if (area <= staleCells.size()) {
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int col = firstCol; col <= lastCol; col++) {
+                    addStalePrecedentCell.accept(CellOperations.getAddress(row, col));
+                }
+            }
+            return;
+        }
+        for (long staleCell : staleCells.toArray()) {
+            int row = CellOperations.getRowFromAddress(staleCell);
+            int col = CellOperations.getColFromAddress(staleCell);
+            if (row >= firstRow && row <= lastRow && col >= firstCol && col <= lastCol) {
+                addStalePrecedentCell.accept(staleCell);
+            }
+        }
+    }
+
+    /**
+     * Évalue les cellules d'un niveau, en parallèle si le niveau est assez grand.
+     *
+     * @param start L'index de la première cellule du niveau dans orderedCells.
+     * @param end   L'index qui suit la dernière cellule du niveau.
+     */
+    private void evaluateLevel(int start, int end) {
+        int size = end - start;
+        if (pool != null && PARALLEL_THRESHOLD > 0 && size >= PARALLEL_THRESHOLD) {
+            int taskSize = Math.max(MINIMUM_TASK_SIZE, size / (4 * pool.getParallelism()));
+            parallelLevelsCount++;
+            pool.invoke(new LevelTask(orderedCells, start, end, taskSize));
+            // Les agrégats par colonne ne sont mis à jour qu'une fois le niveau terminé, par ce seul fil.
+            for (int index = start; index < end; index++) {
+                abstractSyntaxTrees.get(orderedCells[index]).updateAggregates();
+            }
+        } else {
+            for (int index = start; index < end; index++) {
+                if ((index - start) % CANCELLATION_CHECK_INTERVAL == CANCELLATION_CHECK_INTERVAL - 1) {
+                    evaluatedCount = index;
+                    checkCancellation();
+                }
+                stack = evaluate(orderedCells[index], stack, true);
+            }
+        }
+    }
+
+    /**
+     * Interrompt le recalcul si la condition d'interruption est vraie.
+     *
+     * @throws CancellationException Si le recalcul doit être interrompu.
+     */
+    private void checkCancellation() {
+        if (cancellation.getAsBoolean()) {
+            throw new CancellationException("Recalcul interrompu");
+        }
+    }
+
+    /**
+     * Évalue une cellule. Ses erreurs sont des valeurs rangées dans le ValueStore (voir {@link CellError}) et ne
+     * sont donc que comptées ici.
+     *
+     * @param address          L'adresse de la cellule à évaluer.
+     * @param stack            La pile de travail du fil d'exécution courant.
+     * @param updateAggregates Vrai pour reporter aussitôt le résultat dans les agrégats par colonne, ce qui n'est
+     *                         possible que lors d'une évaluation séquentielle.
+     * @return La pile de travail, éventuellement agrandie.
+     */
+    private double[] evaluate(long address, double[] stack, boolean updateAggregates) {
+        AbstractSyntaxTree ast = abstractSyntaxTrees.get(address);
+        if (stack.length < ast.getProgram().getMaxStackDepth()) {
+            stack = new double[ast.getProgram().getMaxStackDepth()];
+        }
+
+        if (ast.evaluate(stack) != CellError.NONE) {
+            metrics.recordEvaluationError();
+        }
+        if (updateAggregates) {
+            ast.updateAggregates();
+        }
+        return stack;
+    }
+
+    /**
+     * LevelTask évalue une tranche d'un niveau, en la coupant en deux tant qu'elle dépasse la taille d'une tâche.
+     * Les cellules d'un niveau écrivent chacune dans leur propre emplacement du ValueStore et ne lisent que des
+     * cellules des niveaux précédents, déjà publiées par la fin de l'invocation précédente.
+     */
+    private final class LevelTask extends RecursiveAction {
+        private final long[] cells;
+        private final int start;
+        private final int end;
+        private final int taskSize;
+
+        LevelTask(long[] cells, int start, int end, int taskSize) {
+            this.cells = cells;
+            this.start = start;
+            this.end = end;
+            this.taskSize = taskSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start <= taskSize) {
+                // Une tranche dont le recalcul a été interrompu n'est pas évaluée ; l'interruption est signalée
+                // à la fin du niveau.
+                if (cancellation.getAsBoolean()) {
+                    return;
+                }
+                double[] taskStack = new double[16];
+                for (int index = start; index < end; index++) {
+                    taskStack = evaluate(cells[index], taskStack, false);
+                }
+                return;
+            }
+            int middle = (start + end) >>> 1;
+            invokeAll(new LevelTask(cells, start, middle, taskSize), new LevelTask(cells, middle, end, taskSize));
+        }
+    }
+
+    /**
+     * Écrit une valeur à un index d'un tableau, en agrandissant le tableau si nécessaire.
+     *
+     * @param array Le tableau.
+     * @param index L'index où écrire.
+     * @param value La valeur.
+     * @return Le tableau, éventuellement agrandi.
+     */
+    private static long[] append(long[] array, int index, long value) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, index * 2);
+        }
+        array[index] = value;
+        return array;
+    }
+}
@@ -0,0 +1,854 @@
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+/**
+ * Sheet est une feuille de calcul indépendante de toute interface graphique : elle garde les formules de ses
+ * cellules, leurs dépendances et leurs valeurs, et recalcule les cellules touchées à chaque modification.
+ * Elle peut être utilisée telle quelle par un programme sans affichage (traitement par lots, serveur, tests de
+ * charge) ; l'interface Swing n'en est qu'une vue (voir {@link TabPage}).
+ * Les cellules sont désignées par leur référence (par exemple B7) ou par leur adresse compacte (voir
+ * {@link CellOperations#getAddress(int, int)}).
+ * Les valeurs des cellules sont rangées dans un {@link ValueStore} ; une cellule qui ne contient qu'un nombre n'a
+ * ni arbre ni lien dans le graphe des dépendances, sa valeur étant rangée directement dans le ValueStore.
+ * Plusieurs formules peuvent être remplacées ensemble, en une transaction suivie d'un seul recalcul (voir
+ * {@link #setFormulas(Map)} et {@link #beginBatch()}).
+ * Une feuille ouverte depuis un fichier de classeur (voir {@link WorkbookFile}) n'analyse ses formules qu'à leur
+ * première utilisation : elles restent jusque-là dans le fichier, projeté en mémoire (voir {@link StoredSheet}).
+ * Une feuille rangée dans un {@link Workbook} peut lire les cellules des autres feuilles du classeur (par exemple
+ * {@code Feuille2!B7}) : elle en garde une copie à leur adresse externe (voir
+ * {@link CellOperations#getExternalAddress(int, long)}), que le classeur met à jour avant de recalculer les
+ * cellules qui la lisent. Une formule qui fermerait une référence circulaire à travers plusieurs feuilles est
+ * refusée comme dans une seule feuille (voir {@link DependencyGraph}).
+ * En évaluation paresseuse (voir {@link #setLazyEvaluation(boolean)}), une modification ne fait que marquer
+ * comme périmées les cellules qui en dépendent : une cellule périmée n'est recalculée que lorsque sa valeur, son
+ * état ou son erreur sont lus, si bien que le coût d'une modification ne dépend plus de la taille de la feuille.
+ * Une feuille n'est pas protégée contre les accès concurrents : elle ne doit être utilisée que par un seul fil
+ * d'exécution à la fois, par exemple celui d'un {@link CalculationEngine}.
+ *
+ * @version 1.0
+ */
+public class Sheet {
+
+    private final String name;
+
+    // Arbres syntaxiques abstraits des formules, rangés par adresse : seules les cellules non vides y figurent.
+    private final LongObjectHashMap<AbstractSyntaxTree> abstractSyntaxTrees = new LongObjectHashMap<>();
+
+    // Valeurs et états calculés des cellules, et valeurs des cellules qui ne contiennent qu'un nombre.
+    private final ValueStore valueStore = new ValueStore();
+
+    // Texte saisi des nombres écrits autrement que sous leur forme canonique (par exemple 3.0 ou 1e3) : les
+    // autres sont réécrits à partir de leur valeur.
+    private final LongObjectHashMap<String> constantFormulas;
+
+    private final CalculationMetrics metrics = new CalculationMetrics();
+
+    // Formules partagées de la feuille : un seul modèle compilé par forme relative de formule.
+    private final FormulaInterner formulaInterner = new FormulaInterner(metrics);
+
+    // Graphe des dépendances entre cellules, tenu à jour à chaque modification de formule.
+    private final DependencyGraph dependencyGraph = new DependencyGraph();
+
+    private final Recalculator recalculator;
+
+    // Formules de la feuille enregistrée dont la feuille a été ouverte, ou null.
+    private final StoredSheet storedSheet;
+
+    // Vrai si les cellules touchées par une modification ne sont recalculées qu'à la lecture de leur valeur.
+    private boolean lazyEvaluation;
+
+    // Classeur de la feuille et numéro de celle-ci, ou null et -1 pour une feuille isolée.
+    private Workbook workbook;
+    private int index = -1;
+
+    // Nombre de références des formules à chaque autre feuille du classeur, rangé par numéro de feuille.
+    private int[] externalReferences = new int[0];
+
+    // Nombre de références des formules à chaque cellule d'autres feuilles dont la feuille garde une copie,
+    // rangé par adresse externe.
+    private final LongIntHashMap externalCellReferences = new LongIntHashMap();
+
+    // Reçoit le résultat des recalculs provoqués par la modification d'une autre feuille, ou null.
+    private Consumer<RecalculationResult> externalRecalculationListener;
+
+    /**
+     * Constructeur de Sheet.
+     *
+     * @param name Le nom de la feuille.
+     */
+    public Sheet(String name) {
+        this(name, null);
+    }
+
+    /**
+     * Construit une feuille à partir de sa section d'un fichier de classeur : les valeurs sont chargées, les
+     * formules le seront à leur première utilisation.
+     *
+     * @param storedSheet La feuille enregistrée.
+     */
+    Sheet(StoredSheet storedSheet) {
+        this(storedSheet.getName(), storedSheet);
+    }
+
+    private Sheet(String name, StoredSheet storedSheet) {
+        this.name = name;
+        this.storedSheet = storedSheet;
+        this.recalculator = new Recalculator(abstractSyntaxTrees, dependencyGraph, ForkJoinPool.commonPool(), metrics, this::loadStoredFormula);
+        if (storedSheet == null) {
+            this.constantFormulas = new LongObjectHashMap<>();
+            return;
+        }
+        storedSheet.loadValues(valueStore);
+        this.constantFormulas = storedSheet.getConstantFormulas();
+        storedSheet.registerRanges(dependencyGraph);
+        dependencyGraph.setStoredSheet(storedSheet);
+        storedSheet.forEachExternalLink(address -> countExternalReference(address, 1));
+    }
+
+    /**
+     * Range la feuille dans un classeur : ses formules peuvent alors lire les autres feuilles, son graphe de
+     * dépendances rejoint l'ordre commun des feuilles, et le classeur apprend quelles cellules de celles-ci la
+     * feuille lit déjà.
+     *
+     * @param workbook Le classeur.
+     * @param index    Le numéro de la feuille dans le classeur.
+     */
+    void attach(Workbook workbook, int index) {
+        this.workbook = workbook;
+        this.index = index;
+        formulaInterner.attach(workbook, index);
+        dependencyGraph.attach(workbook, index);
+        for (long address : externalCellReferences.keys()) {
+            workbook.addReader(address, index);
+        }
+    }
+
+    /**
+     * Renvoie le numéro de la feuille dans son classeur.
+     *
+     * @return Le numéro, ou -1 pour une feuille isolée.
+     */
+    int getIndex() {
+        return index;
+    }
+
+    DependencyGraph getDependencyGraph() {
+        return dependencyGraph;
+    }
+
+    /**
+     * Renvoie les autres feuilles du classeur que lisent les formules de la feuille.
+     *
+     * @return Les numéros des feuilles lues, par ordre croissant.
+     */
+    int[] getReferencedSheets() {
+        int count = 0;
+        int[] sheets = new int[externalReferences.length];
+        for (int sheet = 0; sheet < externalReferences.length; sheet++) {
+            if (externalReferences[sheet] > 0) {
+                sheets[count++] = sheet;
+            }
+        }
+        return Arrays.copyOf(sheets, count);
+    }
+
+    /**
+     * Désigne le destinataire des recalculs provoqués par la modification d'une autre feuille du classeur, par
+     * exemple le {@link CalculationEngine} qui publie les cellules affichées de la feuille.
+     *
+     * @param listener Le destinataire, appelé par le fil qui a modifié l'autre feuille, ou null.
+     */
+    void setExternalRecalculationListener(Consumer<RecalculationResult> listener) {
+        this.externalRecalculationListener = listener;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Renvoie les mesures du calcul de la feuille. Elles ne sont exposées par JMX qu'une fois enregistrées
+     * (voir {@link CalculationMetrics#register(String)}).
+     *
+     * @return Les mesures.
+     */
+    public CalculationMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Active ou désactive l'évaluation paresseuse. Les cellules encore périmées sont recalculées lorsqu'elle est
+     * désactivée.
+     *
+     * @param lazyEvaluation Vrai pour ne recalculer une cellule modifiée, et celles qui en dépendent, qu'à la
+     *                       lecture de leur valeur.
+     */
+    public void setLazyEvaluation(boolean lazyEvaluation) {
+        if (!lazyEvaluation) {
+            recalculator.evaluateAllStale(() -> false);
+        }
+        this.lazyEvaluation = lazyEvaluation;
+    }
+
+    public boolean isLazyEvaluation() {
+        return lazyEvaluation;
+    }
+
+    /**
+     * Remplace la formule d'une cellule puis recalcule la cellule et toutes celles qui en dépendent.
+     * Une formule vide supprime celle de la cellule. Une formule incorrecte laisse la feuille inchangée.
+     *
+     * @param cellReference La référence de la cellule.
+     * @param formula       La nouvelle formule.
+     * @return Le résultat du recalcul.
+     * @throws IncorrectFormulaException Si la formule n'est pas syntaxiquement correcte ou ferme une référence
+     *                                   circulaire.
+     * @throws IllegalArgumentException  Si la référence de cellule est invalide.
+     */
+    public RecalculationResult setFormula(String cellReference, String formula) throws IncorrectFormulaException {
+        return setFormula(toAddress(cellReference), formula);
+    }
+
+    /**
+     * Remplace la formule d'une cellule puis recalcule la cellule et toutes celles qui en dépendent.
+     *
+     * @param address L'adresse de la cellule.
+     * @param formula La nouvelle formule, ou une chaîne vide pour supprimer celle de la cellule.
+     * @return Le résultat du recalcul.
+     * @throws IncorrectFormulaException Si la formule n'est pas syntaxiquement correcte ou ferme une référence
+     *                                   circulaire.
+     */
+    public RecalculationResult setFormula(long address, String formula) throws IncorrectFormulaException {
+        installFormula(address, formula);
+        return recalculate(new long[]{address}, () -> false);
+    }
+
+    /**
+     * Remplace les formules de plusieurs cellules en une seule transaction, puis recalcule en une seule passe
+     * toutes les cellules touchées : une cellule qui dépend de plusieurs cellules modifiées n'est évaluée qu'une
+     * fois, et aucun état intermédiaire n'est calculé.
+     * Toutes les formules sont analysées avant que la feuille ne soit modifiée : si l'une d'elles est
+     * incorrecte, aucune n'est installée. Si l'une d'elles ferme une référence circulaire, celles déjà installées
+     * sont retirées.
+     *
+     * @param formulas Les nouvelles formules, rangées par référence de cellule ; une formule vide supprime celle
+     *                 de la cellule.
+     * @return Le résultat du recalcul.
+     * @throws IncorrectFormulaException Si une formule n'est pas syntaxiquement correcte ou ferme une référence
+     *                                   circulaire ; les formules de la feuille sont alors inchangées.
+     * @throws IllegalArgumentException  Si une référence de cellule est invalide.
+     */
+    public RecalculationResult setFormulas(Map<String, String> formulas) throws IncorrectFormulaException {
+        long[] addresses = new long[formulas.size()];
+        String[] newFormulas = new String[formulas.size()];
+        int index = 0;
+        for (Map.Entry<String, String> entry : formulas.entrySet()) {
+            addresses[index] = toAddress(entry.getKey());
+            newFormulas[index] = entry.getValue();
+            index++;
+        }
+        return setFormulas(addresses, newFormulas);
+    }
+
+    /**
+     * Remplace les formules de plusieurs cellules en une seule transaction, puis recalcule en une seule passe
+     * toutes les cellules touchées. Si une même cellule apparaît plusieurs fois, sa dernière formule l'emporte.
+     *
+     * @param addresses Les adresses des cellules.
+     * @param formulas  La nouvelle formule de chaque cellule, ou une chaîne vide pour supprimer la formule.
+     * @return Le résultat du recalcul.
+     * @throws IncorrectFormulaException Si une formule n'est pas syntaxiquement correcte ou ferme une référence
+     *                                   circulaire ; les formules de la feuille sont alors inchangées.
+     * @see #setFormulas(Map)
+     */
+    public RecalculationResult setFormulas(long[] addresses, String[] formulas) throws IncorrectFormulaException {
+        AbstractSyntaxTree[] asts = new AbstractSyntaxTree[addresses.length];
+        double[] constants = new double[addresses.length];
+        for (int index = 0; index < addresses.length; index++) {
+            constants[index] = parseConstant(formulas[index]);
+            if (!Double.isNaN(constants[index])) {
+                continue;
+            }
+            try {
+                asts[index] = parseFormula(addresses[index], formulas[index]);
+            } catch (IncorrectFormulaException exception) {
+                throw new IncorrectFormulaException("Cellule " + CellOperations.getCellReferenceFromAddress(addresses[index])
+                        + " : " + exception.getMessage());
+            }
+        }
+
+        // Le contenu précédent de chaque cellule est conservé jusqu'à ce que toutes les formules soient installées.
+        AbstractSyntaxTree[] previousAsts = new AbstractSyntaxTree[addresses.length];
+        String[] previousFormulas = new String[addresses.length];
+        for (int index = 0; index < addresses.length; index++) {
+            loadStoredFormula(addresses[index]);
+            previousAsts[index] = abstractSyntaxTrees.get(addresses[index]);
+            previousFormulas[index] = previousAsts[index] != null ? null : getFormula(addresses[index]);
+            try {
+                if (Double.isNaN(constants[index])) {
+                    installFormula(addresses[index], asts[index]);
+                } else {
+                    installConstant(addresses[index], constants[index], formulas[index]);
+                }
+            } catch (IncorrectFormulaException exception) {
+                long[] restoredCells = Arrays.copyOf(addresses, index);
+                for (int restored = index - 1; restored >= 0; restored--) {
+                    restoreFormula(addresses[restored], previousAsts[restored], previousFormulas[restored]);
+                }
+                recalculate(restoredCells, () -> false);
+                throw new IncorrectFormulaException("Cellule " + CellOperations.getCellReferenceFromAddress(addresses[index])
+                        + " : " + exception.getMessage());
+            }
+        }
+        return recalculate(addresses, () -> false);
+    }
+
+    /**
+     * Remet en place le contenu qu'avait une cellule avant une transaction refusée, sans rien recalculer.
+     *
+     * @param address  L'adresse de la cellule.
+     * @param ast      L'arbre de sa formule, ou null si elle n'en avait pas.
+     * @param formula  Le nombre saisi, ou une chaîne vide si la cellule était vide ; ignoré si ast n'est pas null.
+     */
+    private void restoreFormula(long address, AbstractSyntaxTree ast, String formula) {
+        try {
+            if (ast != null || formula.isEmpty()) {
+                installFormula(address, ast);
+            } else {
+                installConstant(address, FormulaParser.parseConstant(formula), formula);
+            }
+        } catch (IncorrectFormulaException exception) {
+            // La formule lisait déjà ces cellules avant la transaction, sans référence circulaire.
+            throw new IllegalStateException(exception);
+        }
+    }
+
+    /**
+     * Commence une transaction : les formules qui y sont déposées ne sont installées, et la feuille recalculée,
+     * qu'à la validation de la transaction.
+     *
+     * @return La nouvelle transaction.
+     */
+    public SheetTransaction beginBatch() {
+        return new SheetTransaction(this);
+    }
+
+    /**
+     * Installe la formule d'une cellule sans rien recalculer : la cellule devra être passée à un recalcul
+     * ultérieur (voir {@link #recalculate(long[], BooleanSupplier)}).
+     *
+     * @param address L'adresse de la cellule.
+     * @param formula La nouvelle formule, ou une chaîne vide pour supprimer celle de la cellule.
+     * @throws IncorrectFormulaException Si la formule n'est pas syntaxiquement correcte ou ferme une référence
+     *                                   circulaire ; la formule précédente reste alors en place.
+     */
+    void installFormula(long address, String formula) throws IncorrectFormulaException {
+        double constant = parseConstant(formula);
+        if (Double.isNaN(constant)) {
+            installFormula(address, parseFormula(address, formula));
+        } else {
+            installConstant(address, constant, formula);
+        }
+    }
+
+    /**
+     * Reconnaît une formule réduite à un nombre.
+     *
+     * @param formula La formule.
+     * @return La valeur du nombre, ou NaN si la formule doit être analysée (voir {@link #parseFormula}).
+     */
+    private double parseConstant(String formula) {
+        double constant = FormulaParser.parseConstant(formula);
+        if (!Double.isNaN(constant)) {
+            metrics.recordParse(true);
+        }
+        return constant;
+    }
+
+    /**
+     * Analyse la formule d'une cellule sans modifier la feuille.
+     *
+     * @param address L'adresse de la cellule.
+     * @param formula La formule.
+     * @return L'arbre de la formule, ou null si la formule est vide.
+     * @throws IncorrectFormulaException Si la formule n'est pas syntaxiquement correcte.
+     */
+    private AbstractSyntaxTree parseFormula(long address, String formula) throws IncorrectFormulaException {
+        if (formula.isEmpty()) {
+            return null;
+        }
+        try {
+            AbstractSyntaxTree ast = new AbstractSyntaxTree(CellOperations.getCellReferenceFromAddress(address), formula, valueStore, formulaInterner);
+            metrics.recordParse(true);
+            return ast;
+        } catch (IncorrectFormulaException exception) {
+            metrics.recordParse(false);
+            throw exception;
+        }
+    }
+
+    /**
+     * Installe l'arbre d'une formule déjà analysée sans rien recalculer.
+     *
+     * @param address L'adresse de la cellule.
+     * @param ast     L'arbre de la nouvelle formule, ou null pour supprimer celle de la cellule.
+     * @throws IncorrectFormulaException Si la cellule dépendrait d'elle-même ; la formule précédente reste alors
+     *                                   en place.
+     */
+    private void installFormula(long address, AbstractSyntaxTree ast) throws IncorrectFormulaException {
+        installFormula(address, ast, false);
+    }
+
+    /**
+     * Installe l'arbre d'une formule déjà analysée sans rien recalculer.
+     *
+     * @param address L'adresse de la cellule.
+     * @param ast     L'arbre de la nouvelle formule, ou null pour supprimer celle de la cellule.
+     * @param stored  Vrai si l'arbre est celui de la formule enregistrée de la cellule : son rang enregistré la
+     *                place déjà après les cellules qu'elle lit, et les rangs des autres feuilles ne sont pas lus.
+     * @throws IncorrectFormulaException Si la cellule dépendrait d'elle-même ; la formule précédente reste alors
+     *                                   en place.
+     */
+    private void installFormula(long address, AbstractSyntaxTree ast, boolean stored) throws IncorrectFormulaException {
+        if (ast == null) {
+            // Supprimer l'AST et les liens vers les cellules qu'il lisait
+            countExternalReferences(address, getFormulaTemplate(address), -1);
+            detachStoredFormula(address);
+            constantFormulas.remove(address);
+            abstractSyntaxTrees.remove(address);
+            dependencyGraph.removeCell(address);
+            valueStore.clear(address);
+            return;
+        }
+
+        // Mise à jour des liens de la formule pour des références futures, même si elle est incalculable : elle
+        // sera recalculée lorsque les cellules qu'elle lit changeront. Le graphe refuse les liens qui
+        // fermeraient une boucle, avant que la formule précédente ne soit retirée.
+        if (stored) {
+            dependencyGraph.setStoredPrecedents(address, ast.getPrecedentCells(), ast.getPrecedentRanges());
+        } else if (!dependencyGraph.setPrecedents(address, ast.getPrecedentCells(), ast.getPrecedentRanges())) {
+            throw new IncorrectFormulaException("Formule incorrecte : référence circulaire détectée dans la cellule "
+                    + CellOperations.getCellReferenceFromAddress(address));
+        }
+        // Les cellules d'autres feuilles lues par l'ancienne et la nouvelle formule restent déclarées.
+        FormulaTemplate oldTemplate = getFormulaTemplate(address);
+        detachStoredFormula(address);
+        constantFormulas.remove(address);
+        abstractSyntaxTrees.put(address, ast);
+        countExternalReferences(address, ast.getTemplate(), 1);
+        countExternalReferences(address, oldTemplate, -1);
+    }
+
+    /**
+     * Compte les références de la formule d'une cellule aux autres feuilles, lorsqu'elle est installée ou
+     * retirée. Une cellule d'une autre feuille lue pour la première fois est déclarée au classeur et sa valeur
+     * recopiée, ce qui construit au besoin la feuille lue ; une cellule que plus aucune formule ne lit est
+     * retirée du classeur et sa copie effacée.
+     *
+     * @param address  L'adresse de la cellule.
+     * @param template Le modèle de la formule, ou null si la cellule n'a pas de formule.
+     * @param delta    1 pour une formule installée, -1 pour une formule retirée.
+     */
+    private void countExternalReferences(long address, FormulaTemplate template, int delta) {
+        if (template == null) {
+            return;
+        }
+        FormulaProgram program = template.getProgram();
+        int originRow = CellOperations.getRowFromAddress(address);
+        int originCol = CellOperations.getColFromAddress(address);
+        for (int reference = 0; reference < program.sheets.length; reference++) {
+            if (program.sheets[reference] >= 0) {
+                countExternalReference(program.getReferenceAddress(reference, originRow, originCol), delta);
+            }
+        }
+    }
+
+    private void countExternalReference(long externalAddress, int delta) {
+        int sheet = CellOperations.getSheetFromAddress(externalAddress);
+        if (sheet >= externalReferences.length) {
+            externalReferences = Arrays.copyOf(externalReferences, sheet + 1);
+        }
+        externalReferences[sheet] += delta;
+        int references = externalCellReferences.get(externalAddress, 0) + delta;
+        if (references > 0) {
+            externalCellReferences.put(externalAddress, references);
+        } else {
+            externalCellReferences.remove(externalAddress);
+        }
+        if (workbook == null) {
+            return;
+        }
+        if (delta > 0 && references == 1) {
+            workbook.addReader(externalAddress, index);
+            Sheet source = workbook.getSheet(sheet);
+            long address = CellOperations.getLocalAddress(externalAddress);
+            setExternalValue(externalAddress, source.getState(address), source.getValue(address));
+        } else if (delta < 0 && references == 0) {
+            workbook.removeReader(externalAddress, index);
+            valueStore.clear(externalAddress);
+        }
+    }
+
+    /**
+     * Met à jour la copie d'une cellule d'une autre feuille, sans rien recalculer.
+     *
+     * @param externalAddress L'adresse externe de la cellule.
+     * @param state           L'état de la cellule dans sa feuille.
+     * @param value           La valeur de la cellule dans sa feuille.
+     * @return Vrai si la copie a changé : les cellules qui la lisent sont à recalculer (voir
+     * {@link #recalculateExternalCells(long[])}).
+     */
+    boolean setExternalValue(long externalAddress, byte state, double value) {
+        int slot = valueStore.getSlot(externalAddress);
+        if (valueStore.getState(slot) == state
+                && Double.doubleToRawLongBits(valueStore.getValue(slot)) == Double.doubleToRawLongBits(value)) {
+            return false;
+        }
+        if (state == CellState.EMPTY) {
+            valueStore.clear(externalAddress);
+        } else if (state == CellState.CALCULABLE) {
+            valueStore.setValue(slot, value);
+        } else {
+            valueStore.setError(slot, CellError.fromValue(value));
+        }
+        return true;
+    }
+
+    /**
+     * Recalcule les cellules qui lisent des copies de cellules d'autres feuilles modifiées, puis transmet le
+     * résultat au destinataire désigné par {@link #setExternalRecalculationListener(Consumer)}.
+     *
+     * @param externalAddresses Les adresses externes des copies modifiées.
+     */
+    void recalculateExternalCells(long[] externalAddresses) {
+        RecalculationResult result = recalculate(externalAddresses, () -> false);
+        if (externalRecalculationListener != null) {
+            externalRecalculationListener.accept(result);
+        }
+    }
+
+    /**
+     * Installe la formule d'une cellule à partir de son modèle, déjà analysé, sans rien recalculer : la cellule
+     * devra être passée à un recalcul ultérieur. Utilisée par les imports, qui analysent les formules en
+     * parallèle (voir {@link CsvFile}).
+     *
+     * @param address L'adresse de la cellule.
+     * @param template Le modèle de la formule, obtenu auprès de l'interner de la feuille.
+     * @param formula  La formule saisie, ou null si elle s'écrit comme son modèle.
+     * @throws IncorrectFormulaException Si la cellule dépendrait d'elle-même ; la formule précédente reste alors
+     *                                   en place.
+     */
+    void installFormula(long address, FormulaTemplate template, String formula) throws IncorrectFormulaException {
+        installFormula(address, new AbstractSyntaxTree(address, template, formula, valueStore));
+    }
+
+    /**
+     * Range un nombre directement dans le ValueStore, à la place de la formule d'une cellule, sans rien recalculer.
+     *
+     * @param address L'adresse de la cellule.
+     * @param value   La valeur du nombre.
+     * @param formula Le texte saisi, conservé seulement s'il diffère de la forme canonique du nombre.
+     */
+    void installConstant(long address, double value, String formula) {
+        countExternalReferences(address, getFormulaTemplate(address), -1);
+        detachStoredFormula(address);
+        abstractSyntaxTrees.remove(address);
+        dependencyGraph.removeCell(address);
+        int slot = valueStore.getSlot(address);
+        valueStore.setValue(slot, value);
+        valueStore.updateAggregates(slot);
+        if (formula.equals(NumberNode.format(value))) {
+            constantFormulas.remove(address);
+        } else {
+            constantFormulas.put(address, formula);
+        }
+    }
+
+    private void detachStoredFormula(long address) {
+        if (storedSheet != null) {
+            storedSheet.detach(address);
+        }
+    }
+
+    /**
+     * Construit l'arbre d'une formule enregistrée qui n'en a pas encore, lorsque sa cellule doit être recalculée.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Vrai si la cellule contient une formule enregistrée, dont l'arbre est désormais installé.
+     */
+    private boolean loadStoredFormula(long address) {
+        int formula = storedSheet == null ? -1 : storedSheet.findFormula(address);
+        if (formula < 0) {
+            return false;
+        }
+        AbstractSyntaxTree ast = new AbstractSyntaxTree(address, storedSheet.getTemplate(formula, formulaInterner),
+                storedSheet.getTypedFormula(address), valueStore);
+        try {
+            installFormula(address, ast, true);
+        } catch (IncorrectFormulaException exception) {
+            // Les rangs enregistrés placent déjà la formule après les cellules qu'elle lit.
+            throw new IllegalStateException("Formule enregistrée incorrecte : " + exception.getMessage(), exception);
+        }
+        return true;
+    }
+
+    /**
+     * Recalcule en une seule passe plusieurs cellules modifiées et toutes celles qui en dépendent. En évaluation
+     * paresseuse, ces cellules sont seulement marquées comme périmées, sauf celles que lisent d'autres feuilles,
+     * et le résultat ne contient que ces dernières. Les feuilles qui lisent les cellules modifiées sont ensuite
+     * recalculées à leur tour (voir {@link Workbook#propagate(Sheet, long[])}).
+     *
+     * @param addresses    Les adresses des cellules modifiées.
+     * @param cancellation La condition d'interruption du recalcul.
+     * @return Le résultat du recalcul.
+     * @throws java.util.concurrent.CancellationException Si le recalcul a été interrompu.
+     * @see Recalculator#recalculate(long[], BooleanSupplier)
+     */
+    RecalculationResult recalculate(long[] addresses, BooleanSupplier cancellation) {
+        RecalculationResult result;
+        boolean externallyRead = workbook != null && workbook.isExternallyRead(index);
+        if (lazyEvaluation) {
+            recalculator.markStale(addresses);
+            // Les copies gardées par les autres feuilles ne doivent pas rester périmées.
+            result = externallyRead ? recalculator.evaluateStale(workbook.getExternallyReadCells(index), () -> false)
+                    : new RecalculationResult(new long[0], new long[0]);
+        } else {
+            result = recalculator.recalculate(addresses, cancellation);
+        }
+        if (externallyRead) {
+            long[] evaluatedCells = result.getEvaluatedCells();
+            long[] circularCells = result.getCircularCells();
+            long[] changedCells = Arrays.copyOf(addresses, addresses.length + evaluatedCells.length + circularCells.length);
+            System.arraycopy(evaluatedCells, 0, changedCells, addresses.length, evaluatedCells.length);
+            System.arraycopy(circularCells, 0, changedCells, addresses.length + evaluatedCells.length, circularCells.length);
+            workbook.propagate(this, changedCells);
+        }
+        return result;
+    }
+
+    /**
+     * Recalcule celles des cellules spécifiées qui sont périmées, par exemple les cellules affichées, ainsi que
+     * les cellules périmées qu'elles lisent.
+     *
+     * @param addresses    Les adresses des cellules.
+     * @param cancellation La condition d'interruption du recalcul.
+     * @return Le résultat du recalcul, vide si aucune cellule n'est périmée.
+     * @throws java.util.concurrent.CancellationException Si le recalcul a été interrompu.
+     * @see Recalculator#evaluateStale(long[], BooleanSupplier)
+     */
+    RecalculationResult evaluate(long[] addresses, BooleanSupplier cancellation) {
+        return recalculator.evaluateStale(addresses, cancellation);
+    }
+
+    /**
+     * Recalcule toutes les cellules périmées, par exemple lorsque l'interface est inactive ou avant d'enregistrer
+     * la feuille.
+     *
+     * @param cancellation La condition d'interruption du recalcul.
+     * @throws java.util.concurrent.CancellationException Si le recalcul a été interrompu ; les cellules déjà
+     *                                                    recalculées ne sont plus périmées.
+     */
+    void evaluateStaleCells(BooleanSupplier cancellation) {
+        if (recalculator.hasStaleCells()) {
+            recalculator.evaluateAllStale(cancellation);
+        }
+    }
+
+    boolean hasStaleCells() {
+        return recalculator.hasStaleCells();
+    }
+
+    /**
+     * Recalcule une cellule périmée avant que sa valeur ne soit lue.
+     *
+     * @param address L'adresse de la cellule.
+     */
+    private void ensureEvaluated(long address) {
+        if (recalculator.isStale(address)) {
+            recalculator.evaluateStale(new long[]{address}, () -> false);
+        }
+    }
+
+    /**
+     * Renvoie la formule d'une cellule.
+     *
+     * @param cellReference La référence de la cellule.
+     * @return La formule, ou une chaîne vide si la cellule est vide.
+     */
+    public String getFormula(String cellReference) {
+        return getFormula(toAddress(cellReference));
+    }
+
+    public String getFormula(long address) {
+        AbstractSyntaxTree ast = abstractSyntaxTrees.get(address);
+        if (ast != null) {
+            return ast.getFormula();
+        }
+        int storedFormula = storedSheet == null ? -1 : storedSheet.findFormula(address);
+        if (storedFormula >= 0) {
+            return storedSheet.getFormula(storedFormula, address, formulaInterner);
+        }
+        if (valueStore.getStateAt(address) != CellState.CALCULABLE) {
+            return "";
+        }
+        String formula = constantFormulas.get(address);
+        return formula != null ? formula : NumberNode.format(valueStore.getValueAt(address));
+    }
+
+    /**
+     * Renvoie la valeur d'une cellule.
+     *
+     * @param cellReference La référence de la cellule.
+     * @return La valeur calculée, significative seulement si la cellule est calculable (voir {@link #getState}).
+     */
+    public double getValue(String cellReference) {
+        return getValue(toAddress(cellReference));
+    }
+
+    public double getValue(long address) {
+        ensureEvaluated(address);
+        return valueStore.getValueAt(address);
+    }
+
+    /**
+     * Renvoie l'état d'une cellule.
+     *
+     * @param cellReference La référence de la cellule.
+     * @return L'état de la cellule (voir {@link CellState}).
+     */
+    public byte getState(String cellReference) {
+        return getState(toAddress(cellReference));
+    }
+
+    public byte getState(long address) {
+        ensureEvaluated(address);
+        return valueStore.getStateAt(address);
+    }
+
+    /**
+     * Renvoie l'erreur produite par le dernier calcul d'une cellule, par exemple {@link CellError#DIV_ZERO}.
+     *
+     * @param cellReference La référence de la cellule.
+     * @return Le code de l'erreur, ou {@link CellError#NONE} si la cellule est vide ou calculable.
+     */
+    public byte getErrorCode(String cellReference) {
+        return getErrorCode(toAddress(cellReference));
+    }
+
+    public byte getErrorCode(long address) {
+        ensureEvaluated(address);
+        return valueStore.getErrorAt(address);
+    }
+
+    /**
+     * Renvoie l'erreur produite par le dernier calcul d'une cellule, sous la forme d'une exception construite à
+     * la demande (voir {@link CellError#toException(byte)}).
+     *
+     * @param cellReference La référence de la cellule.
+     * @return L'erreur, ou null si la cellule est vide ou calculable.
+     */
+    public Exception getError(String cellReference) {
+        return getError(toAddress(cellReference));
+    }
+
+    public Exception getError(long address) {
+        return CellError.toException(getErrorCode(address));
+    }
+
+    /**
+     * Renvoie les adresses des cellules qui contiennent une formule, qu'elle ait déjà un arbre ou non.
+     *
+     * @return Les adresses, par ordre croissant.
+     */
+    long[] getFormulaCells() {
+        long[] treeCells = abstractSyntaxTrees.keys();
+        if (storedSheet == null) {
+            Arrays.sort(treeCells);
+            return treeCells;
+        }
+        // Une cellule détachée a un arbre ou n'a plus de formule : les deux listes sont disjointes.
+        long[] addresses = Arrays.copyOf(treeCells, treeCells.length + storedSheet.getFormulaCount());
+        int[] count = {treeCells.length};
+        storedSheet.forEachFormula(address -> addresses[count[0]++] = address);
+        Arrays.sort(addresses, 0, count[0]);
+        return Arrays.copyOf(addresses, count[0]);
+    }
+
+    /**
+     * Renvoie le modèle de la formule d'une cellule.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Le modèle, ou null si la cellule ne contient pas de formule.
+     */
+    FormulaTemplate getFormulaTemplate(long address) {
+        AbstractSyntaxTree ast = abstractSyntaxTrees.get(address);
+        if (ast != null) {
+            return ast.getTemplate();
+        }
+        int formula = storedSheet == null ? -1 : storedSheet.findFormula(address);
+        return formula < 0 ? null : storedSheet.getTemplate(formula, formulaInterner);
+    }
+
+    /**
+     * Renvoie le rang d'une cellule dans l'ordre topologique de son graphe des dépendances, enregistré avec sa
+     * formule (voir {@link WorkbookFile}).
+     *
+     * @param address L'adresse de la cellule.
+     * @return Le rang, ou {@link DependencyGraph#UNLABELED} si la cellule ne lit aucune cellule.
+     */
+    long getDependencyLabel(long address) {
+        return dependencyGraph.getLabel(address);
+    }
+
+    /**
+     * Renvoie la formule d'une cellule telle qu'elle a été saisie.
+     *
+     * @param address L'adresse de la cellule.
+     * @return La formule saisie, ou null si elle s'écrit comme son modèle ou si la cellule n'a pas de formule.
+     */
+    String getTypedFormula(long address) {
+        AbstractSyntaxTree ast = abstractSyntaxTrees.get(address);
+        if (ast != null) {
+            return ast.getTypedFormula();
+        }
+        return storedSheet == null ? null : storedSheet.getTypedFormula(address);
+    }
+
+    /**
+     * Renvoie le texte saisi des nombres écrits autrement que sous leur forme canonique.
+     *
+     * @return Les textes, rangés par adresse de cellule, qui ne doivent pas être modifiés.
+     */
+    LongObjectHashMap<String> getConstantFormulas() {
+        return constantFormulas;
+    }
+
+    ValueStore getValueStore() {
+        return valueStore;
+    }
+
+    FormulaInterner getFormulaInterner() {
+        return formulaInterner;
+    }
+
+    /**
+     * Indique si une formule lit la cellule spécifiée : une cellule modifiée sans dépendant n'a pas à être
+     * recalculée si elle ne contient qu'un nombre.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Vrai si la cellule a au moins un dépendant.
+     */
+    boolean hasDependents(long address) {
+        return dependencyGraph.hasDependents(address);
+    }
+
+    static long toAddress(String cellReference) {
+        if (!CellOperations.isValidCellReference(cellReference)) {
+            throw new IllegalArgumentException("Référence de cellule invalide : " + cellReference);
+        }
+        return CellOperations.getAddressFromCellReference(cellReference);
+    }
+}
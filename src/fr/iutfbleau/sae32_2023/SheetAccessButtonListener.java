@@ -4,7 +4,8 @@ import java.awt.event.ActionListener;
 /**
  * Classe SheetAccessButtonListener implémente l'interface ActionListener.
  * Elle est conçue pour écouter les événements de clic sur un bouton et déclencher
- * un changement de vue dans l'interface utilisateur.
+ * un changement de vue dans l'interface utilisateur. La feuille de l'onglet sélectionné est ouverte si elle ne
+ * l'a pas encore été.
  *
  * @version 1.0
  */
@@ -33,6 +34,7 @@ public class SheetAccessButtonListener implements ActionListener {
     public void actionPerformed(ActionEvent e) {
 
         this.homePage.cardLayout.show(this.homePage.getContentPane(), "TabPage");
+        this.homePage.openSelectedSheet();
 
     }
 }
@@ -0,0 +1,375 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * SheetGrid dessine les cellules d'une feuille dans un {@link JScrollPane}, quelle que soit sa taille : la grille
+ * couvre toute la feuille (voir {@link CellOperations#MAX_ROWS}) mais ne peint que les cellules visibles, avec
+ * une seule {@link CellLabel} qui sert de rendu à toutes.
+ * Toutes les cellules ont la même taille, si bien qu'une position dans la grille se convertit directement en
+ * ligne et en colonne (voir {@link #getRowAt(int)} et {@link #getColAt(int)}).
+ * La grille ne garde que le contenu des cellules visibles, tel que publié par le moteur de calcul : lorsque la
+ * zone visible change (voir {@link #updateViewport()}), le contenu des cellules qui restent visibles est
+ * conservé et celui des nouvelles cellules doit être redemandé au moteur.
+ * Les cellules modifiées par les recalculs ne sont pas redessinées une à une : elles sont rassemblées dans un
+ * rectangle sale, redessiné en une fois à la prochaine image (voir {@link #FRAME_DELAY}). Les modifications de
+ * cellules qui ne sont pas visibles sont ignorées.
+ *
+ * @version 1.0
+ */
+public class SheetGrid extends JComponent implements Scrollable {
+
+    public static final int CELL_WIDTH = 80;
+    public static final int CELL_HEIGHT = 24;
+
+    // Délai entre deux images, en millisecondes : les cellules modifiées sont redessinées au plus soixante fois
+    // par seconde.
+    static final int FRAME_DELAY = 16;
+
+    private final CellLabel renderer = new CellLabel();
+    private final CellRendererPane rendererPane = new CellRendererPane();
+
+    // Rectangle des cellules visibles.
+    private int firstRow;
+    private int firstCol;
+    private int rowCount;
+    private int colCount;
+
+    // Contenu des cellules visibles, ligne par ligne ; une cellule dont le contenu n'a pas encore été publié est
+    // affichée comme vide.
+    private String[] formulas = new String[0];
+    private byte[] states = new byte[0];
+    private double[] values = new double[0];
+    private boolean[] rejected = new boolean[0];
+
+    // Rectangle des cellules modifiées depuis la dernière image, vide tant que dirtyLastRow est négatif.
+    private int dirtyFirstRow;
+    private int dirtyFirstCol;
+    private int dirtyLastRow = -1;
+    private int dirtyLastCol;
+    private final Timer frameTimer = new Timer(FRAME_DELAY, new GridFrameListener(this));
+
+    private int selectedRow = -1;
+    private int selectedCol = -1;
+    private int hoveredRow = -1;
+    private int hoveredCol = -1;
+
+    /**
+     * Constructeur de SheetGrid.
+     */
+    public SheetGrid() {
+        add(rendererPane);
+        setOpaque(true);
+        setBackground(Color.GRAY);
+        setPreferredSize(new Dimension(CellOperations.MAX_COLUMNS * CELL_WIDTH, CellOperations.MAX_ROWS * CELL_HEIGHT));
+        frameTimer.setRepeats(false);
+    }
+
+    /**
+     * Recalcule le rectangle des cellules visibles à partir de la partie visible de la grille.
+     *
+     * @return Vrai si le rectangle a changé, auquel cas le contenu des nouvelles cellules visibles doit être
+     * demandé au moteur de calcul (voir {@link #getViewportCells()}).
+     */
+    public boolean updateViewport() {
+        Rectangle visible = getVisibleRect();
+        int newFirstRow = visible.y / CELL_HEIGHT;
+        int newFirstCol = visible.x / CELL_WIDTH;
+        int newRowCount = visible.isEmpty() ? 0
+                : Math.min(CellOperations.MAX_ROWS - 1, (visible.y + visible.height - 1) / CELL_HEIGHT) - newFirstRow + 1;
+        int newColCount = visible.isEmpty() ? 0
+                : Math.min(CellOperations.MAX_COLUMNS - 1, (visible.x + visible.width - 1) / CELL_WIDTH) - newFirstCol + 1;
+        if (newFirstRow == firstRow && newFirstCol == firstCol && newRowCount == rowCount && newColCount == colCount) {
+            return false;
+        }
+
+        String[] newFormulas = new String[newRowCount * newColCount];
+        byte[] newStates = new byte[newFormulas.length];
+        double[] newValues = new double[newFormulas.length];
+        boolean[] newRejected = new boolean[newFormulas.length];
+        Arrays.fill(newFormulas, "");
+        for (int row = Math.max(firstRow, newFirstRow); row < Math.min(firstRow + rowCount, newFirstRow + newRowCount); row++) {
+            for (int col = Math.max(firstCol, newFirstCol); col < Math.min(firstCol + colCount, newFirstCol + newColCount); col++) {
+                int oldIndex = (row - firstRow) * colCount + col - firstCol;
+                int newIndex = (row - newFirstRow) * newColCount + col - newFirstCol;
+                newFormulas[newIndex] = formulas[oldIndex];
+                newStates[newIndex] = states[oldIndex];
+                newValues[newIndex] = values[oldIndex];
+                newRejected[newIndex] = rejected[oldIndex];
+            }
+        }
+
+        firstRow = newFirstRow;
+        firstCol = newFirstCol;
+        rowCount = newRowCount;
+        colCount = newColCount;
+        formulas = newFormulas;
+        states = newStates;
+        values = newValues;
+        rejected = newRejected;
+        return true;
+    }
+
+    /**
+     * Renvoie les adresses des cellules visibles.
+     *
+     * @return Les adresses, ligne par ligne.
+     */
+    public long[] getViewportCells() {
+        long[] addresses = new long[rowCount * colCount];
+        for (int row = 0; row < rowCount; row++) {
+            for (int col = 0; col < colCount; col++) {
+                addresses[row * colCount + col] = CellOperations.getAddress(firstRow + row, firstCol + col);
+            }
+        }
+        return addresses;
+    }
+
+    /**
+     * Renvoie la ligne qui se trouve à une ordonnée de la grille.
+     *
+     * @param y L'ordonnée, en pixels.
+     * @return La ligne, ou -1 si l'ordonnée est en dehors de la feuille.
+     */
+    public int getRowAt(int y) {
+        int row = y / CELL_HEIGHT;
+        return y >= 0 && row < CellOperations.MAX_ROWS ? row : -1;
+    }
+
+    /**
+     * Renvoie la colonne qui se trouve à une abscisse de la grille.
+     *
+     * @param x L'abscisse, en pixels.
+     * @return La colonne, ou -1 si l'abscisse est en dehors de la feuille.
+     */
+    public int getColAt(int x) {
+        int col = x / CELL_WIDTH;
+        return x >= 0 && col < CellOperations.MAX_COLUMNS ? col : -1;
+    }
+
+    /**
+     * Range la formule d'une cellule, si elle est visible.
+     *
+     * @param address L'adresse de la cellule.
+     * @param formula La formule.
+     */
+    public void setFormula(long address, String formula) {
+        int index = indexOf(address);
+        if (index >= 0) {
+            formulas[index] = formula;
+        }
+    }
+
+    /**
+     * Range l'état et la valeur d'une cellule, si elle est visible ; elle sera redessinée à la prochaine image.
+     *
+     * @param address L'adresse de la cellule.
+     * @param state   L'état de la cellule (voir {@link CellState}).
+     * @param value   La valeur de la cellule, significative seulement si elle est calculable.
+     */
+    public void setState(long address, byte state, double value) {
+        int index = indexOf(address);
+        // Une cellule recalculée à la même valeur, ou à la même erreur, n'a pas à être redessinée. Les valeurs
+        // d'erreur étant des NaN, elles sont comparées bit à bit.
+        if (index >= 0 && (states[index] != state
+                || Double.doubleToRawLongBits(values[index]) != Double.doubleToRawLongBits(value) || rejected[index])) {
+            states[index] = state;
+            values[index] = value;
+            rejected[index] = false;
+            markDirty(CellOperations.getRowFromAddress(address), CellOperations.getColFromAddress(address));
+        }
+    }
+
+    /**
+     * Signale qu'une nouvelle formule d'une cellule a été refusée, jusqu'à ce que son état change.
+     *
+     * @param address L'adresse de la cellule.
+     */
+    public void setRejected(long address) {
+        int index = indexOf(address);
+        if (index >= 0) {
+            rejected[index] = true;
+            markDirty(CellOperations.getRowFromAddress(address), CellOperations.getColFromAddress(address));
+        }
+    }
+
+    /**
+     * Renvoie la formule d'une cellule visible.
+     *
+     * @param row La ligne de la cellule.
+     * @param col La colonne de la cellule.
+     * @return La formule, ou une chaîne vide si elle n'est pas connue.
+     */
+    public String getFormula(int row, int col) {
+        int index = indexOf(CellOperations.getAddress(row, col));
+        return index >= 0 ? formulas[index] : "";
+    }
+
+    /**
+     * Sélectionne une cellule.
+     *
+     * @param row La ligne de la cellule.
+     * @param col La colonne de la cellule.
+     */
+    public void setSelectedCell(int row, int col) {
+        repaintCell(selectedRow, selectedCol);
+        selectedRow = row;
+        selectedCol = col;
+        repaintCell(row, col);
+    }
+
+    /**
+     * Renvoie l'adresse de la cellule sélectionnée.
+     *
+     * @return L'adresse, ou -1 si aucune cellule n'a encore été sélectionnée.
+     */
+    public long getSelectedAddress() {
+        return selectedRow < 0 ? -1 : CellOperations.getAddress(selectedRow, selectedCol);
+    }
+
+    /**
+     * Indique la cellule survolée par la souris.
+     *
+     * @param row La ligne de la cellule, ou -1 si la souris a quitté la grille.
+     * @param col La colonne de la cellule, ou -1 si la souris a quitté la grille.
+     */
+    public void setHoveredCell(int row, int col) {
+        if (row == hoveredRow && col == hoveredCol) {
+            return;
+        }
+        repaintCell(hoveredRow, hoveredCol);
+        hoveredRow = row;
+        hoveredCol = col;
+        repaintCell(row, col);
+    }
+
+    private int indexOf(long address) {
+        int row = CellOperations.getRowFromAddress(address) - firstRow;
+        int col = CellOperations.getColFromAddress(address) - firstCol;
+        return row >= 0 && row < rowCount && col >= 0 && col < colCount ? row * colCount + col : -1;
+    }
+
+    /**
+     * Ajoute une cellule au rectangle à redessiner à la prochaine image, et programme cette image si ce n'est
+     * pas déjà fait.
+     *
+     * @param row La ligne de la cellule.
+     * @param col La colonne de la cellule.
+     */
+    private void markDirty(int row, int col) {
+        if (dirtyLastRow < 0) {
+            dirtyFirstRow = dirtyLastRow = row;
+            dirtyFirstCol = dirtyLastCol = col;
+            frameTimer.start();
+            return;
+        }
+        dirtyFirstRow = Math.min(dirtyFirstRow, row);
+        dirtyLastRow = Math.max(dirtyLastRow, row);
+        dirtyFirstCol = Math.min(dirtyFirstCol, col);
+        dirtyLastCol = Math.max(dirtyLastCol, col);
+    }
+
+    /**
+     * Redessine en une fois les cellules modifiées depuis la dernière image. Appelée à chaque image par
+     * {@link GridFrameListener}.
+     */
+    public void repaintDirtyCells() {
+        if (dirtyLastRow < 0) {
+            return;
+        }
+        repaint(dirtyFirstCol * CELL_WIDTH, dirtyFirstRow * CELL_HEIGHT,
+                (dirtyLastCol - dirtyFirstCol + 1) * CELL_WIDTH, (dirtyLastRow - dirtyFirstRow + 1) * CELL_HEIGHT);
+        dirtyLastRow = -1;
+    }
+
+    private void repaintCell(int row, int col) {
+        if (row >= 0 && col >= 0) {
+            repaint(col * CELL_WIDTH, row * CELL_HEIGHT, CELL_WIDTH, CELL_HEIGHT);
+        }
+    }
+
+    /**
+     * Peint les seules cellules qui coupent la zone à redessiner, avec l'unique étiquette de rendu.
+     *
+     * @param g Le contexte graphique.
+     */
+    @Override
+    protected void paintComponent(Graphics g) {
+        Rectangle clip = g.getClipBounds();
+        int startRow = Math.max(0, clip.y / CELL_HEIGHT);
+        int endRow = Math.min(CellOperations.MAX_ROWS - 1, (clip.y + clip.height - 1) / CELL_HEIGHT);
+        int startCol = Math.max(0, clip.x / CELL_WIDTH);
+        int endCol = Math.min(CellOperations.MAX_COLUMNS - 1, (clip.x + clip.width - 1) / CELL_WIDTH);
+
+        for (int row = startRow; row <= endRow; row++) {
+            for (int col = startCol; col <= endCol; col++) {
+                configureRenderer(row, col);
+                rendererPane.paintComponent(g, renderer, this, col * CELL_WIDTH, row * CELL_HEIGHT, CELL_WIDTH, CELL_HEIGHT, true);
+            }
+        }
+        rendererPane.removeAll();
+    }
+
+    /**
+     * Prépare l'étiquette de rendu pour une cellule, à partir de son état et de sa valeur.
+     *
+     * @param row La ligne de la cellule.
+     * @param col La colonne de la cellule.
+     */
+    private void configureRenderer(int row, int col) {
+        int index = indexOf(CellOperations.getAddress(row, col));
+        byte state = index >= 0 ? states[index] : CellState.EMPTY;
+
+        renderer.setDefaultAppearance();
+        switch (state) {
+            case CellState.CALCULABLE:
+                renderer.setText(String.valueOf(values[index]));
+                renderer.setCalculableFormulaColor();
+                break;
+            case CellState.INCALCULABLE:
+            case CellState.INCORRECT:
+                renderer.setErrorAppearance(CellError.fromValue(values[index]));
+                break;
+            default:
+                renderer.setText("");
+                renderer.setEmptyFormulaBackgroundColor();
+        }
+        // La formule précédente reste dans la cellule si la nouvelle n'a pas pu être analysée.
+        if (index >= 0 && rejected[index]) {
+            renderer.setIncorrectFormulaColor();
+        }
+        if (row == hoveredRow && col == hoveredCol) {
+            renderer.setMouseOnColor();
+        }
+        if (row == selectedRow && col == selectedCol) {
+            renderer.setSelectedAppearance();
+        }
+    }
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return new Dimension(10 * CELL_WIDTH, 20 * CELL_HEIGHT);
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? CELL_HEIGHT : CELL_WIDTH;
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL
+                ? Math.max(CELL_HEIGHT, visibleRect.height - CELL_HEIGHT)
+                : Math.max(CELL_WIDTH, visibleRect.width - CELL_WIDTH);
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -0,0 +1,33 @@
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Classe SheetTabListener implémente l'interface ChangeListener.
+ * Elle écoute le changement d'onglet de la HomePage et fait construire la page de la feuille sélectionnée
+ * lorsqu'elle est ouverte pour la première fois.
+ *
+ * @version 1.0
+ */
+public class SheetTabListener implements ChangeListener {
+
+    private final HomePage homePage;
+
+    /**
+     * Constructeur pour SheetTabListener.
+     *
+     * @param homePage La HomePage dont les onglets sont écoutés.
+     */
+    public SheetTabListener(HomePage homePage) {
+        this.homePage = homePage;
+    }
+
+    /**
+     * Méthode appelée lorsque l'onglet sélectionné change.
+     *
+     * @param e L'événement de changement.
+     */
+    @Override
+    public void stateChanged(ChangeEvent e) {
+        homePage.openSelectedSheet();
+    }
+}
@@ -0,0 +1,88 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * SheetTransaction regroupe des modifications de formules d'une {@link Sheet} : elles ne sont appliquées qu'à la
+ * validation de la transaction, toutes ensemble et suivies d'un seul recalcul, ou pas du tout si l'une des
+ * formules est incorrecte (voir {@link Sheet#setFormulas(Map)}).
+ * Une transaction ne sert qu'une fois : elle est terminée par {@link #commit()} ou {@link #rollback()}.
+ *
+ * @version 1.0
+ */
+public class SheetTransaction {
+
+    private final Sheet sheet;
+
+    // Dernière formule déposée pour chaque cellule, dans l'ordre des dépôts.
+    private final Map<Long, String> formulas = new LinkedHashMap<>();
+    private boolean finished;
+
+    /**
+     * Constructeur de SheetTransaction.
+     *
+     * @param sheet La feuille modifiée par la transaction.
+     */
+    SheetTransaction(Sheet sheet) {
+        this.sheet = sheet;
+    }
+
+    /**
+     * Dépose la nouvelle formule d'une cellule. Elle n'est analysée qu'à la validation de la transaction.
+     *
+     * @param cellReference La référence de la cellule.
+     * @param formula       La nouvelle formule, ou une chaîne vide pour supprimer celle de la cellule.
+     * @throws IllegalArgumentException Si la référence de cellule est invalide.
+     * @throws IllegalStateException    Si la transaction est déjà terminée.
+     */
+    public void setFormula(String cellReference, String formula) {
+        checkNotFinished();
+        formulas.put(Sheet.toAddress(cellReference), formula);
+    }
+
+    /**
+     * Renvoie le nombre de cellules modifiées par la transaction.
+     *
+     * @return Le nombre de cellules.
+     */
+    public int size() {
+        return formulas.size();
+    }
+
+    /**
+     * Valide la transaction : toutes les formules déposées sont installées puis la feuille est recalculée en
+     * une seule passe.
+     *
+     * @return Le résultat du recalcul.
+     * @throws IncorrectFormulaException Si une formule est incorrecte ou ferme une référence circulaire ; aucune
+     *                                   formule n'est alors installée.
+     * @throws IllegalStateException     Si la transaction est déjà terminée.
+     */
+    public RecalculationResult commit() throws IncorrectFormulaException {
+        checkNotFinished();
+        finished = true;
+
+        long[] addresses = new long[formulas.size()];
+        String[] newFormulas = new String[formulas.size()];
+        int index = 0;
+        for (Map.Entry<Long, String> entry : formulas.entrySet()) {
+            addresses[index] = entry.getKey();
+            newFormulas[index] = entry.getValue();
+            index++;
+        }
+        return sheet.setFormulas(addresses, newFormulas);
+    }
+
+    /**
+     * Abandonne la transaction sans modifier la feuille.
+     */
+    public void rollback() {
+        finished = true;
+        formulas.clear();
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("La transaction est déjà terminée");
+        }
+    }
+}
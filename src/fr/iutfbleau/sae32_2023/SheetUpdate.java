@@ -0,0 +1,61 @@
+/**
+ * SheetUpdate est l'instantané publié vers l'interface à la fin d'une passe de calcul : les formules acceptées
+ * ou refusées depuis la publication précédente, et l'état et la valeur des cellules à réafficher.
+ * Ses tableaux sont remplis par le fil de calcul puis ne sont plus modifiés, si bien qu'il peut être lu
+ * sans précaution par le fil de l'interface.
+ *
+ * @version 1.0
+ */
+public class SheetUpdate {
+
+    private final long[] acceptedCells;
+    private final String[] acceptedFormulas;
+    private final long[] rejectedCells;
+    private final long[] displayedCells;
+    private final byte[] states;
+    private final double[] values;
+
+    /**
+     * Constructeur de SheetUpdate.
+     *
+     * @param acceptedCells    Les adresses des cellules dont la nouvelle formule a été acceptée.
+     * @param acceptedFormulas La formule acceptée de chacune de ces cellules.
+     * @param rejectedCells    Les adresses des cellules dont la nouvelle formule est syntaxiquement incorrecte.
+     * @param displayedCells   Les adresses des cellules à réafficher.
+     * @param states           L'état de chacune des cellules à réafficher (voir {@link CellState}).
+     * @param values           La valeur de chacune des cellules à réafficher.
+     */
+    public SheetUpdate(long[] acceptedCells, String[] acceptedFormulas, long[] rejectedCells,
+                       long[] displayedCells, byte[] states, double[] values) {
+        this.acceptedCells = acceptedCells;
+        this.acceptedFormulas = acceptedFormulas;
+        this.rejectedCells = rejectedCells;
+        this.displayedCells = displayedCells;
+        this.states = states;
+        this.values = values;
+    }
+
+    public long[] getAcceptedCells() {
+        return this.acceptedCells;
+    }
+
+    public String[] getAcceptedFormulas() {
+        return this.acceptedFormulas;
+    }
+
+    public long[] getRejectedCells() {
+        return this.rejectedCells;
+    }
+
+    public long[] getDisplayedCells() {
+        return this.displayedCells;
+    }
+
+    public byte[] getStates() {
+        return this.states;
+    }
+
+    public double[] getValues() {
+        return this.values;
+    }
+}
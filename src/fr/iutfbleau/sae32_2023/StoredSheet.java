@@ -0,0 +1,416 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.LongConsumer;
+
+/**
+ * StoredSheet donne accès à une feuille enregistrée dans un fichier de classeur (voir {@link WorkbookFile}),
+ * projetée en mémoire : les formules et les dépendances sont lues dans le fichier au moment où elles servent,
+ * plutôt que reconstruites à l'ouverture.
+ * Les valeurs sont recopiées d'un bloc dans le {@link ValueStore} de la feuille, car les formules compilées les
+ * lisent dans ses tableaux. Les plages lues par les formules sont déclarées au {@link DependencyGraph} dès
+ * l'ouverture. En revanche, une formule enregistrée n'est qu'un numéro de modèle : elle n'est analysée, une fois
+ * par modèle, que lorsqu'une cellule est affichée, modifiée ou recalculée, et une cellule ne reçoit son arbre
+ * ({@link AbstractSyntaxTree}) que lorsqu'elle est recalculée. Les dépendants d'une cellule sont cherchés par
+ * dichotomie dans la table enregistrée.
+ * Une cellule dont la formule a été remplacée ou a reçu son arbre est détachée : la feuille ne consulte plus ce
+ * qu'en dit le fichier.
+ *
+ * @version 1.0
+ */
+public class StoredSheet {
+
+    private final String name;
+
+    // Section des valeurs, consommée par loadValues.
+    private LongBuffer blockAddresses;
+    private DoubleBuffer values;
+    private ByteBuffer states;
+
+    // Texte saisi des nombres écrits autrement que sous leur forme canonique.
+    private final LongObjectHashMap<String> constantFormulas;
+
+    // Modèles de formules : une formule écrite pour une cellule d'origine, analysée à la première utilisation.
+    private final long[] templateOrigins;
+    private final String[] templateFormulas;
+    private final FormulaTemplate[] templates;
+
+    // Cellules qui contiennent une formule, par adresse croissante, numéro du modèle de chacune et rang de
+    // chacune dans l'ordre topologique du graphe des dépendances.
+    private final LongBuffer formulaAddresses;
+    private final IntBuffer formulaTemplates;
+    private final LongBuffer formulaLabels;
+
+    // Texte saisi des formules qui ne s'écrivent pas comme leur modèle.
+    private final LongObjectHashMap<String> formulaTexts;
+
+    // Dépendants de chaque cellule lue par une référence : les dépendants de precedentAddresses[i] sont
+    // dependentAddresses[dependentOffsets[i]..dependentOffsets[i + 1][.
+    private final LongBuffer precedentAddresses;
+    private final IntBuffer dependentOffsets;
+    private final LongBuffer dependentAddresses;
+
+    // Plages lues par les formules : adresse de la formule puis coins de la plage, regroupées par formule.
+    private final ByteBuffer ranges;
+
+    // Cellules dont la formule enregistrée ne compte plus.
+    private final LongHashSet detachedCells = new LongHashSet();
+
+    /**
+     * Lit la section d'une feuille. Seules les tables de textes sont décodées ; les tableaux restent dans la
+     * section.
+     *
+     * @param section La section de la feuille, projetée en mémoire ; elle ne doit plus être modifiée.
+     * @throws java.nio.BufferUnderflowException Si la section est tronquée.
+     */
+    public StoredSheet(ByteBuffer section) {
+        section.order(ByteOrder.LITTLE_ENDIAN);
+        name = readString(section);
+        align(section);
+        // Les feuilles lues sont déjà connues du classeur (voir readReferencedSheets).
+        readInts(section);
+        align(section);
+
+        int blockCount = section.getInt();
+        align(section);
+        blockAddresses = readLongs(section, blockCount);
+        values = slice(section, blockCount * ValueStore.BLOCK_ROWS * 8).asDoubleBuffer();
+        states = slice(section, blockCount * ValueStore.BLOCK_ROWS);
+        align(section);
+
+        constantFormulas = readStrings(section);
+
+        int templateCount = section.getInt();
+        templateOrigins = new long[templateCount];
+        templateFormulas = new String[templateCount];
+        templates = new FormulaTemplate[templateCount];
+        for (int template = 0; template < templateCount; template++) {
+            templateOrigins[template] = section.getLong();
+            templateFormulas[template] = readString(section);
+        }
+        align(section);
+
+        int formulaCount = section.getInt();
+        align(section);
+        formulaAddresses = readLongs(section, formulaCount);
+        formulaTemplates = slice(section, formulaCount * 4).asIntBuffer();
+        align(section);
+        formulaLabels = readLongs(section, formulaCount);
+
+        formulaTexts = readStrings(section);
+
+        int precedentCount = section.getInt();
+        align(section);
+        precedentAddresses = readLongs(section, precedentCount);
+        dependentOffsets = slice(section, (precedentCount + 1) * 4).asIntBuffer();
+        align(section);
+        dependentAddresses = readLongs(section, dependentOffsets.get(precedentCount));
+
+        int rangeCount = section.getInt();
+        align(section);
+        ranges = slice(section, rangeCount * WorkbookFile.RANGE_RECORD_SIZE);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Lit le nom d'une feuille enregistrée sans lire le reste de sa section : un classeur ouvert ne construit
+     * ses feuilles qu'à leur première utilisation (voir {@link Workbook}).
+     *
+     * @param section La section de la feuille, dont la position n'est pas modifiée.
+     * @return Le nom de la feuille.
+     * @throws java.nio.BufferUnderflowException Si la section est tronquée.
+     */
+    public static String readName(ByteBuffer section) {
+        return readString(section.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+    }
+
+    /**
+     * Lit les numéros des autres feuilles du classeur que lisent les formules d'une feuille enregistrée, sans
+     * lire le reste de sa section.
+     *
+     * @param section La section de la feuille, dont la position n'est pas modifiée.
+     * @return Les numéros des feuilles lues.
+     * @throws java.nio.BufferUnderflowException Si la section est tronquée.
+     */
+    public static int[] readReferencedSheets(ByteBuffer section) {
+        ByteBuffer header = section.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        readString(header);
+        align(header);
+        return readInts(header);
+    }
+
+    /**
+     * Applique une action à l'adresse externe (voir {@link CellOperations#getExternalAddress(int, long)}) de
+     * chaque cellule d'une autre feuille lue par les formules enregistrées, une fois par formule qui la lit.
+     * Ces adresses, plus grandes que celles des cellules de la feuille, terminent la table des dépendances.
+     *
+     * @param consumer L'action à appliquer.
+     */
+    public void forEachExternalLink(LongConsumer consumer) {
+        int low = 0;
+        int high = precedentAddresses.capacity();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (CellOperations.getSheetFromAddress(precedentAddresses.get(middle)) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        for (int precedent = low; precedent < precedentAddresses.capacity(); precedent++) {
+            long address = precedentAddresses.get(precedent);
+            for (int link = dependentOffsets.get(precedent); link < dependentOffsets.get(precedent + 1); link++) {
+                consumer.accept(address);
+            }
+        }
+    }
+
+    /**
+     * Recopie les valeurs et les états enregistrés dans le ValueStore, vide, de la feuille.
+     *
+     * @param valueStore Le ValueStore de la feuille.
+     */
+    public void loadValues(ValueStore valueStore) {
+        valueStore.load(blockAddresses, values, states);
+        blockAddresses = null;
+        values = null;
+        states = null;
+    }
+
+    /**
+     * Renvoie le texte saisi des nombres écrits autrement que sous leur forme canonique.
+     *
+     * @return Les textes, rangés par adresse de cellule ; la table appartient désormais à la feuille.
+     */
+    public LongObjectHashMap<String> getConstantFormulas() {
+        return constantFormulas;
+    }
+
+    /**
+     * Déclare au graphe des dépendances les plages lues par les formules enregistrées, afin qu'une modification
+     * dans une plage atteigne les formules qui la lisent.
+     *
+     * @param dependencyGraph Le graphe des dépendances de la feuille.
+     */
+    public void registerRanges(DependencyGraph dependencyGraph) {
+        int count = ranges.capacity() / WorkbookFile.RANGE_RECORD_SIZE;
+        for (int first = 0, last; first < count; first = last) {
+            long dependentCell = ranges.getLong(first * WorkbookFile.RANGE_RECORD_SIZE);
+            for (last = first + 1; last < count && ranges.getLong(last * WorkbookFile.RANGE_RECORD_SIZE) == dependentCell; last++) {
+                // Plages de la même formule.
+            }
+            int[] corners = new int[4 * (last - first)];
+            for (int index = 0; index < corners.length; index++) {
+                corners[index] = ranges.getInt((first + index / 4) * WorkbookFile.RANGE_RECORD_SIZE + 8 + 4 * (index % 4));
+            }
+            dependencyGraph.addStoredRanges(dependentCell, corners);
+        }
+    }
+
+    /**
+     * Cherche la formule enregistrée d'une cellule.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Le numéro de la formule, ou -1 si la cellule n'en a pas ou a été détachée.
+     */
+    public int findFormula(long address) {
+        int formula = binarySearch(formulaAddresses, address);
+        return formula < 0 || detachedCells.contains(address) ? -1 : formula;
+    }
+
+    /**
+     * Renvoie le rang enregistré d'une cellule dans l'ordre topologique du graphe des dépendances.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Le rang, ou {@link DependencyGraph#UNLABELED} si la cellule ne lit aucune cellule, n'a pas de
+     * formule enregistrée ou a été détachée.
+     */
+    public long getLabel(long address) {
+        int formula = findFormula(address);
+        return formula < 0 ? DependencyGraph.UNLABELED : formulaLabels.get(formula);
+    }
+
+    /**
+     * Renvoie le plus grand rang enregistré, à partir duquel le graphe des dépendances place les formules
+     * à la fin de l'ordre.
+     *
+     * @return Le plus grand rang, ou {@link DependencyGraph#UNLABELED} s'il n'y en a pas.
+     */
+    public long getMaxLabel() {
+        long maxLabel = DependencyGraph.UNLABELED;
+        for (int formula = 0; formula < formulaLabels.capacity(); formula++) {
+            maxLabel = Math.max(maxLabel, formulaLabels.get(formula));
+        }
+        return maxLabel;
+    }
+
+    /**
+     * Renvoie le modèle d'une formule enregistrée, analysé lors de sa première utilisation.
+     *
+     * @param formula  Le numéro de la formule (voir {@link #findFormula(long)}).
+     * @param interner L'interner qui partage les formules de la feuille.
+     * @return Le modèle de la formule.
+     * @throws IllegalStateException Si la formule enregistrée est incorrecte, le fichier ayant été altéré.
+     */
+    public FormulaTemplate getTemplate(int formula, FormulaInterner interner) {
+        int template = formulaTemplates.get(formula);
+        if (templates[template] == null) {
+            try {
+                templates[template] = interner.template(FormulaParser.parse(templateFormulas[template], templateOrigins[template], interner));
+            } catch (IncorrectFormulaException exception) {
+                throw new IllegalStateException("Formule enregistrée incorrecte : " + exception.getMessage(), exception);
+            }
+            templateFormulas[template] = null;
+        }
+        return templates[template];
+    }
+
+    /**
+     * Renvoie le texte d'une formule enregistrée : le texte saisi s'il a été conservé, sinon le modèle écrit
+     * pour la cellule.
+     *
+     * @param formula  Le numéro de la formule.
+     * @param address  L'adresse de la cellule.
+     * @param interner L'interner qui partage les formules de la feuille.
+     * @return La formule.
+     */
+    public String getFormula(int formula, long address, FormulaInterner interner) {
+        String typedFormula = formulaTexts.get(address);
+        return typedFormula != null ? typedFormula : getTemplate(formula, interner).getFormula(address);
+    }
+
+    /**
+     * Renvoie le texte saisi d'une formule enregistrée.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Le texte saisi, ou null si la formule s'écrit comme son modèle.
+     */
+    public String getTypedFormula(long address) {
+        return formulaTexts.get(address);
+    }
+
+    /**
+     * Applique une action à chaque cellule enregistrée, non détachée, qui lit la cellule spécifiée par une
+     * référence. Les plages ne sont pas parcourues : elles sont déclarées au graphe des dépendances.
+     *
+     * @param address  L'adresse de la cellule lue.
+     * @param consumer L'action à appliquer à l'adresse de chaque cellule dépendante.
+     */
+    public void forEachDependent(long address, LongConsumer consumer) {
+        int precedent = binarySearch(precedentAddresses, address);
+        if (precedent < 0) {
+            return;
+        }
+        for (int index = dependentOffsets.get(precedent), end = dependentOffsets.get(precedent + 1); index < end; index++) {
+            long dependentCell = dependentAddresses.get(index);
+            if (!detachedCells.contains(dependentCell)) {
+                consumer.accept(dependentCell);
+            }
+        }
+    }
+
+    /**
+     * Renvoie le nombre de formules enregistrées, y compris celles des cellules détachées.
+     *
+     * @return Le nombre de formules.
+     */
+    public int getFormulaCount() {
+        return formulaAddresses.capacity();
+    }
+
+    /**
+     * Applique une action à chaque cellule dont la formule enregistrée compte encore, par adresse croissante.
+     *
+     * @param consumer L'action à appliquer à l'adresse de chaque cellule.
+     */
+    public void forEachFormula(LongConsumer consumer) {
+        for (int formula = 0; formula < formulaAddresses.capacity(); formula++) {
+            long address = formulaAddresses.get(formula);
+            if (!detachedCells.contains(address)) {
+                consumer.accept(address);
+            }
+        }
+    }
+
+    /**
+     * Détache une cellule, dont la formule vient d'être remplacée ou a reçu son arbre.
+     *
+     * @param address L'adresse de la cellule.
+     */
+    public void detach(long address) {
+        if (binarySearch(formulaAddresses, address) >= 0 && detachedCells.add(address)) {
+            formulaTexts.remove(address);
+        }
+    }
+
+    private static int binarySearch(LongBuffer sortedAddresses, long address) {
+        int low = 0;
+        int high = sortedAddresses.capacity() - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            long middleAddress = sortedAddresses.get(middle);
+            if (middleAddress < address) {
+                low = middle + 1;
+            } else if (middleAddress > address) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Découpe les octets suivants de la section et avance au-delà.
+     */
+    private static ByteBuffer slice(ByteBuffer section, int length) {
+        ByteBuffer slice = section.slice(section.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+        section.position(section.position() + length);
+        return slice;
+    }
+
+    private static LongBuffer readLongs(ByteBuffer section, int count) {
+        return slice(section, count * 8).asLongBuffer();
+    }
+
+    private static int[] readInts(ByteBuffer section) {
+        int[] ints = new int[section.getInt()];
+        for (int index = 0; index < ints.length; index++) {
+            ints[index] = section.getInt();
+        }
+        return ints;
+    }
+
+    private static String readString(ByteBuffer section) {
+        byte[] bytes = new byte[section.getInt()];
+        section.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Lit une table de textes : leur nombre, puis l'adresse et le texte de chacun.
+     */
+    private static LongObjectHashMap<String> readStrings(ByteBuffer section) {
+        int count = section.getInt();
+        LongObjectHashMap<String> strings = new LongObjectHashMap<>(count);
+        for (int index = 0; index < count; index++) {
+            long address = section.getLong();
+            strings.put(address, readString(section));
+        }
+        align(section);
+        return strings;
+    }
+
+    /**
+     * Avance jusqu'au prochain multiple de huit octets, où commence chaque tableau de la section.
+     */
+    private static void align(ByteBuffer section) {
+        section.position((section.position() + 7) & -8);
+    }
+}
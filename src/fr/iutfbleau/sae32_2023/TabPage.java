@@ -1,38 +1,45 @@
 import javax.swing.*;
 import java.awt.*;
-import java.util.HashSet;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.concurrent.ExecutorService;
 
 /**
  * La classe TabPage représente un panneau d'onglet dans une interface utilisateur de type feuille de calcul.
- * Elle implémente l'interface Observer pour suivre les changements dans les cellules de la feuille.
+ * Elle n'est qu'une vue d'une {@link Sheet} : les formules saisies sont confiées à un {@link CalculationEngine},
+ * qui les analyse et recalcule la feuille hors du fil de l'interface, puis renvoie les résultats à afficher.
+ * Les cellules sont dessinées par une {@link SheetGrid} qui défile sur toute la feuille ; seules les cellules
+ * visibles sont demandées au moteur de calcul.
+ * Une page n'est construite que lorsque sa feuille est ouverte pour la première fois (voir {@link HomePage}).
  *
  * @version 1.0
  */
 
-public class TabPage extends JPanel implements Observer {
+public class TabPage extends JPanel {
 
-    // Matrice des étiquettes des cellules.
-    public CellLabel[][] cellsLabels = new CellLabel[9][9];
+    // Vrai pour ne recalculer après une modification que les cellules affichées, les autres l'étant en tâche de
+    // fond (voir CalculationEngine#setLazyEvaluation).
+    static final boolean LAZY_EVALUATION = Boolean.getBoolean("petittableur.lazyEvaluation");
 
-    // Matrice des arbres syntaxiques abstraits pour les formules de chaque cellule.
-    public final AbstractSyntaxTree[][] abstractSyntaxTrees = new AbstractSyntaxTree[9][9];
+    // Grille des cellules, qui ne dessine que les cellules visibles.
+    public final SheetGrid grid;
 
-    // Noms des colonnes.
-    public final String[] columnsNames = new String[]{"A", "B", "C", "D", "E", "F", "G", "H", "I"};
+    // Analyse des formules et recalcul de la feuille, sur un fil d'exécution dédié.
+    public final CalculationEngine calculationEngine;
 
     // Barre de formule pour entrer ou modifier des formules de cellules.
     public final JTextField formulaBar;
 
-    // Étiquette de la cellule actuellement sélectionnée.
-    public CellLabel selectedCellLabel;
-
     /**
      * Constructeur pour initialiser le TabPage.
      * Configure la mise en page et ajoute les composants nécessaires.
+     *
+     * @param sheet    La feuille affichée, qui n'est plus utilisée ensuite que par le moteur de calcul de la page.
+     * @param executor Le fil de calcul, partagé par les pages des feuilles du classeur.
      */
-    public TabPage() {
+    public TabPage(Sheet sheet, ExecutorService executor) {
+        sheet.getMetrics().register(sheet.getName());
+        calculationEngine = new CalculationEngine(sheet, this::applyUpdate, SwingUtilities::invokeLater, executor);
+        calculationEngine.setLazyEvaluation(LAZY_EVALUATION);
+
         setBackground(Color.BLACK);
         setLayout(new BorderLayout());
 
@@ -44,116 +51,57 @@ public class TabPage extends JPanel implements Observer {
         formulaBar.addActionListener(new FormulaBarListener(this));
         add(formulaBar, BorderLayout.NORTH);
 
-        JPanel gridPanel = createGridPanel();
-        add(gridPanel, BorderLayout.CENTER);
-    }
-
-    /**
-     * Crée un JPanel contenant la grille des cellules et des en-têtes.
-     *
-     * @return JPanel avec une grille de cellules et des en-têtes.
-     */
-    private JPanel createGridPanel() {
-        JPanel gridPanel = new JPanel(new GridLayout(10, 10));
-        for (int row = 0; row < 10; row++) {
-            for (int col = 0; col < 10; col++) {
-                if (row == 0 && col > 0) {
-                    JLabel headerLabel = createHeaderLabel(columnsNames[col - 1]);
-                    gridPanel.add(headerLabel);
-                } else if (col == 0 && row > 0) {
-                    JLabel headerLabel = createHeaderLabel(Integer.toString(row));
-                    gridPanel.add(headerLabel);
-                } else if (row > 0) {
-                    Cell cell = new Cell(row - 1, col - 1);
-                    cell.addObserver(this);
-                    CellLabel cellLabel = new CellLabel(cell);
-                    cellLabel.addMouseListener(new CellMouseListener(this, row - 1, col - 1));
-                    cellsLabels[row - 1][col - 1] = cellLabel;
-                    gridPanel.add(cellLabel);
-                } else {
-                    gridPanel.add(new JLabel(""));
-                }
-            }
-        }
-        return gridPanel;
+        // Les cellules affichées sont demandées au moteur de calcul dès que la grille est disposée, puis à
+        // chaque défilement.
+        grid = new SheetGrid();
+        GridMouseListener gridMouseListener = new GridMouseListener(this);
+        grid.addMouseListener(gridMouseListener);
+        grid.addMouseMotionListener(gridMouseListener);
+        JScrollPane scrollPane = new JScrollPane(grid);
+        scrollPane.setRowHeaderView(new GridHeader(true));
+        scrollPane.setColumnHeaderView(new GridHeader(false));
+        scrollPane.getViewport().addChangeListener(new GridViewportListener(this));
+        add(scrollPane, BorderLayout.CENTER);
+
+        JPanel csvPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        JButton importButton = new JButton("Importer CSV");
+        importButton.addActionListener(new CsvImportButtonListener(this));
+        csvPanel.add(importButton);
+        JButton exportButton = new JButton("Exporter CSV");
+        exportButton.addActionListener(new CsvExportButtonListener(this));
+        csvPanel.add(exportButton);
+        add(csvPanel, BorderLayout.SOUTH);
     }
 
     /**
-     * Crée un JLabel pour un en-tête de colonne ou de ligne.
+     * Renvoie les adresses des cellules affichées par la page.
      *
-     * @param text Le texte de l'en-tête.
-     * @return JLabel configuré pour l'affichage d'en-tête.
+     * @return Les adresses des cellules visibles de la grille.
      */
-    private JLabel createHeaderLabel(String text) {
-        JLabel headerLabel = new JLabel(text, SwingConstants.CENTER);
-        headerLabel.setOpaque(true);
-        headerLabel.setBackground(Color.LIGHT_GRAY);
-        headerLabel.setForeground(Color.BLACK);
-        headerLabel.setBorder(BorderFactory.createLineBorder(Color.BLACK));
-        return headerLabel;
+    public long[] getDisplayedCells() {
+        return grid.getViewportCells();
     }
 
     /**
-     * Méthode appelée lorsqu'une cellule observée est mise à jour.
-     * Met à jour les cellules dépendantes de la cellule mise à jour.
+     * Applique le résultat d'un recalcul, sur le fil de l'interface : les formules acceptées sont rangées dans
+     * leurs cellules, les cellules recalculées sont redessinées et celles dont la formule a été refusée sont
+     * signalées. Les cellules qui ne sont plus visibles sont ignorées.
      *
-     * @param o   L'objet Observable (la cellule mise à jour).
-     * @param arg Argument fourni avec la notification de mise à jour (la cellule mise à jour).
+     * @param update Le résultat publié par le moteur de calcul.
      */
-    @Override
-    public void update(Observable o, Object arg) {
-        Cell cell = (Cell) arg;
-        AbstractSyntaxTree cellAst = this.abstractSyntaxTrees[cell.getRow()][cell.getCol()];
-
-        if (cellAst == null) {
-            return;
+    private void applyUpdate(SheetUpdate update) {
+        long[] acceptedCells = update.getAcceptedCells();
+        for (int index = 0; index < acceptedCells.length; index++) {
+            grid.setFormula(acceptedCells[index], update.getAcceptedFormulas()[index]);
         }
 
-        HashSet<String> dependentCells = getDependentCells(cell);
-
-        // Mettre à jour les cellules qui dépendent de la cellule qui a été mise à jour.
-        System.out.println("Les cellules " + dependentCells + " ont besoin de " + cell.getCellReference());
-
-        for (String cellReference : dependentCells) {
-            int row = CellOperations.getRowFromCellReference(cellReference);
-            int col = CellOperations.getColFromCellReference(cellReference);
-            AbstractSyntaxTree ast = abstractSyntaxTrees[row][col];
-
-            System.out.println("Row = " + row + ", col = " + col);
-
-            try {
-                // Évaluer la formule et mettre à jour l'affichage de la cellule
-                HashSet<String> visited = new HashSet<>();
-                double result = ast.evaluate(visited);
-                cellsLabels[row][col].setText(String.valueOf(result));
-            } catch (IncalculableFormulaException | IncorrectFormulaException exception) {
-                System.err.println(exception.getMessage());
-            }
+        long[] displayedCells = update.getDisplayedCells();
+        for (int index = 0; index < displayedCells.length; index++) {
+            grid.setState(displayedCells[index], update.getStates()[index], update.getValues()[index]);
         }
-    }
 
-    /**
-     * Récupère un ensemble de références de cellules qui dépendent de la cellule spécifiée.
-     *
-     * @param cell La cellule dont les dépendants sont recherchés.
-     * @return HashSet<String> contenant les références des cellules dépendantes.
-     */
-    private HashSet<String> getDependentCells(Cell cell) {
-        HashSet<String> dependentCells = new HashSet<>();
-
-        // Trouver les cellules qui ont besoin de la cellule qui a été mise à jour.
-        for (AbstractSyntaxTree[] syntaxTree : this.abstractSyntaxTrees) {
-            for (AbstractSyntaxTree abstractSyntaxTree : syntaxTree) {
-                if (abstractSyntaxTree == null) {
-                    continue;
-                }
-                HashSet<String> dependencies = abstractSyntaxTree.getDependentCells();
-
-                if (dependencies.contains(cell.getCellReference())) {
-                    dependentCells.add(abstractSyntaxTree.getOriginCellReference());
-                }
-            }
+        for (long address : update.getRejectedCells()) {
+            grid.setRejected(address);
         }
-        return dependentCells;
     }
 }
@@ -0,0 +1,346 @@
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * ValueStore range les résultats des cellules dans des tableaux primitifs : une valeur et un état par cellule,
+ * soit neuf octets ; une cellule incalculable ou incorrecte a pour valeur son erreur (voir {@link CellError}).
+ * C'est la seule copie des valeurs de la feuille : les formules y lisent les cellules dont
+ * elles dépendent, et les nombres saisis seuls dans une cellule y sont rangés directement, sans arbre ni formule.
+ * Chaque cellule qui contient une valeur ou qui est lue par une formule reçoit un emplacement (un index entier)
+ * attribué une fois pour toutes, ce qui permet aux formules compilées de lire les valeurs des cellules par
+ * index, sans table de hachage ni objet intermédiaire.
+ * Les emplacements sont attribués par blocs de {@link #BLOCK_ROWS} lignes consécutives d'une même colonne : les
+ * valeurs d'une colonne sont contiguës en mémoire, et seul le premier emplacement de chaque bloc est rangé dans
+ * une table de hachage.
+ * Les colonnes lues par des plages (par exemple {@code SUM A1:A1000}) sont en plus résumées par des
+ * {@link ColumnAggregates}, qui donnent la somme, le nombre, le minimum ou le maximum des valeurs d'un
+ * intervalle de lignes sans parcourir ses cellules. Ces agrégats ne sont pas mis à jour par
+ * {@link #setValue(int, double)} et {@link #setError(int, byte)}, qui peuvent être appelées en parallèle, mais
+ * par {@link #updateAggregates(int)}, appelée séquentiellement par le recalcul.
+ *
+ * @version 1.0
+ */
+public class ValueStore {
+
+    // Nombre de lignes d'un bloc, une puissance de deux.
+    static final int BLOCK_ROWS = 256;
+    private static final int BLOCK_BITS = Integer.numberOfTrailingZeros(BLOCK_ROWS);
+
+    // Premier emplacement de chaque bloc, rangé par adresse de la première cellule du bloc.
+    private final LongIntHashMap blocks = new LongIntHashMap();
+
+    // Adresse de la première cellule de chaque bloc, dans l'ordre des blocs.
+    private long[] blockAddresses = new long[4];
+
+    // Valeur et état (voir CellState) de chaque emplacement.
+    double[] values = new double[BLOCK_ROWS];
+    byte[] states = new byte[BLOCK_ROWS];
+
+    // Nombre d'emplacements attribués, multiple de BLOCK_ROWS.
+    private int size;
+
+    // Agrégats de chaque colonne lue par une plage, alloués à la première plage.
+    private ColumnAggregates[] columnAggregates;
+
+    /**
+     * Renvoie l'emplacement d'une cellule, en lui en attribuant un s'il n'en a pas encore.
+     * Un nouvel emplacement est dans l'état vide.
+     *
+     * @param address L'adresse de la cellule.
+     * @return L'emplacement de la cellule.
+     */
+    public int getSlot(long address) {
+        int slot = findSlot(address);
+        if (slot >= 0) {
+            return slot;
+        }
+
+        int block = size >> BLOCK_BITS;
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            states = Arrays.copyOf(states, size * 2);
+        }
+        if (block == blockAddresses.length) {
+            blockAddresses = Arrays.copyOf(blockAddresses, block * 2);
+        }
+        long blockAddress = getBlockAddress(address);
+        blockAddresses[block] = blockAddress;
+        blocks.put(blockAddress, size);
+        size += BLOCK_ROWS;
+        return findSlot(address);
+    }
+
+    /**
+     * Renvoie l'emplacement d'une cellule sans lui en attribuer.
+     *
+     * @param address L'adresse de la cellule.
+     * @return L'emplacement de la cellule, ou -1 si son bloc n'en a pas encore.
+     */
+    int findSlot(long address) {
+        int firstSlot = blocks.get(getBlockAddress(address), -1);
+        return firstSlot < 0 ? -1 : firstSlot + (CellOperations.getRowFromAddress(address) & (BLOCK_ROWS - 1));
+    }
+
+    private static long getBlockAddress(long address) {
+        return CellOperations.getAddress(CellOperations.getRowFromAddress(address) & -BLOCK_ROWS, CellOperations.getColFromAddress(address));
+    }
+
+    public long getAddress(int slot) {
+        long blockAddress = blockAddresses[slot >> BLOCK_BITS];
+        return CellOperations.getAddress(CellOperations.getRowFromAddress(blockAddress) + (slot & (BLOCK_ROWS - 1)),
+                CellOperations.getColFromAddress(blockAddress));
+    }
+
+    /**
+     * Renvoie le nombre de blocs attribués, les emplacements du bloc b allant de b * BLOCK_ROWS à
+     * (b + 1) * BLOCK_ROWS - 1.
+     *
+     * @return Le nombre de blocs.
+     */
+    public int getBlockCount() {
+        return size >> BLOCK_BITS;
+    }
+
+    /**
+     * Renvoie l'adresse de la première cellule d'un bloc.
+     *
+     * @param block Le numéro du bloc.
+     * @return L'adresse de la cellule du bloc dont la ligne est multiple de BLOCK_ROWS.
+     */
+    public long getBlockAddress(int block) {
+        return blockAddresses[block];
+    }
+
+    /**
+     * Remplit un ValueStore vide à partir de blocs enregistrés, par exemple dans un fichier de classeur (voir
+     * {@link WorkbookFile}) : les valeurs et les états sont recopiés d'un bloc, sans passer par les cellules.
+     *
+     * @param newBlockAddresses L'adresse de la première cellule de chaque bloc.
+     * @param newValues         Les valeurs des emplacements, BLOCK_ROWS par bloc et dans l'ordre des blocs.
+     * @param newStates         Les états des emplacements, dans le même ordre.
+     * @throws IllegalStateException Si le ValueStore contient déjà des cellules.
+     */
+    public void load(LongBuffer newBlockAddresses, DoubleBuffer newValues, ByteBuffer newStates) {
+        if (size != 0) {
+            throw new IllegalStateException("Le ValueStore n'est pas vide");
+        }
+        int blockCount = newBlockAddresses.remaining();
+        int capacity = Math.max(BLOCK_ROWS, blockCount << BLOCK_BITS);
+        blockAddresses = new long[Math.max(4, blockCount)];
+        values = new double[capacity];
+        states = new byte[capacity];
+        newBlockAddresses.get(blockAddresses, 0, blockCount);
+        newValues.get(values, 0, blockCount << BLOCK_BITS);
+        newStates.get(states, 0, blockCount << BLOCK_BITS);
+        for (int block = 0; block < blockCount; block++) {
+            blocks.put(blockAddresses[block], block << BLOCK_BITS);
+        }
+        size = blockCount << BLOCK_BITS;
+    }
+
+    public double getValue(int slot) {
+        return values[slot];
+    }
+
+    public byte getState(int slot) {
+        return states[slot];
+    }
+
+    /**
+     * Mémorise la valeur calculée d'une cellule et la passe dans l'état calculable.
+     *
+     * @param slot  L'emplacement de la cellule.
+     * @param value La valeur calculée.
+     */
+    public void setValue(int slot, double value) {
+        values[slot] = value;
+        states[slot] = CellState.CALCULABLE;
+    }
+
+    /**
+     * Mémorise l'erreur produite par le calcul d'une cellule : sa valeur d'erreur prend la place de sa valeur et
+     * son état s'en déduit (voir {@link CellError}).
+     *
+     * @param slot  L'emplacement de la cellule.
+     * @param error Le code de l'erreur.
+     */
+    public void setError(int slot, byte error) {
+        values[slot] = CellError.toValue(error);
+        states[slot] = CellError.getState(error);
+    }
+
+    /**
+     * Renvoie l'état d'une cellule désignée par son adresse.
+     *
+     * @param address L'adresse de la cellule.
+     * @return L'état de la cellule, vide si elle n'a pas d'emplacement.
+     */
+    public byte getStateAt(long address) {
+        int slot = findSlot(address);
+        return slot < 0 ? CellState.EMPTY : states[slot];
+    }
+
+    /**
+     * Renvoie l'erreur d'une cellule désignée par son adresse.
+     *
+     * @param address L'adresse de la cellule.
+     * @return Le code de l'erreur, ou {@link CellError#NONE} si la cellule est vide ou calculable.
+     */
+    public byte getErrorAt(long address) {
+        int slot = findSlot(address);
+        return slot < 0 || states[slot] == CellState.EMPTY || states[slot] == CellState.CALCULABLE
+                ? CellError.NONE : CellError.fromValue(values[slot]);
+    }
+
+    /**
+     * Renvoie la dernière valeur calculée d'une cellule désignée par son adresse.
+     *
+     * @param address L'adresse de la cellule.
+     * @return La valeur de la cellule, 0 si elle n'a pas d'emplacement.
+     */
+    public double getValueAt(long address) {
+        int slot = findSlot(address);
+        return slot < 0 ? 0 : values[slot];
+    }
+
+    /**
+     * Remet une cellule dans l'état vide, par exemple lorsque sa formule est supprimée.
+     * Son emplacement est conservé car d'autres formules peuvent le lire.
+     *
+     * @param address L'adresse de la cellule.
+     */
+    public void clear(long address) {
+        int slot = findSlot(address);
+        if (slot >= 0) {
+            values[slot] = 0;
+            states[slot] = CellState.EMPTY;
+            updateAggregates(slot);
+        }
+    }
+
+    /**
+     * Commence à tenir les agrégats de plusieurs colonnes, par exemple lorsqu'une formule lit une plage qui les
+     * couvre. Les agrégats d'une nouvelle colonne sont construits à partir des cellules qui ont déjà un
+     * emplacement.
+     *
+     * @param firstCol La première colonne.
+     * @param lastCol  La dernière colonne, incluse.
+     */
+    public void aggregateColumns(int firstCol, int lastCol) {
+        if (columnAggregates == null) {
+            columnAggregates = new ColumnAggregates[CellOperations.MAX_COLUMNS];
+        }
+
+        boolean added = false;
+        for (int col = firstCol; col <= lastCol; col++) {
+            if (columnAggregates[col] == null) {
+                columnAggregates[col] = new ColumnAggregates();
+                added = true;
+            }
+        }
+        if (!added) {
+            return;
+        }
+        for (int block = 0; block < size >> BLOCK_BITS; block++) {
+            int col = CellOperations.getColFromAddress(blockAddresses[block]);
+            if (col >= firstCol && col <= lastCol) {
+                int firstRow = CellOperations.getRowFromAddress(blockAddresses[block]);
+                for (int slot = block << BLOCK_BITS, row = firstRow; row < firstRow + BLOCK_ROWS; slot++, row++) {
+                    if (states[slot] != CellState.EMPTY) {
+                        columnAggregates[col].set(row, states[slot], values[slot]);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reporte la valeur et l'état d'une cellule dans les agrégats de sa colonne, si celle-ci est lue par une
+     * plage. Ne doit pas être appelée pendant que d'autres fils d'exécution lisent les agrégats.
+     *
+     * @param slot L'emplacement de la cellule.
+     */
+    public void updateAggregates(int slot) {
+        if (columnAggregates == null) {
+            return;
+        }
+        long address = getAddress(slot);
+        ColumnAggregates aggregates = columnAggregates[CellOperations.getColFromAddress(address)];
+        if (aggregates != null) {
+            aggregates.set(CellOperations.getRowFromAddress(address), states[slot], values[slot]);
+        }
+    }
+
+    /**
+     * Renvoie la somme des valeurs calculables d'une plage, les cellules vides étant ignorées.
+     * Les colonnes de la plage doivent être agrégées (voir {@link #aggregateColumns(int, int)}).
+     *
+     * @param firstRow La première ligne de la plage.
+     * @param firstCol La première colonne de la plage.
+     * @param lastRow  La dernière ligne de la plage, incluse.
+     * @param lastCol  La dernière colonne de la plage, incluse.
+     * @return La somme.
+     */
+    public double sum(int firstRow, int firstCol, int lastRow, int lastCol) {
+        double sum = 0;
+        for (int col = firstCol; col <= lastCol; col++) {
+            sum += columnAggregates[col].sum(firstRow, lastRow);
+        }
+        return sum;
+    }
+
+    /**
+     * Renvoie le nombre de valeurs calculables d'une plage.
+     *
+     * @see #sum(int, int, int, int)
+     */
+    public int count(int firstRow, int firstCol, int lastRow, int lastCol) {
+        int count = 0;
+        for (int col = firstCol; col <= lastCol; col++) {
+            count += columnAggregates[col].count(firstRow, lastRow);
+        }
+        return count;
+    }
+
+    /**
+     * Renvoie la plus petite valeur calculable d'une plage, ou l'infini positif si elle n'en contient aucune.
+     *
+     * @see #sum(int, int, int, int)
+     */
+    public double min(int firstRow, int firstCol, int lastRow, int lastCol) {
+        double min = Double.POSITIVE_INFINITY;
+        for (int col = firstCol; col <= lastCol; col++) {
+            min = Math.min(min, columnAggregates[col].min(firstRow, lastRow));
+        }
+        return min;
+    }
+
+    /**
+     * Renvoie la plus grande valeur calculable d'une plage, ou l'infini négatif si elle n'en contient aucune.
+     *
+     * @see #sum(int, int, int, int)
+     */
+    public double max(int firstRow, int firstCol, int lastRow, int lastCol) {
+        double max = Double.NEGATIVE_INFINITY;
+        for (int col = firstCol; col <= lastCol; col++) {
+            max = Math.max(max, columnAggregates[col].max(firstRow, lastRow));
+        }
+        return max;
+    }
+
+    /**
+     * Renvoie la plus grave des erreurs des cellules d'une plage (voir
+     * {@link ColumnAggregates#getWorstError(int, int)}).
+     *
+     * @see #sum(int, int, int, int)
+     */
+    public byte getWorstError(int firstRow, int firstCol, int lastRow, int lastCol) {
+        byte worstError = CellError.NONE;
+        for (int col = firstCol; col <= lastCol; col++) {
+            worstError = (byte) Math.max(worstError, columnAggregates[col].getWorstError(firstRow, lastRow));
+        }
+        return worstError;
+    }
+}
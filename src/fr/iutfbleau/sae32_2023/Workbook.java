@@ -0,0 +1,396 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Workbook est un classeur : un ensemble de feuilles de calcul ({@link Sheet}) désignées par leur nom, dans
+ * l'ordre de leur création. Comme les feuilles, il ne dépend d'aucune interface graphique.
+ * Une formule peut lire une cellule d'une autre feuille (par exemple {@code Feuille2!B7}) : la feuille de la
+ * formule en garde une copie, rangée à une adresse externe (voir
+ * {@link CellOperations#getExternalAddress(int, long)}), et le classeur tient pour chaque feuille la liste des
+ * feuilles qui lisent chacune de ses cellules. Après chaque recalcul d'une feuille, les copies des cellules qui
+ * ont changé sont mises à jour et les feuilles qui les lisent recalculées à leur tour (voir
+ * {@link #propagate(Sheet, long[])}). Les graphes de dépendances des feuilles partagent un même ordre
+ * topologique (voir {@link DependencyGraph}), qui suit aussi les liens entre feuilles : une formule qui fermerait
+ * une référence circulaire à travers plusieurs feuilles est refusée comme dans une seule feuille, et les
+ * recalculs d'une feuille à l'autre se terminent donc toujours.
+ * Une feuille lue dans un fichier (voir {@link WorkbookFile}) n'est construite qu'à sa première utilisation :
+ * lorsqu'elle est demandée par son nom, lorsqu'une formule d'une autre feuille la lit pour la première fois, ou
+ * lorsqu'une feuille qu'elle lit est modifiée. Jusque-là, le classeur n'en connaît que le nom, les feuilles
+ * qu'elle lit et sa section du fichier, recopiée telle quelle à l'enregistrement.
+ * Les méthodes sont synchronisées : l'interface peut ouvrir ou créer une feuille pendant que le fil de calcul
+ * en recalcule une autre. Les feuilles qui se lisent entre elles doivent en revanche être calculées par un seul
+ * fil d'exécution (voir {@link CalculationEngine}).
+ *
+ * @version 1.0
+ */
+public class Workbook {
+
+    private final List<SheetEntry> entries = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    // Rang attribué à la prochaine cellule placée à la fin de l'ordre commun des graphes de dépendances.
+    private long nextLabel;
+
+    /**
+     * Crée une nouvelle feuille vide.
+     *
+     * @param name Le nom de la feuille : une lettre suivie de lettres, de chiffres ou de soulignés, afin que les
+     *             formules puissent la désigner.
+     * @return La feuille créée.
+     * @throws IllegalArgumentException Si le nom est invalide, si une feuille porte déjà ce nom ou si le classeur
+     *                                  a atteint {@link CellOperations#MAX_SHEETS} feuilles.
+     */
+    public synchronized Sheet createSheet(String name) {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Nom de feuille invalide : " + name);
+        }
+        Sheet sheet = new Sheet(name);
+        addEntry(new SheetEntry(name, null, new int[0])).sheet = sheet;
+        sheet.attach(this, entries.size() - 1);
+        return sheet;
+    }
+
+    /**
+     * Ajoute une feuille enregistrée, qui ne sera construite qu'à sa première utilisation.
+     *
+     * @param name             Le nom de la feuille.
+     * @param section          La section de la feuille dans le fichier, projetée en mémoire.
+     * @param referencedSheets Les numéros des feuilles que lisent ses formules.
+     * @throws IllegalArgumentException Si une feuille porte déjà ce nom ou si le classeur est plein.
+     */
+    synchronized void addStoredSheet(String name, ByteBuffer section, int[] referencedSheets) {
+        addEntry(new SheetEntry(name, section, referencedSheets));
+    }
+
+    private SheetEntry addEntry(SheetEntry entry) {
+        if (indexes.containsKey(entry.name)) {
+            throw new IllegalArgumentException("La feuille " + entry.name + " existe déjà");
+        }
+        if (entries.size() == CellOperations.MAX_SHEETS) {
+            throw new IllegalArgumentException("Le classeur ne peut pas contenir plus de " + CellOperations.MAX_SHEETS + " feuilles");
+        }
+        indexes.put(entry.name, entries.size());
+        entries.add(entry);
+        return entry;
+    }
+
+    /**
+     * Renvoie une feuille à partir de son nom, en la construisant si elle n'a pas encore été utilisée.
+     *
+     * @param name Le nom de la feuille.
+     * @return La feuille, ou null si aucune feuille ne porte ce nom.
+     */
+    public synchronized Sheet getSheet(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? null : getSheet(index);
+    }
+
+    /**
+     * Renvoie une feuille à partir de son numéro, en la construisant si elle n'a pas encore été utilisée.
+     *
+     * @param index Le numéro de la feuille, dans l'ordre de création.
+     * @return La feuille.
+     */
+    synchronized Sheet getSheet(int index) {
+        SheetEntry entry = entries.get(index);
+        if (entry.sheet == null) {
+            Sheet sheet = new Sheet(new StoredSheet(entry.section.duplicate()));
+            entry.sheet = sheet;
+            entry.section = null;
+            sheet.attach(this, index);
+        }
+        return entry.sheet;
+    }
+
+    /**
+     * Renvoie toutes les feuilles, dans l'ordre de leur création. Les feuilles qui n'avaient pas encore été
+     * utilisées sont construites ; {@link #getSheetNames()} évite de le faire.
+     *
+     * @return Les feuilles.
+     */
+    public synchronized List<Sheet> getSheets() {
+        List<Sheet> sheets = new ArrayList<>(entries.size());
+        for (int index = 0; index < entries.size(); index++) {
+            sheets.add(getSheet(index));
+        }
+        return sheets;
+    }
+
+    /**
+     * Renvoie les noms des feuilles, dans l'ordre de leur création, sans construire celles qui n'ont pas encore
+     * été utilisées.
+     *
+     * @return Les noms des feuilles.
+     */
+    public synchronized List<String> getSheetNames() {
+        List<String> names = new ArrayList<>(entries.size());
+        for (SheetEntry entry : entries) {
+            names.add(entry.name);
+        }
+        return names;
+    }
+
+    public synchronized int getSheetCount() {
+        return entries.size();
+    }
+
+    /**
+     * Cherche une feuille par son nom.
+     *
+     * @param name Le nom de la feuille.
+     * @return Le numéro de la feuille, ou -1 si aucune feuille ne porte ce nom.
+     */
+    synchronized int findSheet(String name) {
+        Integer index = indexes.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Renvoie une feuille si elle a déjà été construite.
+     *
+     * @param index Le numéro de la feuille.
+     * @return La feuille, ou null si elle n'est encore que dans son fichier.
+     */
+    synchronized Sheet getLoadedSheet(int index) {
+        return entries.get(index).sheet;
+    }
+
+    /**
+     * Renvoie la section enregistrée d'une feuille qui n'a pas encore été construite.
+     *
+     * @param index Le numéro de la feuille.
+     * @return La section, ou null si la feuille a été construite.
+     */
+    synchronized ByteBuffer getStoredSection(int index) {
+        ByteBuffer section = entries.get(index).section;
+        return section == null ? null : section.duplicate();
+    }
+
+    /**
+     * Renvoie le graphe des dépendances d'une feuille, en la construisant si elle n'a pas encore été utilisée.
+     *
+     * @param index Le numéro de la feuille.
+     * @return Le graphe de la feuille.
+     */
+    synchronized DependencyGraph getDependencyGraph(int index) {
+        return getSheet(index).getDependencyGraph();
+    }
+
+    /**
+     * Renvoie le rang attribué à la prochaine cellule placée à la fin de l'ordre commun des graphes de
+     * dépendances des feuilles.
+     *
+     * @return Le rang, supérieur à celui de toutes les cellules des feuilles construites.
+     */
+    synchronized long getNextLabel() {
+        return nextLabel;
+    }
+
+    /**
+     * Repousse le rang attribué à la prochaine cellule placée à la fin de l'ordre commun.
+     *
+     * @param label Un rang qui ne doit plus être attribué à la fin de l'ordre.
+     */
+    synchronized void raiseNextLabel(long label) {
+        nextLabel = Math.max(nextLabel, label);
+    }
+
+    /**
+     * Déclare qu'une feuille lit une cellule d'une autre feuille, afin que sa copie soit mise à jour lorsque la
+     * cellule change. La feuille fait une seule déclaration par cellule, quel que soit le nombre de ses formules
+     * qui la lisent, et la retire avec {@link #removeReader(long, int)} lorsque plus aucune ne la lit.
+     *
+     * @param externalAddress L'adresse externe de la cellule lue.
+     * @param reader          Le numéro de la feuille qui la lit.
+     */
+    synchronized void addReader(long externalAddress, int reader) {
+        SheetEntry source = entries.get(CellOperations.getSheetFromAddress(externalAddress));
+        long address = CellOperations.getLocalAddress(externalAddress);
+        int[] readers = source.readers.get(address);
+        if (readers == null) {
+            source.readers.put(address, new int[]{reader});
+        } else if (Arrays.binarySearch(readers, reader) < 0) {
+            int[] newReaders = Arrays.copyOf(readers, readers.length + 1);
+            newReaders[readers.length] = reader;
+            Arrays.sort(newReaders);
+            source.readers.put(address, newReaders);
+        }
+    }
+
+    /**
+     * Retire la déclaration d'une feuille qui ne lit plus une cellule d'une autre feuille.
+     *
+     * @param externalAddress L'adresse externe de la cellule.
+     * @param reader          Le numéro de la feuille qui ne la lit plus.
+     */
+    synchronized void removeReader(long externalAddress, int reader) {
+        SheetEntry source = entries.get(CellOperations.getSheetFromAddress(externalAddress));
+        long address = CellOperations.getLocalAddress(externalAddress);
+        int[] readers = source.readers.get(address);
+        int position = readers == null ? -1 : Arrays.binarySearch(readers, reader);
+        if (position < 0) {
+            return;
+        }
+        if (readers.length == 1) {
+            source.readers.remove(address);
+            return;
+        }
+        // Les tableaux ne sont jamais modifiés en place : ceux renvoyés par getReaders restent valables.
+        int[] newReaders = new int[readers.length - 1];
+        System.arraycopy(readers, 0, newReaders, 0, position);
+        System.arraycopy(readers, position + 1, newReaders, position, newReaders.length - position);
+        source.readers.put(address, newReaders);
+    }
+
+    /**
+     * Indique si d'autres feuilles lisent des cellules d'une feuille. Les feuilles enregistrées qui la lisent
+     * sont d'abord construites, afin que leurs copies soient mises à jour lorsque la feuille change.
+     *
+     * @param index Le numéro de la feuille.
+     * @return Vrai si au moins une cellule de la feuille est lue par une autre feuille.
+     */
+    synchronized boolean isExternallyRead(int index) {
+        loadStoredReaders(index);
+        return !entries.get(index).readers.isEmpty();
+    }
+
+    /**
+     * Renvoie les feuilles qui lisent une cellule, après avoir construit les feuilles enregistrées qui lisent sa
+     * feuille.
+     *
+     * @param index   Le numéro de la feuille de la cellule.
+     * @param address L'adresse de la cellule dans sa feuille.
+     * @return Les numéros des feuilles qui lisent la cellule, par ordre croissant, ou null si aucune ne la lit.
+     * Le tableau ne doit pas être modifié.
+     */
+    synchronized int[] getReaders(int index, long address) {
+        loadStoredReaders(index);
+        return entries.get(index).readers.get(address);
+    }
+
+    private void loadStoredReaders(int index) {
+        SheetEntry source = entries.get(index);
+        if (!source.storedReadersLoaded) {
+            source.storedReadersLoaded = true;
+            for (int reader = 0; reader < entries.size(); reader++) {
+                SheetEntry entry = entries.get(reader);
+                if (entry.sheet == null && Arrays.binarySearch(entry.referencedSheets, index) >= 0) {
+                    getSheet(reader);
+                }
+            }
+        }
+    }
+
+    /**
+     * Renvoie les cellules d'une feuille que lisent d'autres feuilles.
+     *
+     * @param index Le numéro de la feuille.
+     * @return Les adresses des cellules lues par d'autres feuilles.
+     */
+    synchronized long[] getExternallyReadCells(int index) {
+        return entries.get(index).readers.keys();
+    }
+
+    /**
+     * Met à jour, après un recalcul d'une feuille, les copies de ses cellules gardées par les autres feuilles,
+     * puis recalcule dans chacune de ces feuilles les cellules qui lisent une copie modifiée. Ces recalculs
+     * propagent à leur tour leurs changements, éventuellement jusqu'à la feuille recalculée ; ils se terminent,
+     * car aucune cellule ne dépend d'elle-même à travers les feuilles.
+     *
+     * @param source    La feuille recalculée.
+     * @param addresses Les cellules de la feuille dont la valeur a pu changer.
+     */
+    void propagate(Sheet source, long[] addresses) {
+        int sourceIndex = source.getIndex();
+        LongHashSet[] changedCells;
+        Sheet[] readerSheets;
+        synchronized (this) {
+            changedCells = new LongHashSet[entries.size()];
+            readerSheets = new Sheet[entries.size()];
+            LongObjectHashMap<int[]> sourceReaders = entries.get(sourceIndex).readers;
+            for (long address : addresses) {
+                int[] readers = sourceReaders.get(address);
+                if (readers == null) {
+                    continue;
+                }
+                for (int reader : readers) {
+                    if (changedCells[reader] == null) {
+                        changedCells[reader] = new LongHashSet();
+                        readerSheets[reader] = entries.get(reader).sheet;
+                    }
+                    changedCells[reader].add(address);
+                }
+            }
+        }
+
+        // Les copies sont mises à jour et les feuilles recalculées hors du verrou, par le fil de calcul.
+        ValueStore valueStore = source.getValueStore();
+        for (int reader = 0; reader < readerSheets.length; reader++) {
+            if (readerSheets[reader] == null) {
+                continue;
+            }
+            Sheet readerSheet = readerSheets[reader];
+            LongHashSet modifiedCopies = new LongHashSet();
+            changedCells[reader].forEach(address -> {
+                long externalAddress = CellOperations.getExternalAddress(sourceIndex, address);
+                if (readerSheet.setExternalValue(externalAddress, valueStore.getStateAt(address), valueStore.getValueAt(address))) {
+                    modifiedCopies.add(externalAddress);
+                }
+            });
+            if (!modifiedCopies.isEmpty()) {
+                readerSheet.recalculateExternalCells(modifiedCopies.toArray());
+            }
+        }
+    }
+
+    /**
+     * Vérifie qu'un nom de feuille peut être écrit dans une formule : une lettre suivie de lettres, de chiffres
+     * ou de soulignés.
+     *
+     * @param name Le nom.
+     * @return Vrai si le nom est valide.
+     */
+    public static boolean isValidName(String name) {
+        if (name.isEmpty() || !Character.isLetter(name.charAt(0))) {
+            return false;
+        }
+        for (int index = 1; index < name.length(); index++) {
+            if (!Character.isLetterOrDigit(name.charAt(index)) && name.charAt(index) != '_') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Une feuille du classeur, construite ou seulement enregistrée.
+     */
+    private static final class SheetEntry {
+        final String name;
+
+        // Feuille construite, ou null tant qu'elle n'est que dans sa section.
+        Sheet sheet;
+
+        // Section enregistrée de la feuille, jusqu'à sa construction.
+        ByteBuffer section;
+
+        // Feuilles lues par les formules enregistrées, tant que la feuille n'est pas construite.
+        final int[] referencedSheets;
+
+        // Feuilles qui lisent chaque cellule de la feuille, rangées par adresse de la cellule.
+        final LongObjectHashMap<int[]> readers = new LongObjectHashMap<>();
+
+        // Vrai une fois construites les feuilles enregistrées qui lisent la feuille.
+        boolean storedReadersLoaded;
+
+        SheetEntry(String name, ByteBuffer section, int[] referencedSheets) {
+            this.name = name;
+            this.section = section;
+            this.referencedSheets = referencedSheets;
+        }
+    }
+}
@@ -0,0 +1,339 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WorkbookFile enregistre un {@link Workbook} dans un fichier binaire compact et l'ouvre sans le relire en
+ * entier : chaque feuille occupe une section du fichier, projetée en mémoire à l'ouverture, dont seuls le nom
+ * et les feuilles lues sont décodés avant la première utilisation de la feuille (voir {@link StoredSheet}).
+ * Le fichier commence par un en-tête (signature, version, nombre de feuilles) suivi de la position de chaque
+ * section. Une section contient, dans l'ordre :
+ * <ul>
+ * <li>le nom de la feuille ;</li>
+ * <li>les numéros des autres feuilles que lisent ses formules ;</li>
+ * <li>les blocs du {@link ValueStore} tels quels : adresse de chaque bloc, puis toutes les valeurs, dont les
+ * valeurs d'erreur des formules incalculables ou incorrectes (voir {@link CellError}) et les copies des
+ * cellules d'autres feuilles, puis tous les états ;</li>
+ * <li>le texte saisi des nombres qui ne s'écrivent pas sous leur forme canonique ;</li>
+ * <li>la table des modèles de formules, chacun écrit pour une cellule d'origine ;</li>
+ * <li>les cellules qui contiennent une formule, par adresse croissante, avec le numéro de leur modèle puis
+ * leur rang dans l'ordre topologique du {@link DependencyGraph} ;</li>
+ * <li>le texte saisi des formules qui ne s'écrivent pas comme leur modèle ;</li>
+ * <li>les dépendances précalculées : chaque cellule lue par une référence, par adresse croissante, avec la
+ * liste des formules qui la lisent ;</li>
+ * <li>les plages lues par chaque formule.</li>
+ * </ul>
+ * Les nombres sont écrits dans l'ordre des octets de poids faible d'abord, et chaque tableau commence à un
+ * multiple de huit octets. Une section ne peut pas dépasser 2 Go. La section d'une feuille qui n'a pas été
+ * utilisée depuis l'ouverture du classeur est recopiée telle quelle.
+ * Le fichier est écrit à côté de sa destination puis renommé, si bien qu'un classeur ouvert, dont le fichier est
+ * projeté en mémoire, peut être enregistré sous le même nom.
+ *
+ * @version 1.0
+ */
+public class WorkbookFile {
+
+    // Signature des fichiers de classeur : "PTAB".
+    private static final int MAGIC = 0x50544142;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    // Taille d'un enregistrement de plage : adresse de la formule puis quatre coins.
+    static final int RANGE_RECORD_SIZE = 24;
+
+    private WorkbookFile() {
+    }
+
+    /**
+     * Ouvre un fichier de classeur. Une feuille n'est construite, et ses valeurs chargées, qu'à sa première
+     * utilisation (voir {@link Workbook}) ; ses formules ne sont ensuite analysées qu'à leur propre première
+     * utilisation.
+     *
+     * @param path Le chemin du fichier.
+     * @return Le classeur.
+     * @throws IOException Si le fichier ne peut pas être lu ou n'est pas un fichier de classeur valide.
+     */
+    public static Workbook load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = read(channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException(path + " n'est pas un fichier de classeur");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Version de fichier de classeur non prise en charge : " + version);
+            }
+            int sheetCount = header.getInt();
+            if (sheetCount < 0) {
+                throw new IOException("Fichier de classeur corrompu : " + path);
+            }
+
+            ByteBuffer offsets = read(channel, HEADER_SIZE, 8 * (sheetCount + 1));
+            Workbook workbook = new Workbook();
+            long start = offsets.getLong();
+            for (int sheet = 0; sheet < sheetCount; sheet++) {
+                long end = offsets.getLong();
+                if (start < HEADER_SIZE || end < start || end > channel.size()) {
+                    throw new IOException("Fichier de classeur corrompu : " + path);
+                }
+                if (end - start > Integer.MAX_VALUE) {
+                    throw new IOException("Feuille trop grande pour être ouverte (plus de 2 Go)");
+                }
+                ByteBuffer section = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                workbook.addStoredSheet(StoredSheet.readName(section), section, StoredSheet.readReferencedSheets(section));
+                start = end;
+            }
+            return workbook;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException exception) {
+            throw new IOException("Fichier de classeur corrompu : " + path, exception);
+        }
+    }
+
+    /**
+     * Enregistre un classeur. Ses feuilles ne doivent pas être modifiées pendant l'enregistrement ; celles qui
+     * n'ont pas été utilisées depuis l'ouverture du classeur ne sont pas construites.
+     *
+     * @param workbook Le classeur.
+     * @param path     Le chemin du fichier, remplacé s'il existe.
+     * @throws IOException Si le fichier ne peut pas être écrit.
+     */
+    public static void save(Workbook workbook, Path path) throws IOException {
+        Path temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+        int sheetCount = workbook.getSheetCount();
+        try (FileChannel channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter writer = new ChannelWriter(channel);
+            writer.putInt(MAGIC);
+            writer.putInt(VERSION);
+            writer.putInt(sheetCount);
+            writer.putInt(0);
+
+            // Les valeurs périmées des feuilles en évaluation paresseuse sont recalculées avant que la première ne
+            // soit écrite, le recalcul d'une feuille pouvant modifier les copies gardées par les autres.
+            for (int sheet = 0; sheet < sheetCount; sheet++) {
+                Sheet loadedSheet = workbook.getLoadedSheet(sheet);
+                if (loadedSheet != null) {
+                    loadedSheet.evaluateStaleCells(() -> false);
+                }
+            }
+
+            // La position des sections est réécrite une fois celles-ci écrites.
+            long[] offsets = new long[sheetCount + 1];
+            writer.putLongs(offsets, offsets.length);
+            for (int sheet = 0; sheet < sheetCount; sheet++) {
+                offsets[sheet] = writer.getPosition();
+                ByteBuffer storedSection = workbook.getStoredSection(sheet);
+                if (storedSection != null) {
+                    writer.putBuffer(storedSection);
+                } else {
+                    writeSheet(writer, workbook.getLoadedSheet(sheet));
+                }
+            }
+            offsets[sheetCount] = writer.getPosition();
+            writer.flush();
+
+            ByteBuffer table = ByteBuffer.allocate(8 * offsets.length).order(ByteOrder.LITTLE_ENDIAN);
+            for (long offset : offsets) {
+                table.putLong(offset);
+            }
+            table.flip();
+            for (long position = HEADER_SIZE; table.hasRemaining(); ) {
+                position += channel.write(table, position);
+            }
+            channel.force(false);
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeSheet(ChannelWriter writer, Sheet sheet) throws IOException {
+        writer.putString(sheet.getName());
+        writer.align();
+        int[] referencedSheets = sheet.getReferencedSheets();
+        writer.putInt(referencedSheets.length);
+        for (int referencedSheet : referencedSheets) {
+            writer.putInt(referencedSheet);
+        }
+        writer.align();
+
+        ValueStore valueStore = sheet.getValueStore();
+        int blockCount = valueStore.getBlockCount();
+        writer.putInt(blockCount);
+        writer.align();
+        for (int block = 0; block < blockCount; block++) {
+            writer.putLong(valueStore.getBlockAddress(block));
+        }
+        writer.putDoubles(valueStore.values, blockCount * ValueStore.BLOCK_ROWS);
+        writer.putBytes(valueStore.states, blockCount * ValueStore.BLOCK_ROWS);
+        writer.align();
+
+        LongObjectHashMap<String> constantFormulas = sheet.getConstantFormulas();
+        long[] constantCells = constantFormulas.keys();
+        writer.putInt(constantCells.length);
+        for (long address : constantCells) {
+            writer.putLong(address);
+            writer.putString(constantFormulas.get(address));
+        }
+        writer.align();
+
+        // Modèles des formules, numérotés dans l'ordre de leur première cellule.
+        long[] formulaCells = sheet.getFormulaCells();
+        Map<FormulaTemplate, Integer> templateIndexes = new HashMap<>();
+        List<FormulaTemplate> templates = new ArrayList<>();
+        long[] templateOrigins = new long[16];
+        int[] cellTemplates = new int[formulaCells.length];
+        for (int formula = 0; formula < formulaCells.length; formula++) {
+            FormulaTemplate template = sheet.getFormulaTemplate(formulaCells[formula]);
+            Integer index = templateIndexes.get(template);
+            if (index == null) {
+                index = templates.size();
+                templateIndexes.put(template, index);
+                templates.add(template);
+                if (index == templateOrigins.length) {
+                    templateOrigins = Arrays.copyOf(templateOrigins, index * 2);
+                }
+                templateOrigins[index] = formulaCells[formula];
+            }
+            cellTemplates[formula] = index;
+        }
+
+        // Un modèle est écrit tel que saisi dans sa première cellule, texte que l'analyseur a déjà accepté.
+        writer.putInt(templates.size());
+        for (int template = 0; template < templates.size(); template++) {
+            String typedFormula = sheet.getTypedFormula(templateOrigins[template]);
+            writer.putLong(templateOrigins[template]);
+            writer.putString(typedFormula != null ? typedFormula : templates.get(template).getFormula(templateOrigins[template]));
+        }
+        writer.align();
+
+        writer.putInt(formulaCells.length);
+        writer.align();
+        writer.putLongs(formulaCells, formulaCells.length);
+        for (int cellTemplate : cellTemplates) {
+            writer.putInt(cellTemplate);
+        }
+        writer.align();
+        for (long address : formulaCells) {
+            writer.putLong(sheet.getDependencyLabel(address));
+        }
+
+        LongObjectHashMap<String> typedFormulas = new LongObjectHashMap<>();
+        for (int formula = 0; formula < formulaCells.length; formula++) {
+            long address = formulaCells[formula];
+            String typedFormula = sheet.getTypedFormula(address);
+            if (typedFormula != null && !typedFormula.equals(templates.get(cellTemplates[formula]).getFormula(address))) {
+                typedFormulas.put(address, typedFormula);
+            }
+        }
+        writeStrings(writer, typedFormulas);
+
+        writeDependencies(writer, formulaCells, cellTemplates, templates);
+    }
+
+    /**
+     * Écrit les dépendances des formules, déduites de leurs modèles sans construire leurs arbres : la table des
+     * dépendants de chaque cellule lue par une référence, puis les plages de chaque formule.
+     */
+    private static void writeDependencies(ChannelWriter writer, long[] formulaCells, int[] cellTemplates,
+                                          List<FormulaTemplate> templates) throws IOException {
+        // Chaque lien est d'abord relevé dans l'ordre des formules, puis rangé par cellule lue.
+        int linkCount = 0;
+        int rangeCount = 0;
+        for (int cellTemplate : cellTemplates) {
+            linkCount += templates.get(cellTemplate).getProgram().rowOffsets.length;
+            rangeCount += templates.get(cellTemplate).getProgram().rangeOffsets.length / 4;
+        }
+        long[] linkPrecedents = new long[linkCount];
+        int[] linkDependents = new int[linkCount];
+        for (int formula = 0, link = 0; formula < formulaCells.length; formula++) {
+            FormulaProgram program = templates.get(cellTemplates[formula]).getProgram();
+            int originRow = CellOperations.getRowFromAddress(formulaCells[formula]);
+            int originCol = CellOperations.getColFromAddress(formulaCells[formula]);
+            for (int reference = 0; reference < program.rowOffsets.length; reference++, link++) {
+                linkPrecedents[link] = program.getReferenceAddress(reference, originRow, originCol);
+                linkDependents[link] = formula;
+            }
+        }
+
+        long[] precedentCells = linkPrecedents.clone();
+        Arrays.sort(precedentCells);
+        int precedentCount = 0;
+        for (int link = 0; link < linkCount; link++) {
+            if (link == 0 || precedentCells[link] != precedentCells[link - 1]) {
+                precedentCells[precedentCount++] = precedentCells[link];
+            }
+        }
+
+        int[] offsets = new int[precedentCount + 1];
+        int[] linkSlots = new int[linkCount];
+        for (int link = 0; link < linkCount; link++) {
+            linkSlots[link] = Arrays.binarySearch(precedentCells, 0, precedentCount, linkPrecedents[link]);
+            offsets[linkSlots[link] + 1]++;
+        }
+        for (int precedent = 0; precedent < precedentCount; precedent++) {
+            offsets[precedent + 1] += offsets[precedent];
+        }
+        int[] nextDependents = Arrays.copyOf(offsets, precedentCount);
+        long[] dependentCells = new long[linkCount];
+        for (int link = 0; link < linkCount; link++) {
+            dependentCells[nextDependents[linkSlots[link]]++] = formulaCells[linkDependents[link]];
+        }
+
+        writer.putInt(precedentCount);
+        writer.align();
+        writer.putLongs(precedentCells, precedentCount);
+        for (int offset : offsets) {
+            writer.putInt(offset);
+        }
+        writer.align();
+        writer.putLongs(dependentCells, dependentCells.length);
+
+        writer.putInt(rangeCount);
+        writer.align();
+        for (int formula = 0; formula < formulaCells.length; formula++) {
+            int[] rangeOffsets = templates.get(cellTemplates[formula]).getProgram().rangeOffsets;
+            int originRow = CellOperations.getRowFromAddress(formulaCells[formula]);
+            int originCol = CellOperations.getColFromAddress(formulaCells[formula]);
+            for (int range = 0; range < rangeOffsets.length; range += 4) {
+                writer.putLong(formulaCells[formula]);
+                writer.putInt(originRow + rangeOffsets[range]);
+                writer.putInt(originCol + rangeOffsets[range + 1]);
+                writer.putInt(originRow + rangeOffsets[range + 2]);
+                writer.putInt(originCol + rangeOffsets[range + 3]);
+            }
+        }
+    }
+
+    /**
+     * Écrit une table de textes : leur nombre, puis l'adresse et le texte de chacun.
+     */
+    private static void writeStrings(ChannelWriter writer, LongObjectHashMap<String> strings) throws IOException {
+        long[] addresses = strings.keys();
+        writer.putInt(addresses.length);
+        for (long address : addresses) {
+            writer.putLong(address);
+            writer.putString(strings.get(address));
+        }
+        writer.align();
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Fichier de classeur tronqué");
+            }
+        }
+        return buffer.flip();
+    }
+}